@@ -0,0 +1,439 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+
+public class BenchmarkWorkloads implements BiFunction<String, Integer, Supplier<Object>> {
+
+    private static final String[] BLOCK = {
+            "pendown", "red", "square 60", "right 45", "triangle 40", "penwidth 2",
+            "move 30", "reverse 30", "triangle 30,40,50", "blue", "left 45", "pencolour 10 200 30",
+            "penwidth 1", "penup", "right 90", "move 5", "reverse 5"
+    };
+
+    private static final String[] BAD_BLOCK = {
+            "move abc", "left x", "pencolour 1 2 300", "fly 10", "move 99999999999", "polygon 2 5",
+            "triangle 1,x,3", "penup now", "square", "move 10"
+    };
+
+    private final Map<String, IntFunction<Supplier<Object>>> workloads = new LinkedHashMap<>();
+
+    public BenchmarkWorkloads() {
+        workloads.put("process-command", this::processCommand);
+        workloads.put("compile", this::compile);
+        workloads.put("compile-errors", this::compileErrors);
+        workloads.put("triangle", this::triangle);
+        workloads.put("spiral", this::spiral);
+        workloads.put("replay", this::replay);
+        workloads.put("stream", this::stream);
+        workloads.put("command-log", this::commandLog);
+        workloads.put("loop", this::loop);
+        workloads.put("swarm", this::swarm);
+        workloads.put("journal", this::journal);
+        workloads.put("server", this::server);
+        workloads.put("render-cache", this::renderCache);
+        workloads.put("lod", this::levelOfDetail);
+        workloads.put("svg", this::svg);
+        workloads.put("tiles", this::tiles);
+        workloads.put("png", this::png);
+        workloads.put("parallel-png", size -> parallelPng(size, false));
+        workloads.put("incremental-png", size -> parallelPng(size, true));
+    }
+
+    @Override
+    public Supplier<Object> apply(String workload, Integer size) {
+        IntFunction<Supplier<Object>> factory = workloads.get(workload);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown workload: " + workload + ", expected one of "
+                    + workloads.keySet());
+        }
+        return factory.apply(size);
+    }
+
+    public static List<String> script(int commands) {
+        List<String> lines = new ArrayList<>(commands);
+        for (int i = 0; i < commands; i++) {
+            lines.add(BLOCK[i % BLOCK.length]);
+        }
+        return lines;
+    }
+
+    private Supplier<Object> processCommand(int commands) {
+        String[] lines = script(commands).toArray(new String[0]);
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        return () -> {
+            turtle.doReset();
+            turtle.doClear();
+            for (String line : lines) {
+                turtle.processCommand(line);
+            }
+            return turtle;
+        };
+    }
+
+    private Supplier<Object> compile(int commands) {
+        String[] lines = script(commands).toArray(new String[0]);
+        CompiledScript script = new CompiledScript();
+        return () -> {
+            script.clear();
+            for (int i = 0; i < lines.length; i++) {
+                CommandCompiler.compileLine(lines[i], i + 1, script);
+            }
+            return script;
+        };
+    }
+
+    private Supplier<Object> compileErrors(int commands) {
+        String[] lines = new String[commands];
+        for (int i = 0; i < commands; i++) {
+            lines[i] = BAD_BLOCK[i % BAD_BLOCK.length];
+        }
+        CompiledScript script = new CompiledScript();
+        return () -> {
+            script.clear();
+            for (int i = 0; i < lines.length; i++) {
+                CommandCompiler.compileLine(lines[i], i + 1, script);
+            }
+            return script;
+        };
+    }
+
+    private Supplier<Object> triangle(int triangles) {
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        Random random = new Random(42);
+        int[][] sides = new int[triangles][];
+        for (int i = 0; i < triangles; i++) {
+            int a = 20 + random.nextInt(60);
+            int b = 20 + random.nextInt(60);
+            int c = Math.abs(a - b) + 1 + random.nextInt(Math.min(a, b) * 2 - 1);
+            sides[i] = new int[] {a, b, c};
+        }
+        return () -> {
+            for (int[] side : sides) {
+                turtle.doTriangle(side[0], side[1], side[2]);
+            }
+            return turtle;
+        };
+    }
+
+    private Supplier<Object> spiral(int turns) {
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        turtle.doPenDown();
+        return () -> {
+            turtle.doClear();
+            turtle.doSquareSpiral(turns, 1);
+            return turtle;
+        };
+    }
+
+    private Supplier<Object> replay(int commands) {
+        File file = writeScript(commands);
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        return () -> {
+            turtle.doReset();
+            turtle.doClear();
+            try {
+                turtle.run(CommandCompiler.compile(Files.readAllLines(file.toPath())));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return turtle;
+        };
+    }
+
+    private Supplier<Object> stream(int commands) {
+        File file = writeScript(commands);
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        return () -> {
+            turtle.doReset();
+            turtle.doClear();
+            try {
+                return MappedCommandStream.stream(file, turtle::run);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private Supplier<Object> swarm(int commands) {
+        int turtles = 8;
+        List<List<String>> scripts = new ArrayList<>();
+        for (int i = 0; i < turtles; i++) {
+            scripts.add(List.of("pendown", "pencolour " + (i * 30) + " 120 200",
+                    "repeat " + Math.max(1, commands / turtles / 2) + " [ forward 20 right 91 ]"));
+        }
+        return () -> {
+            TurtleSwarm swarm = new TurtleSwarm(HeadlessTurtle.DEFAULT_WIDTH, HeadlessTurtle.DEFAULT_HEIGHT);
+            for (List<String> script : scripts) {
+                swarm.add(script);
+            }
+            float[] sum = new float[1];
+            try {
+                swarm.run((x1, y1, x2, y2, rgb, width, line) -> sum[0] += x2 - x1, () -> {
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return sum[0];
+        };
+    }
+
+    private Supplier<Object> journal(int commands) {
+        List<String> lines = script(commands);
+        File file;
+        try {
+            file = File.createTempFile("turtle-bench", ".journal");
+            file.deleteOnExit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return () -> {
+            file.delete();
+            try {
+                CommandJournal journal = CommandJournal.open(file);
+                for (String line : lines) {
+                    journal.append(line);
+                }
+                journal.close();
+                CommandJournal recovered = CommandJournal.open(file);
+                recovered.close();
+                return recovered.getRecoveredEntries();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private Supplier<Object> server(int commands) {
+        byte[] body = String.join("\n", script(commands)).getBytes(StandardCharsets.UTF_8);
+        RenderServer server;
+        try {
+            server = new RenderServer(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.start();
+        return new Closing(() -> {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) server.getRenderUri().toURL().openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+                if (connection.getResponseCode() != 200) {
+                    throw new IOException("render server returned " + connection.getResponseCode());
+                }
+                try (InputStream in = connection.getInputStream()) {
+                    return in.readAllBytes().length;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, server::stop);
+    }
+
+    private Supplier<Object> renderCache(int commands) {
+        List<String> lines = script(commands);
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        turtle.run(CommandCompiler.compile(lines));
+        RenderCache cache = new RenderCache(RenderCache.DEFAULT_MEMORY_BUDGET);
+        cache.putRender(RenderCache.scriptKey(lines, HeadlessTurtle.DEFAULT_WIDTH, HeadlessTurtle.DEFAULT_HEIGHT),
+                new RenderCache.Render(turtle.getImage(), new TurtleState(0, 0, 90, java.awt.Color.RED, 1, false,
+                        new int[0]), new DisplayList()));
+        return () -> cache.getRender(RenderCache.scriptKey(lines, HeadlessTurtle.DEFAULT_WIDTH,
+                HeadlessTurtle.DEFAULT_HEIGHT));
+    }
+
+    private Supplier<Object> levelOfDetail(int commands) {
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        turtle.doPenDown();
+        turtle.doSquareSpiral(commands, 1);
+        DisplayList displayList = turtle.getDisplayList();
+        BufferedImage view = new BufferedImage(HeadlessTurtle.DEFAULT_WIDTH, HeadlessTurtle.DEFAULT_HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        return () -> {
+            java.awt.Graphics2D g = view.createGraphics();
+            try {
+                g.setClip(0, 0, view.getWidth(), view.getHeight());
+                displayList.paintVisible(g, 0.25);
+            } finally {
+                g.dispose();
+            }
+            return view;
+        };
+    }
+
+    private Supplier<Object> svg(int commands) {
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        turtle.run(CommandCompiler.compile(script(commands)));
+        SvgExporter exporter = new SvgExporter(turtle.getDisplayList(), HeadlessTurtle.DEFAULT_WIDTH,
+                HeadlessTurtle.DEFAULT_HEIGHT, HeadlessTurtle.BACKGROUND);
+        File file;
+        try {
+            file = File.createTempFile("turtle-bench", ".svg");
+            file.deleteOnExit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return () -> {
+            try {
+                exporter.export(file);
+                return exporter.getBytesWritten();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private Supplier<Object> tiles(int commands) {
+        float[] walk = new float[(commands + 1) * 2];
+        Random random = new Random(42);
+        double angle = 0;
+        for (int i = 2; i < walk.length; i += 2) {
+            angle += random.nextGaussian();
+            walk[i] = walk[i - 2] + (float) (Math.cos(angle) * 40);
+            walk[i + 1] = walk[i - 1] + (float) (Math.sin(angle) * 40);
+        }
+        TileCanvas canvas = new TileCanvas(new TileStore(16L << 20, null));
+        java.awt.Color[] colours = {java.awt.Color.RED, java.awt.Color.BLUE, java.awt.Color.GREEN};
+        return () -> {
+            canvas.clear();
+            for (int i = 2; i < walk.length; i += 2) {
+                canvas.drawLine(walk[i - 2], walk[i - 1], walk[i], walk[i + 1], colours[i / 2 % 3], 1 + i / 2 % 4);
+            }
+            return canvas.getTileCount();
+        };
+    }
+
+    private Supplier<Object> commandLog(int commands) {
+        File file;
+        try {
+            file = File.createTempFile("turtle-bench", "." + CommandLog.EXTENSION);
+            file.deleteOnExit();
+            try (CommandLogWriter writer = new CommandLogWriter(file)) {
+                for (String line : script(commands)) {
+                    writer.append(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        return () -> {
+            turtle.doReset();
+            turtle.doClear();
+            try {
+                return CommandLogReader.read(file, turtle::run);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private Supplier<Object> loop(int commands) {
+        List<String> lines = new ArrayList<>();
+        lines.add("to block :n");
+        for (String line : BLOCK) {
+            lines.add("  " + line);
+        }
+        lines.add("end");
+        lines.add("repeat " + commands / BLOCK.length + " [ block 0 ]");
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        return () -> {
+            turtle.doReset();
+            turtle.doClear();
+            turtle.run(CommandCompiler.compile(lines));
+            return turtle;
+        };
+    }
+
+    private Supplier<Object> png(int commands) {
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        turtle.run(CommandCompiler.compile(script(commands)));
+        BufferedImage image = turtle.getImage();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+        return () -> {
+            out.reset();
+            try {
+                ImageIO.write(image, "png", out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.size();
+        };
+    }
+
+    private Supplier<Object> parallelPng(int commands, boolean incremental) {
+        HeadlessTurtle turtle = new HeadlessTurtle(3840, 2160);
+        turtle.run(CommandCompiler.compile(script(commands)));
+        BufferedImage image = turtle.getImage();
+        ParallelPngEncoder encoder = new ParallelPngEncoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 22);
+        int[] row = {0};
+        return () -> {
+            if (incremental) {
+                int y = row[0]++ % image.getHeight();
+                image.setRGB(y % image.getWidth(), y, 0xFFFF0000);
+                encoder.markDirty(y, y);
+            } else {
+                encoder.markAllDirty();
+            }
+            out.reset();
+            try {
+                encoder.encode(image, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.size();
+        };
+    }
+
+    private static File writeScript(int commands) {
+        try {
+            File file = File.createTempFile("turtle-bench", ".txt");
+            file.deleteOnExit();
+            Files.write(file.toPath(), script(commands), StandardCharsets.UTF_8);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Closing implements Supplier<Object>, AutoCloseable {
+
+        private final Supplier<Object> run;
+        private final Runnable close;
+
+        Closing(Supplier<Object> run, Runnable close) {
+            this.run = run;
+            this.close = close;
+        }
+
+        @Override
+        public Object get() {
+            return run.get();
+        }
+
+        @Override
+        public void close() {
+            close.run();
+        }
+    }
+}
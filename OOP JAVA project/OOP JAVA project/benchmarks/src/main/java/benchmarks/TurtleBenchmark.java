@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TurtleBenchmark {
+
+    @Param({"process-command", "compile", "compile-errors", "triangle", "spiral", "replay", "stream",
+            "command-log", "loop", "swarm", "journal", "server", "render-cache", "lod", "svg", "tiles", "png",
+            "parallel-png", "incremental-png"})
+    public String workload;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Supplier<Object> run;
+
+    @Setup
+    public void setUp() {
+        run = Workloads.create(workload, size);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (run instanceof AutoCloseable) {
+            ((AutoCloseable) run).close();
+        }
+        run = null;
+    }
+
+    @Benchmark
+    public void run(Blackhole blackhole) {
+        blackhole.consume(run.get());
+    }
+}
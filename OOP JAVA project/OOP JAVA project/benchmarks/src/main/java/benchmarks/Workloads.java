@@ -0,0 +1,26 @@
+package benchmarks;
+
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+final class Workloads {
+
+    private static final BiFunction<String, Integer, Supplier<Object>> FACTORY = load();
+
+    private Workloads() {
+    }
+
+    static Supplier<Object> create(String workload, int size) {
+        return FACTORY.apply(workload, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiFunction<String, Integer, Supplier<Object>> load() {
+        try {
+            return (BiFunction<String, Integer, Supplier<Object>>)
+                    Class.forName("BenchmarkWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Benchmark workloads not on the classpath", e);
+        }
+    }
+}
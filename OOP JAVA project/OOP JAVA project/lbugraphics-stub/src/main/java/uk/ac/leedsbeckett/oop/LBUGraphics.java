@@ -0,0 +1,44 @@
+package uk.ac.leedsbeckett.oop;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import javax.swing.JPanel;
+
+public abstract class LBUGraphics extends JPanel {
+
+    public LBUGraphics() {
+        setPreferredSize(new Dimension(800, 400));
+    }
+
+    public void forward(int distance) {
+    }
+
+    public void left(int angle) {
+    }
+
+    public void right(int angle) {
+    }
+
+    public void drawOn() {
+    }
+
+    public void drawOff() {
+    }
+
+    public void setPenColour(Color colour) {
+    }
+
+    public void setStroke(int width) {
+    }
+
+    public void clear() {
+    }
+
+    public void reset() {
+    }
+
+    public void about() {
+    }
+
+    public abstract void processCommand(String command);
+}
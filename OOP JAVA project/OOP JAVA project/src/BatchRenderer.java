@@ -0,0 +1,164 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchRenderer {
+
+    public static final String REPORT_FILE_NAME = "batch-report.txt";
+
+    private final File outputDir;
+    private final int width;
+    private final int height;
+    private final int threads;
+
+    public BatchRenderer(File outputDir) {
+        this(outputDir, HeadlessTurtle.DEFAULT_WIDTH, HeadlessTurtle.DEFAULT_HEIGHT,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRenderer(File outputDir, int width, int height, int threads) {
+        this.outputDir = outputDir;
+        this.width = width;
+        this.height = height;
+        this.threads = Math.max(1, threads);
+    }
+
+    public List<Result> render(List<File> commandFiles) throws InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create output directory: " + outputDir.getAbsolutePath());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        try {
+            for (File commandsFile : commandFiles) {
+                futures.add(pool.submit(() -> renderFile(commandsFile)));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Result failed = new Result(commandFiles.get(i), null);
+                    failed.errors.add("Render failed: " + e.getCause());
+                    results.add(failed);
+                }
+            }
+            writeReport(results);
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result renderFile(File commandsFile) {
+        File output = new File(outputDir, pngName(commandsFile));
+        Result result = new Result(commandsFile, output);
+        long start = System.nanoTime();
+
+        HeadlessTurtle turtle = new HeadlessTurtle(width, height);
+        try {
+            if (CommandLog.isCommandLog(commandsFile)) {
+                CommandLogReader.read(commandsFile, turtle::run);
+            } else {
+                MappedCommandStream.stream(commandsFile, turtle::run);
+            }
+            result.errors.addAll(turtle.getErrors());
+            try (OutputStream out = new FileOutputStream(output)) {
+                new ParallelPngEncoder().encode(turtle.getImage(), out);
+            }
+        } catch (IOException e) {
+            result.errors.addAll(turtle.getErrors());
+            result.errors.add("I/O error: " + e.getMessage());
+        } finally {
+            turtle.dispose();
+        }
+
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    private void writeReport(List<Result> results) {
+        File reportFile = new File(outputDir, REPORT_FILE_NAME);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(reportFile))) {
+            for (Result result : results) {
+                writer.write(result.commandsFile.getPath() + " -> "
+                        + (result.output != null ? result.output.getName() : "-")
+                        + " (" + result.millis + " ms, " + result.errors.size() + " errors)");
+                writer.newLine();
+                for (String error : result.errors) {
+                    writer.write("    " + error);
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing batch report: " + e.getMessage());
+        }
+    }
+
+    private static String pngName(File commandsFile) {
+        String name = commandsFile.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + ".png";
+    }
+
+    public static int run(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: mainclass --batch <outputDir> <commands.txt>...");
+            return 2;
+        }
+
+        File outputDir = new File(args[0]);
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+
+        try {
+            List<Result> results = new BatchRenderer(outputDir).render(files);
+            int failed = 0;
+            for (Result result : results) {
+                if (!result.errors.isEmpty()) failed++;
+            }
+            System.out.println("Rendered " + results.size() + " files to " + outputDir.getAbsolutePath()
+                    + ", " + failed + " with errors (see " + REPORT_FILE_NAME + ")");
+            return failed == 0 ? 0 : 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    public static class Result {
+        private final File commandsFile;
+        private final File output;
+        private final List<String> errors = new ArrayList<>();
+        private long millis;
+
+        Result(File commandsFile, File output) {
+            this.commandsFile = commandsFile;
+            this.output = output;
+        }
+
+        public File getCommandsFile() {
+            return commandsFile;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BlockCompiler {
+
+    private static final int NUMBER = 0;
+    private static final int WORD = 1;
+    private static final int VARIABLE = 2;
+    private static final int SYMBOL = 3;
+    private static final int END = 4;
+
+    private static final Map<String, int[]> COMMANDS = new HashMap<>();
+
+    static {
+        COMMANDS.put("pendown", new int[] {CompiledScript.OP_PENDOWN, 0});
+        COMMANDS.put("penup", new int[] {CompiledScript.OP_PENUP, 0});
+        COMMANDS.put("move", new int[] {CompiledScript.OP_MOVE, 1});
+        COMMANDS.put("forward", new int[] {CompiledScript.OP_MOVE, 1});
+        COMMANDS.put("reverse", new int[] {CompiledScript.OP_REVERSE, 1, 100});
+        COMMANDS.put("left", new int[] {CompiledScript.OP_LEFT, 1, 90});
+        COMMANDS.put("right", new int[] {CompiledScript.OP_RIGHT, 1, 90});
+        COMMANDS.put("penwidth", new int[] {CompiledScript.OP_PENWIDTH, 1});
+        COMMANDS.put("square", new int[] {CompiledScript.OP_SQUARE, 1});
+        COMMANDS.put("triangle", new int[] {CompiledScript.OP_TRIANGLE, 1});
+        COMMANDS.put("square_spiral", new int[] {CompiledScript.OP_SPIRAL, 2});
+        COMMANDS.put("polygon", new int[] {CompiledScript.OP_POLYGON, 2});
+        COMMANDS.put("pencolour", new int[] {CompiledScript.OP_RGB, 3});
+        COMMANDS.put("clear", new int[] {CompiledScript.OP_CLEAR, 0});
+        COMMANDS.put("reset", new int[] {CompiledScript.OP_RESET, 0});
+    }
+
+    private static final List<String> UNSUPPORTED = List.of("about", "save", "load", "savecommands", "loadcommands",
+            "framerate", "zoom", "export", "pick", "undo", "seek", "checkpoints", "compression", "savealpha", "swarm",
+            "stats", "lod", "savevector", "pan", "cancel");
+
+    private static final Map<String, Color> COLOURS = new HashMap<>();
+
+    static {
+        COLOURS.put("red", Color.RED);
+        COLOURS.put("green", Color.GREEN);
+        COLOURS.put("blue", Color.BLUE);
+        COLOURS.put("yellow", Color.YELLOW);
+    }
+
+    private final ScriptEnvironment environment;
+    private final List<Token> tokens;
+    private int position = 0;
+
+    private CompiledScript script;
+    private ScriptEnvironment.Procedure procedure = null;
+
+    private BlockCompiler(List<Token> tokens, CompiledScript script, ScriptEnvironment environment) {
+        this.tokens = tokens;
+        this.script = script;
+        this.environment = environment;
+    }
+
+    public static boolean handles(String input, ScriptEnvironment environment) {
+        if (environment.isPending()) return true;
+
+        int start = 0;
+        int length = input.length();
+        while (start < length && Character.isWhitespace(input.charAt(start))) start++;
+        int space = start;
+        while (space < length && !Character.isWhitespace(input.charAt(space))) space++;
+        if (isWord(input, start, space, "repeat") || isWord(input, start, space, "to")
+                || isWord(input, start, space, "make") || isWord(input, start, space, "end")) {
+            return true;
+        }
+        if (environment.hasProcedures()
+                && environment.hasProcedure(input.substring(start, space).toLowerCase())) {
+            return true;
+        }
+
+        for (int i = space; i < length; i++) {
+            char c = input.charAt(i);
+            if (":()[]+*/%".indexOf(c) >= 0) return true;
+            if (c == '-') {
+                char previous = input.charAt(i - 1);
+                boolean spaceAfter = i + 1 == length || Character.isWhitespace(input.charAt(i + 1));
+                if (spaceAfter || Character.isDigit(previous)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWord(String input, int start, int end, String word) {
+        return end - start == word.length() && input.regionMatches(true, start, word, 0, word.length());
+    }
+
+    public static void compileLine(String input, int line, CompiledScript script, ScriptEnvironment environment) {
+        String text = input.trim();
+        List<Token> tokens;
+        try {
+            tokens = tokenize(line, text);
+        } catch (CompileException e) {
+            environment.clearPending();
+            script.error(e.line, e.getMessage());
+            return;
+        }
+
+        int brackets = 0;
+        int procedures = 0;
+        for (Token token : tokens) {
+            if (token.isSymbol("[")) brackets++;
+            else if (token.isSymbol("]")) brackets--;
+            else if (token.isWord("to")) procedures++;
+            else if (token.isWord("end")) procedures--;
+        }
+        if (environment.isPending() || brackets > 0 || procedures > 0) {
+            if (!environment.extendPending(line, text, brackets, procedures)) return;
+            int first = environment.getPendingLine();
+            text = environment.peekPending();
+            environment.clearPending();
+            tokens = tokenize(first, text);
+        }
+
+        int codeLength = script.getCodeLength();
+        int instructions = script.getInstructionCount();
+        BlockCompiler compiler = new BlockCompiler(tokens, script, environment);
+        try {
+            script.setEnvironment(environment);
+            compiler.statements(false);
+            if (compiler.peek().type != END) {
+                throw new CompileException(compiler.peek().line, "Unexpected " + compiler.peek().text);
+            }
+        } catch (CompileException e) {
+            script.rewind(codeLength, instructions);
+            if (compiler.procedure != null) {
+                environment.undefine(compiler.procedure);
+            }
+            script.error(e.line, e.getMessage());
+        }
+    }
+
+    public static void finish(CompiledScript script, ScriptEnvironment environment) {
+        if (environment.isPending()) {
+            script.error(environment.getPendingLine(), "Block starting here is missing its closing ] or end.");
+            environment.clearPending();
+        }
+    }
+
+    static String checkArguments(int opcode, int[] args, int at) {
+        switch (opcode) {
+            case CompiledScript.OP_MOVE:
+                if (args[at] < 0) return "Distance cannot be negative.";
+                return args[at] > Polyline.MAX_LENGTH ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_REVERSE:
+                if (args[at] < 0) return "Negative distance not allowed.";
+                return args[at] > Polyline.MAX_LENGTH ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_SQUARE:
+                if (args[at] < 0) return "Length cannot be negative.";
+                return 4L * args[at] > Polyline.MAX_LENGTH ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_TRIANGLE:
+                return 3 * Math.abs((long) args[at]) > Polyline.MAX_LENGTH ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_POLYGON:
+                if (args[at] < 3) return "Polygon needs at least 3 sides.";
+                if (args[at] > Polyline.MAX_SEGMENTS) return CommandCompiler.TOO_MANY_SIDES;
+                if (args[at + 1] < 0) return "Length cannot be negative.";
+                return (long) args[at] * args[at + 1] > Polyline.MAX_LENGTH ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_SPIRAL:
+                if (args[at] > Polyline.MAX_SEGMENTS) return CommandCompiler.TOO_MANY_TURNS;
+                return Polyline.spiralLength(args[at], args[at + 1]) > Polyline.MAX_LENGTH
+                        ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_PENWIDTH:
+                return args[at] <= 0 ? "Width must be positive." : null;
+            case CompiledScript.OP_TRIANGLE3:
+                int a = args[at];
+                int b = args[at + 1];
+                int c = args[at + 2];
+                if ((long) a + b <= c || (long) a + c <= b || (long) b + c <= a) {
+                    return "Triangle sides do not form a valid triangle.";
+                }
+                return (long) a + b + c > Polyline.MAX_LENGTH ? CommandCompiler.TOO_LONG : null;
+            case CompiledScript.OP_RGB:
+                for (int i = at; i < at + 3; i++) {
+                    if (args[i] < 0 || args[i] > 255) return "RGB values must be between 0 and 255.";
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private void statements(boolean inBlock) {
+        while (true) {
+            Token token = peek();
+            if (token.type == END) {
+                if (inBlock) throw new CompileException(token.line, "Missing ] at end of repeat block.");
+                return;
+            }
+            if (token.isSymbol("]")) {
+                if (!inBlock) throw new CompileException(token.line, "Unexpected ]");
+                return;
+            }
+            if (token.isWord("end") && procedure != null) {
+                return;
+            }
+            statement(inBlock);
+        }
+    }
+
+    private void statement(boolean inBlock) {
+        Token token = next();
+        if (token.type != WORD) {
+            throw new CompileException(token.line, "Expected a command but found " + token.text);
+        }
+
+        switch (token.text) {
+            case "repeat":
+                compileRepeat(token);
+                return;
+            case "to":
+                if (inBlock || procedure != null) {
+                    throw new CompileException(token.line, "Procedures cannot be defined inside another block.");
+                }
+                compileProcedure(token);
+                return;
+            case "make":
+                compileMake(token);
+                return;
+            case "end":
+                throw new CompileException(token.line, "end without a matching to.");
+            default:
+                break;
+        }
+
+        Color colour = COLOURS.get(token.text);
+        if (colour != null) {
+            script.emitColour(token.line, colour);
+            return;
+        }
+
+        ScriptEnvironment.Procedure callee = environment.getProcedure(token.text);
+        if (callee != null) {
+            for (int i = 0; i < callee.getParameterCount(); i++) {
+                emit(expression());
+            }
+            script.emit(token.line, CompiledScript.OP_CALL, callee.getIndex());
+            return;
+        }
+
+        int[] command = COMMANDS.get(token.text);
+        if (command == null && UNSUPPORTED.contains(token.text)) {
+            throw new CompileException(token.line, token.text + " cannot be used inside repeat, make or a procedure.");
+        }
+        if (command == null) {
+            throw new CompileException(token.line, "Unknown command: " + token.text);
+        }
+        compileCommand(token, command);
+    }
+
+    private void compileRepeat(Token token) {
+        Expr count = expression();
+        expect("[");
+        emit(count);
+        int repeatAt = script.getCodeLength();
+        script.emit(token.line, CompiledScript.OP_REPEAT, 0, 0);
+        int bodyStart = script.getCodeLength();
+        int bodyInstruction = script.getInstructionCount();
+        statements(true);
+        expect("]");
+        script.emit(token.line, CompiledScript.OP_LOOP, bodyStart, bodyInstruction);
+        script.patch(repeatAt + 1, script.getCodeLength());
+        script.patch(repeatAt + 2, script.getInstructionCount());
+    }
+
+    private void compileProcedure(Token token) {
+        Token name = next();
+        if (name.type != WORD) {
+            throw new CompileException(name.line, "to requires a procedure name.");
+        }
+        if (COMMANDS.containsKey(name.text) || COLOURS.containsKey(name.text)
+                || name.text.equals("repeat") || name.text.equals("to") || name.text.equals("make")) {
+            throw new CompileException(name.line, "Cannot redefine built-in command " + name.text + ".");
+        }
+
+        List<String> parameters = new ArrayList<>();
+        while (peek().type == VARIABLE) {
+            parameters.add(next().text);
+        }
+
+        CompiledScript outer = script;
+        procedure = environment.define(name.text, parameters);
+        script = procedure.getBody();
+        script.setEnvironment(environment);
+        statements(false);
+        Token end = next();
+        if (!end.isWord("end")) {
+            throw new CompileException(token.line, "Procedure " + name.text + " is missing end.");
+        }
+        script = outer;
+        procedure = null;
+    }
+
+    private void compileMake(Token token) {
+        Token name = next();
+        if (name.type != WORD) {
+            throw new CompileException(token.line, "make requires a variable name.");
+        }
+        Expr value = expression();
+        emit(value);
+        script.emit(token.line, CompiledScript.OP_STORE, environment.globalSlot(name.text));
+    }
+
+    private void compileCommand(Token token, int[] command) {
+        int opcode = command[0];
+        List<Expr> args = new ArrayList<>();
+        if (command[1] == 1 && command.length > 2 && !startsExpression(peek())) {
+            args.add(Expr.constant(command[2], token.line));
+        } else {
+            for (int i = 0; i < command[1]; i++) {
+                args.add(expression());
+            }
+        }
+        if (opcode == CompiledScript.OP_TRIANGLE && peek().isSymbol(",")) {
+            next();
+            args.add(expression());
+            expect(",");
+            args.add(expression());
+            opcode = CompiledScript.OP_TRIANGLE3;
+        }
+
+        boolean constant = true;
+        for (Expr arg : args) {
+            constant &= arg.kind == Expr.CONSTANT;
+        }
+
+        if (constant) {
+            int[] values = new int[args.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = args.get(i).value;
+            }
+            String problem = checkArguments(opcode, values, 0);
+            if (problem != null) {
+                throw new CompileException(token.line, problem);
+            }
+            switch (values.length) {
+                case 0:
+                    script.emit(token.line, opcode);
+                    break;
+                case 1:
+                    script.emit(token.line, opcode, values[0]);
+                    break;
+                case 2:
+                    script.emit(token.line, opcode, values[0], values[1]);
+                    break;
+                default:
+                    if (opcode == CompiledScript.OP_RGB) {
+                        script.emitRgb(token.line, (values[0] << 16) | (values[1] << 8) | values[2]);
+                    } else {
+                        script.emit(token.line, opcode, values[0], values[1], values[2]);
+                    }
+            }
+            return;
+        }
+
+        for (Expr arg : args) {
+            emit(arg);
+        }
+        script.emit(token.line, CompiledScript.OP_APPLY, opcode);
+    }
+
+    private Expr expression() {
+        Expr left = term();
+        while (peek().isSymbol("+") || peek().isSymbol("-")) {
+            Token operator = next();
+            left = Expr.binary(operator, operator.isSymbol("+") ? CompiledScript.OP_ADD : CompiledScript.OP_SUB,
+                    left, term());
+        }
+        return left;
+    }
+
+    private Expr term() {
+        Expr left = factor();
+        while (peek().isSymbol("*") || peek().isSymbol("/") || peek().isSymbol("%")) {
+            Token operator = next();
+            int opcode = operator.isSymbol("*") ? CompiledScript.OP_MUL
+                    : operator.isSymbol("/") ? CompiledScript.OP_DIV : CompiledScript.OP_MOD;
+            left = Expr.binary(operator, opcode, left, factor());
+        }
+        return left;
+    }
+
+    private Expr factor() {
+        Token token = next();
+        switch (token.type) {
+            case NUMBER:
+                return Expr.constant(token.value, token.line);
+            case VARIABLE:
+                if (procedure != null && procedure.parameterIndex(token.text) >= 0) {
+                    return Expr.variable(Expr.LOCAL, procedure.parameterIndex(token.text), token.line);
+                }
+                if (!environment.hasGlobal(token.text)) {
+                    throw new CompileException(token.line, "Unknown variable :" + token.text);
+                }
+                return Expr.variable(Expr.GLOBAL, environment.globalSlot(token.text), token.line);
+            case SYMBOL:
+                if (token.isSymbol("(")) {
+                    Expr inner = expression();
+                    expect(")");
+                    return inner;
+                }
+                if (token.isSymbol("-")) {
+                    return Expr.negate(factor());
+                }
+                if (token.isSymbol("+")) {
+                    return factor();
+                }
+                break;
+            default:
+                break;
+        }
+        throw new CompileException(token.line, "Expected a number or expression but found "
+                + (token.type == END ? "end of line" : token.text));
+    }
+
+    private void emit(Expr expr) {
+        switch (expr.kind) {
+            case Expr.CONSTANT:
+                script.emit(expr.line, CompiledScript.OP_PUSH, expr.value);
+                break;
+            case Expr.LOCAL:
+                script.emit(expr.line, CompiledScript.OP_LOCAL, expr.value);
+                break;
+            case Expr.GLOBAL:
+                script.emit(expr.line, CompiledScript.OP_GLOBAL, expr.value);
+                break;
+            case Expr.NEGATE:
+                emit(expr.left);
+                script.emit(expr.line, CompiledScript.OP_NEG);
+                break;
+            default:
+                emit(expr.left);
+                emit(expr.right);
+                script.emit(expr.line, expr.kind);
+        }
+    }
+
+    private static boolean startsExpression(Token token) {
+        return token.type == NUMBER || token.type == VARIABLE
+                || token.isSymbol("(") || token.isSymbol("-") || token.isSymbol("+");
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.type != END) position++;
+        return token;
+    }
+
+    private void expect(String symbol) {
+        Token token = next();
+        if (!token.isSymbol(symbol)) {
+            throw new CompileException(token.line, "Expected " + symbol + " but found "
+                    + (token.type == END ? "end of line" : token.text));
+        }
+    }
+
+    private static List<Token> tokenize(int line, String text) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c)) {
+                long value = 0;
+                int start = i;
+                while (i < text.length() && Character.isDigit(text.charAt(i))) {
+                    value = value * 10 + (text.charAt(i++) - '0');
+                    if (value > Integer.MAX_VALUE) {
+                        throw new CompileException(line, "Number too large: " + text.substring(start, i));
+                    }
+                }
+                tokens.add(new Token(NUMBER, text.substring(start, i), (int) value, line));
+            } else if (c == ':' || c == '"' || Character.isLetter(c) || c == '_') {
+                int start = c == ':' || c == '"' ? i + 1 : i;
+                i = start;
+                while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) i++;
+                if (i == start) {
+                    throw new CompileException(line, "Expected a name after " + c);
+                }
+                String name = text.substring(start, i).toLowerCase();
+                tokens.add(new Token(c == ':' ? VARIABLE : WORD, name, 0, line));
+            } else if ("+-*/%()[],".indexOf(c) >= 0) {
+                tokens.add(new Token(SYMBOL, String.valueOf(c), 0, line));
+                i++;
+            } else {
+                throw new CompileException(line, "Unexpected character '" + c + "'");
+            }
+        }
+        tokens.add(new Token(END, "", 0, line));
+        return tokens;
+    }
+
+    private static class Token {
+
+        final int type;
+        final String text;
+        final int value;
+        final int line;
+
+        Token(int type, String text, int value, int line) {
+            this.type = type;
+            this.text = text;
+            this.value = value;
+            this.line = line;
+        }
+
+        boolean isSymbol(String symbol) {
+            return type == SYMBOL && text.equals(symbol);
+        }
+
+        boolean isWord(String word) {
+            return type == WORD && text.equals(word);
+        }
+    }
+
+    private static class Expr {
+
+        static final int CONSTANT = -1;
+        static final int LOCAL = -2;
+        static final int GLOBAL = -3;
+        static final int NEGATE = -4;
+
+        final int kind;
+        final int value;
+        final Expr left;
+        final Expr right;
+        int line;
+
+        private Expr(int kind, int value, Expr left, Expr right) {
+            this.kind = kind;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        static Expr constant(int value, int line) {
+            Expr expr = new Expr(CONSTANT, value, null, null);
+            expr.line = line;
+            return expr;
+        }
+
+        static Expr variable(int kind, int slot, int line) {
+            Expr expr = new Expr(kind, slot, null, null);
+            expr.line = line;
+            return expr;
+        }
+
+        static Expr negate(Expr operand) {
+            if (operand.kind == CONSTANT) {
+                return constant(-operand.value, operand.line);
+            }
+            Expr expr = new Expr(NEGATE, 0, operand, null);
+            expr.line = operand.line;
+            return expr;
+        }
+
+        static Expr binary(Token operator, int opcode, Expr left, Expr right) {
+            if (left.kind == CONSTANT && right.kind == CONSTANT) {
+                int a = left.value;
+                int b = right.value;
+                switch (opcode) {
+                    case CompiledScript.OP_ADD:
+                        return constant(a + b, operator.line);
+                    case CompiledScript.OP_SUB:
+                        return constant(a - b, operator.line);
+                    case CompiledScript.OP_MUL:
+                        return constant(a * b, operator.line);
+                    default:
+                        if (b == 0) {
+                            throw new CompileException(operator.line, "Division by zero.");
+                        }
+                        return constant(opcode == CompiledScript.OP_DIV ? a / b : a % b, operator.line);
+                }
+            }
+            Expr expr = new Expr(opcode, 0, left, right);
+            expr.line = operator.line;
+            return expr;
+        }
+    }
+
+    private static class CompileException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        final int line;
+
+        CompileException(int line, String message) {
+            super(message, null, false, false);
+            this.line = line;
+        }
+    }
+}
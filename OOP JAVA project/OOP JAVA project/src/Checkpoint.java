@@ -0,0 +1,129 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class Checkpoint {
+
+    private final int command;
+    private final TurtleState state;
+    private final int segmentCount;
+    private final long[] keys;
+    private final long[] stamps;
+    private final byte[][] tiles;
+    private final int bytes;
+    private final int reused;
+
+    private Checkpoint(int command, TurtleState state, int segmentCount, long[] keys, long[] stamps, byte[][] tiles,
+            int reused) {
+        this.command = command;
+        this.state = state;
+        this.segmentCount = segmentCount;
+        this.keys = keys;
+        this.stamps = stamps;
+        this.tiles = tiles;
+        this.reused = reused;
+        int total = 64 + keys.length * 16;
+        for (byte[] tile : tiles) {
+            total += tile.length;
+        }
+        this.bytes = total;
+    }
+
+    public static Checkpoint capture(int command, TurtleState state, int segmentCount, TileCanvas canvas,
+            Checkpoint previous) {
+        long[] keys = canvas.tileKeys();
+        Arrays.sort(keys);
+        long[] stamps = new long[keys.length];
+        byte[][] tiles = new byte[keys.length][];
+        int reused = 0;
+
+        ByteBuffer pixels = null;
+        ByteArrayOutputStream out = null;
+        byte[] buffer = null;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                stamps[i] = canvas.getStamp(keys[i]);
+                byte[] unchanged = previous != null ? previous.tile(keys[i], stamps[i]) : null;
+                if (unchanged != null) {
+                    tiles[i] = unchanged;
+                    reused++;
+                    continue;
+                }
+
+                if (pixels == null) {
+                    pixels = ByteBuffer.allocate(TileStore.TILE_BYTES);
+                    out = new ByteArrayOutputStream(TileStore.TILE_BYTES / 16);
+                    buffer = new byte[64 * 1024];
+                }
+                pixels.clear();
+                canvas.readTile(keys[i], pixels);
+                deflater.reset();
+                deflater.setInput(pixels.array(), 0, TileStore.TILE_BYTES);
+                deflater.finish();
+                out.reset();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                tiles[i] = out.toByteArray();
+            }
+        } finally {
+            deflater.end();
+        }
+        return new Checkpoint(command, state, segmentCount, keys, stamps, tiles, reused);
+    }
+
+    public void restore(TileCanvas canvas) {
+        canvas.clear();
+        ByteBuffer pixels = ByteBuffer.allocate(TileStore.TILE_BYTES);
+        Inflater inflater = new Inflater();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                inflater.reset();
+                inflater.setInput(tiles[i]);
+                int read = 0;
+                while (read < TileStore.TILE_BYTES && !inflater.finished()) {
+                    read += inflater.inflate(pixels.array(), read, TileStore.TILE_BYTES - read);
+                }
+                pixels.clear();
+                canvas.putTile(keys[i], pixels);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt checkpoint at command " + command, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private byte[] tile(long key, long stamp) {
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 && stamps[index] == stamp ? tiles[index] : null;
+    }
+
+    public int getCommand() {
+        return command;
+    }
+
+    public TurtleState getState() {
+        return state;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int getTileCount() {
+        return keys.length;
+    }
+
+    public int getReusedTiles() {
+        return reused;
+    }
+
+    public int getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+
+public class CheckpointStore {
+
+    public static final int DEFAULT_INTERVAL = 256;
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    private final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+    private final int baseInterval;
+    private int interval;
+    private long budget;
+    private long bytesUsed = 0;
+
+    public CheckpointStore() {
+        this(DEFAULT_INTERVAL, DEFAULT_BUDGET);
+    }
+
+    public CheckpointStore(int interval, long budget) {
+        this.baseInterval = interval;
+        this.interval = interval;
+        this.budget = budget;
+    }
+
+    public void clear() {
+        checkpoints.clear();
+        bytesUsed = 0;
+        interval = baseInterval;
+    }
+
+    public int size() {
+        return checkpoints.size();
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+        enforceBudget();
+    }
+
+    public boolean isDue(int command) {
+        if (checkpoints.isEmpty()) return true;
+        return command - checkpoints.get(checkpoints.size() - 1).getCommand() >= interval;
+    }
+
+    public void add(Checkpoint checkpoint) {
+        dropAfter(checkpoint.getCommand() - 1);
+        checkpoints.add(checkpoint);
+        bytesUsed += checkpoint.getBytes();
+        enforceBudget();
+    }
+
+    public void dropAfter(int command) {
+        while (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).getCommand() > command) {
+            bytesUsed -= checkpoints.remove(checkpoints.size() - 1).getBytes();
+        }
+    }
+
+    public Checkpoint floor(int command) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        Checkpoint found = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Checkpoint candidate = checkpoints.get(mid);
+            if (candidate.getCommand() <= command) {
+                found = candidate;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void enforceBudget() {
+        while (bytesUsed > budget && checkpoints.size() > 2) {
+            ArrayList<Checkpoint> kept = new ArrayList<>();
+            long keptBytes = 0;
+            for (int i = 0; i < checkpoints.size(); i++) {
+                if (i % 2 == 0 || i == checkpoints.size() - 1) {
+                    kept.add(checkpoints.get(i));
+                    keptBytes += checkpoints.get(i).getBytes();
+                }
+            }
+            checkpoints.clear();
+            checkpoints.addAll(kept);
+            bytesUsed = keptBytes;
+            interval *= 2;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+
+public class CommandCompiler {
+
+    static final String TOO_MANY_SIDES = "Number out of range: a polygon can have at most " + Polyline.MAX_SEGMENTS
+            + " sides.";
+    static final String TOO_MANY_TURNS = "Number out of range: a square_spiral can have at most "
+            + Polyline.MAX_SEGMENTS + " turns.";
+    static final String TOO_LONG = "Number out of range: one command can draw at most " + Polyline.MAX_LENGTH
+            + " pixels of line.";
+
+    private static final String[] COMMANDS = {
+            "move", "forward", "left", "right", "pendown", "penup", "reverse", "red", "green", "blue", "yellow",
+            "square", "triangle", "pencolour", "penwidth", "square_spiral", "polygon", "clear", "reset", "about",
+            "save", "load", "savecommands", "loadcommands", "swarm", "framerate", "zoom", "export", "pick", "undo",
+            "seek", "checkpoints", "compression", "savealpha", "lod", "stats", "savevector", "pan"
+    };
+
+    private CommandCompiler() {
+    }
+
+    public static CompiledScript compile(List<String> lines) {
+        return compile(lines, new ScriptEnvironment());
+    }
+
+    public static CompiledScript compile(List<String> lines, ScriptEnvironment environment) {
+        CompiledScript script = new CompiledScript();
+        script.setEnvironment(environment);
+        int lineNumber = 0;
+        for (String line : lines) {
+            compileLine(line, ++lineNumber, script, environment);
+        }
+        BlockCompiler.finish(script, environment);
+        return script;
+    }
+
+    public static CompiledScript compile(BufferedReader reader) throws IOException {
+        ScriptEnvironment environment = new ScriptEnvironment();
+        CompiledScript script = new CompiledScript();
+        script.setEnvironment(environment);
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            compileLine(line, ++lineNumber, script, environment);
+        }
+        BlockCompiler.finish(script, environment);
+        return script;
+    }
+
+    public static CompiledScript compileLine(String input) {
+        CompiledScript script = new CompiledScript();
+        compileLine(input, 1, script);
+        return script;
+    }
+
+    public static void compileLine(String input, int line, CompiledScript script, ScriptEnvironment environment) {
+        if (input == null || input.trim().isEmpty()) return;
+
+        if (BlockCompiler.handles(input, environment)) {
+            BlockCompiler.compileLine(input, line, script, environment);
+        } else {
+            compileLine(input, line, script);
+        }
+    }
+
+    public static void compileLine(String input, int line, CompiledScript script) {
+        if (input == null) return;
+        CommandTokenizer tokens = script.tokenizer();
+        tokens.reset(input);
+        if (!tokens.nextWord()) return;
+
+        String command = tokens.lookup(COMMANDS);
+        if (command == null) {
+            script.error(line, tokens.getColumn(), "Unknown command: " + input);
+            return;
+        }
+
+        switch (command) {
+            case "pendown":
+                if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_PENDOWN);
+                }
+                break;
+
+            case "penup":
+                if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_PENUP);
+                }
+                break;
+
+            case "move":
+            case "forward":
+                if (!number(tokens, line, script, "Missing parameter for command: " + command,
+                        "Invalid number for move/forward distance.")) break;
+                if (tokens.getValue() < 0) {
+                    script.error(line, tokens.getColumn(), "Distance cannot be negative.");
+                } else if (tokens.getValue() > Polyline.MAX_LENGTH) {
+                    script.error(line, tokens.getColumn(), TOO_LONG);
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_MOVE, tokens.getValue());
+                }
+                break;
+
+            case "reverse":
+                if (!optionalNumber(tokens, line, script, 100, "Invalid number for reverse distance.")) break;
+                if (tokens.getValue() < 0) {
+                    script.error(line, tokens.getColumn(), "Negative distance not allowed.");
+                } else if (tokens.getValue() > Polyline.MAX_LENGTH) {
+                    script.error(line, tokens.getColumn(), TOO_LONG);
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_REVERSE, tokens.getValue());
+                }
+                break;
+
+            case "left":
+                if (optionalNumber(tokens, line, script, 90, "Invalid number for left turn angle.")
+                        && end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_LEFT, tokens.getValue());
+                }
+                break;
+
+            case "right":
+                if (optionalNumber(tokens, line, script, 90, "Invalid number for right turn angle.")
+                        && end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_RIGHT, tokens.getValue());
+                }
+                break;
+
+            case "red":
+                if (end(tokens, line, script)) {
+                    script.emitColour(line, Color.RED);
+                }
+                break;
+
+            case "green":
+                if (end(tokens, line, script)) {
+                    script.emitColour(line, Color.GREEN);
+                }
+                break;
+
+            case "blue":
+                if (end(tokens, line, script)) {
+                    script.emitColour(line, Color.BLUE);
+                }
+                break;
+
+            case "yellow":
+                if (end(tokens, line, script)) {
+                    script.emitColour(line, Color.YELLOW);
+                }
+                break;
+
+            case "clear":
+                noArguments(tokens, line, script, CompiledScript.OP_CLEAR);
+                break;
+
+            case "reset":
+                noArguments(tokens, line, script, CompiledScript.OP_RESET);
+                break;
+
+            case "about":
+                noArguments(tokens, line, script, CompiledScript.OP_ABOUT);
+                break;
+
+            case "save":
+                noArguments(tokens, line, script, CompiledScript.OP_SAVE);
+                break;
+
+            case "load":
+                noArguments(tokens, line, script, CompiledScript.OP_LOAD);
+                break;
+
+            case "savecommands":
+                noArguments(tokens, line, script, CompiledScript.OP_SAVECOMMANDS);
+                break;
+
+            case "savevector":
+                noArguments(tokens, line, script, CompiledScript.OP_SAVEVECTOR);
+                break;
+
+            case "loadcommands":
+                noArguments(tokens, line, script, CompiledScript.OP_LOADCOMMANDS);
+                break;
+
+            case "swarm":
+                noArguments(tokens, line, script, CompiledScript.OP_SWARM);
+                break;
+
+            case "framerate":
+                if (!number(tokens, line, script, "framerate command requires frames per second.",
+                        "Invalid number for frame rate.")) break;
+                if (tokens.getValue() < 0) {
+                    script.error(line, tokens.getColumn(), "Frame rate cannot be negative.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_FRAMERATE, tokens.getValue());
+                }
+                break;
+
+            case "zoom":
+                if (!number(tokens, line, script, "zoom command requires a percentage.", "Invalid number for zoom.")) {
+                    break;
+                }
+                if (tokens.getValue() <= 0) {
+                    script.error(line, tokens.getColumn(), "Zoom must be positive.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_ZOOM, tokens.getValue());
+                }
+                break;
+
+            case "pan": {
+                String missing = "pan command requires x and y distances.";
+                String invalid = "Invalid numbers for pan distance.";
+                if (!number(tokens, line, script, missing, invalid)) break;
+                int panX = tokens.getValue();
+                if (number(tokens, line, script, missing, invalid) && end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_PAN, panX, tokens.getValue());
+                }
+                break;
+            }
+
+            case "export": {
+                String missing = "export command requires width and height.";
+                String invalid = "Invalid numbers for export size.";
+                if (!number(tokens, line, script, missing, invalid)) break;
+                int exportWidth = tokens.getValue();
+                int widthColumn = tokens.getColumn();
+                if (!number(tokens, line, script, missing, invalid)) break;
+                int exportHeight = tokens.getValue();
+                if (exportWidth <= 0 || exportHeight <= 0) {
+                    script.error(line, exportWidth <= 0 ? widthColumn : tokens.getColumn(),
+                            "Export size must be positive.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_EXPORT, exportWidth, exportHeight);
+                }
+                break;
+            }
+
+            case "pick": {
+                String missing = "pick command requires x and y.";
+                String invalid = "Invalid numbers for pick position.";
+                if (!number(tokens, line, script, missing, invalid)) break;
+                int pickX = tokens.getValue();
+                if (number(tokens, line, script, missing, invalid) && end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_PICK, pickX, tokens.getValue());
+                }
+                break;
+            }
+
+            case "undo":
+                if (!optionalNumber(tokens, line, script, 1, "Invalid number for undo steps.")) break;
+                if (tokens.getValue() < 1) {
+                    script.error(line, tokens.getColumn(), "Undo steps must be positive.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_UNDO, tokens.getValue());
+                }
+                break;
+
+            case "seek":
+                if (!number(tokens, line, script, "seek command requires a command index.",
+                        "Invalid number for command index.")) break;
+                if (tokens.getValue() < 0) {
+                    script.error(line, tokens.getColumn(), "Command index cannot be negative.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_SEEK, tokens.getValue());
+                }
+                break;
+
+            case "checkpoints":
+                if (!number(tokens, line, script, "checkpoints command requires a memory budget in MB.",
+                        "Invalid number for checkpoint budget.")) break;
+                if (tokens.getValue() < 1) {
+                    script.error(line, tokens.getColumn(), "Checkpoint budget must be at least 1 MB.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_CHECKPOINTS, tokens.getValue());
+                }
+                break;
+
+            case "compression":
+                if (!number(tokens, line, script, "compression command requires a level from 0 to 9.",
+                        "Invalid number for compression level.")) break;
+                if (tokens.getValue() < 0 || tokens.getValue() > 9) {
+                    script.error(line, tokens.getColumn(), "Compression level must be between 0 and 9.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_COMPRESSION, tokens.getValue());
+                }
+                break;
+
+            case "savealpha":
+                if (!tokens.nextWord() || !(tokens.matches("on") || tokens.matches("off"))) {
+                    script.error(line, tokens.getColumn(), "savealpha command requires on or off.");
+                } else {
+                    int alpha = tokens.matches("on") ? 1 : 0;
+                    if (end(tokens, line, script)) {
+                        script.emit(line, CompiledScript.OP_SAVEALPHA, alpha);
+                    }
+                }
+                break;
+
+            case "lod":
+                if (!number(tokens, line, script, "lod command requires a tolerance in hundredths of a pixel.",
+                        "Invalid number for level of detail tolerance.")) break;
+                if (tokens.getValue() < 0 || tokens.getValue() > 10000) {
+                    script.error(line, tokens.getColumn(), "Level of detail tolerance must be between 0 and 10000.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_LOD, tokens.getValue());
+                }
+                break;
+
+            case "stats": {
+                int mode = tokens.nextWord() ? CommandLog.statsMode(tokens.token()) : CompiledScript.STATS_SHOW;
+                if (mode < 0) {
+                    script.error(line, tokens.getColumn(), "stats command takes on, off, reset or json.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_STATS, mode);
+                }
+                break;
+            }
+
+            case "square":
+                if (!number(tokens, line, script, "Square command requires a length.",
+                        "Invalid number for square length.")) break;
+                if (tokens.getValue() < 0) {
+                    script.error(line, tokens.getColumn(), "Length cannot be negative.");
+                } else if (4L * tokens.getValue() > Polyline.MAX_LENGTH) {
+                    script.error(line, tokens.getColumn(), TOO_LONG);
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_SQUARE, tokens.getValue());
+                }
+                break;
+
+            case "pencolour": {
+                String missing = "pencolour command requires 3 RGB values.";
+                int rgb = 0;
+                boolean valid = true;
+                for (int channel = 0; channel < 3 && valid; channel++) {
+                    valid = number(tokens, line, script, missing, "Invalid RGB values.");
+                    if (valid && (tokens.getValue() < 0 || tokens.getValue() > 255)) {
+                        script.error(line, tokens.getColumn(), "RGB values must be between 0 and 255.");
+                        valid = false;
+                    }
+                    rgb = rgb << 8 | tokens.getValue();
+                }
+                if (valid && end(tokens, line, script)) {
+                    script.emitRgb(line, rgb);
+                }
+                break;
+            }
+
+            case "penwidth":
+                if (!number(tokens, line, script, "penwidth command requires a width value.",
+                        "Invalid number for pen width.")) break;
+                if (tokens.getValue() <= 0) {
+                    script.error(line, tokens.getColumn(), "Width must be positive.");
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_PENWIDTH, tokens.getValue());
+                }
+                break;
+
+            case "triangle":
+                if (tokens.count(',') == 2) {
+                    compileCustomTriangle(tokens, line, script);
+                } else if (number(tokens, line, script, "Triangle command requires size or sides.",
+                        "Invalid number for triangle size.")) {
+                    if (3 * Math.abs((long) tokens.getValue()) > Polyline.MAX_LENGTH) {
+                        script.error(line, tokens.getColumn(), TOO_LONG);
+                    } else if (end(tokens, line, script)) {
+                        script.emit(line, CompiledScript.OP_TRIANGLE, tokens.getValue());
+                    }
+                }
+                break;
+
+            case "square_spiral": {
+                String missing = "square_spiral command requires turns and initial length.";
+                String invalid = "Invalid numbers for square_spiral command.";
+                if (!number(tokens, line, script, missing, invalid)) break;
+                int turns = tokens.getValue();
+                int turnsColumn = tokens.getColumn();
+                if (!number(tokens, line, script, missing, invalid)) break;
+                if (turns > Polyline.MAX_SEGMENTS) {
+                    script.error(line, turnsColumn, TOO_MANY_TURNS);
+                } else if (Polyline.spiralLength(turns, tokens.getValue()) > Polyline.MAX_LENGTH) {
+                    script.error(line, tokens.getColumn(), TOO_LONG);
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_SPIRAL, turns, tokens.getValue());
+                }
+                break;
+            }
+
+            case "polygon": {
+                String missing = "polygon command requires sides and length.";
+                String invalid = "Invalid numbers for polygon command.";
+                if (!number(tokens, line, script, missing, invalid)) break;
+                int sides = tokens.getValue();
+                int sidesColumn = tokens.getColumn();
+                if (!number(tokens, line, script, missing, invalid)) break;
+                if (sides < 3) {
+                    script.error(line, sidesColumn, "Polygon needs at least 3 sides.");
+                } else if (sides > Polyline.MAX_SEGMENTS) {
+                    script.error(line, sidesColumn, TOO_MANY_SIDES);
+                } else if (tokens.getValue() < 0) {
+                    script.error(line, tokens.getColumn(), "Length cannot be negative.");
+                } else if ((long) sides * tokens.getValue() > Polyline.MAX_LENGTH) {
+                    script.error(line, tokens.getColumn(), TOO_LONG);
+                } else if (end(tokens, line, script)) {
+                    script.emit(line, CompiledScript.OP_POLYGON, sides, tokens.getValue());
+                }
+                break;
+            }
+
+            default:
+                script.error(line, tokens.getColumn(), "Unknown command: " + input);
+        }
+    }
+
+    private static void compileCustomTriangle(CommandTokenizer tokens, int line, CompiledScript script) {
+        int[] sides = new int[3];
+        for (int i = 0; i < 3; i++) {
+            int status = tokens.nextInt(',');
+            if (status != CommandTokenizer.NUMBER) {
+                script.error(line, tokens.getColumn(), status == CommandTokenizer.OUT_OF_RANGE
+                        ? "Number out of range." : "Invalid numbers for triangle sides.");
+                return;
+            }
+            sides[i] = tokens.getValue();
+        }
+        int a = sides[0];
+        int b = sides[1];
+        int c = sides[2];
+        if ((long) a + b <= c || (long) a + c <= b || (long) b + c <= a) {
+            script.error(line, tokens.getColumn(), "Triangle sides do not form a valid triangle.");
+        } else if ((long) a + b + c > Polyline.MAX_LENGTH) {
+            script.error(line, tokens.getColumn(), TOO_LONG);
+        } else if (end(tokens, line, script)) {
+            script.emit(line, CompiledScript.OP_TRIANGLE3, a, b, c);
+        }
+    }
+
+    private static boolean number(CommandTokenizer tokens, int line, CompiledScript script, String missing,
+                                  String invalid) {
+        int status = tokens.nextInt();
+        switch (status) {
+            case CommandTokenizer.NUMBER:
+                return true;
+            case CommandTokenizer.MISSING:
+                script.error(line, tokens.getColumn(), missing);
+                return false;
+            case CommandTokenizer.OUT_OF_RANGE:
+                script.error(line, tokens.getColumn(), "Number out of range.");
+                return false;
+            default:
+                script.error(line, tokens.getColumn(), invalid);
+                return false;
+        }
+    }
+
+    private static boolean optionalNumber(CommandTokenizer tokens, int line, CompiledScript script, int fallback,
+                                          String invalid) {
+        if (tokens.isBlank()) {
+            tokens.setValue(fallback);
+            return true;
+        }
+        return number(tokens, line, script, invalid, invalid);
+    }
+
+    private static void noArguments(CommandTokenizer tokens, int line, CompiledScript script, int opcode) {
+        if (end(tokens, line, script)) {
+            script.emit(line, opcode);
+        }
+    }
+
+    private static boolean end(CommandTokenizer tokens, int line, CompiledScript script) {
+        if (tokens.isBlank()) return true;
+        tokens.nextWord();
+        script.error(line, tokens.getColumn(), "Unexpected argument: " + tokens.token());
+        return false;
+    }
+}
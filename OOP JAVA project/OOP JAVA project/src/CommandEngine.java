@@ -0,0 +1,196 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.swing.SwingUtilities;
+
+public class CommandEngine {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final BlockingQueue<Queued> queue;
+    private final ReentrantLock frameLock = new ReentrantLock(true);
+    private final Thread worker;
+    private final AtomicLong tickets = new AtomicLong();
+
+    private volatile long cancelledBefore = 0;
+    private volatile long running = Long.MAX_VALUE;
+    private volatile String task = null;
+    private int lastPercent = -10;
+
+    public CommandEngine() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public CommandEngine(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        worker = new Thread(this::runLoop, "turtle-render");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public boolean submit(Runnable command) {
+        return queue.offer(new Queued(command, tickets.getAndIncrement()));
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public boolean isWorkerThread() {
+        return Thread.currentThread() == worker;
+    }
+
+    public void cancel() {
+        int dropped = queue.size();
+        cancelledBefore = tickets.get();
+        queue.clear();
+        System.out.println("Cancelling" + (task != null ? " " + task : "")
+                + (dropped > 0 ? " and " + dropped + " queued commands" : "") + ".");
+    }
+
+    public boolean isCancelRequested() {
+        return running < cancelledBefore;
+    }
+
+    public void checkCancelled() {
+        if (isCancelRequested()) {
+            throw new CancellationException(task != null ? task : "command");
+        }
+    }
+
+    public void beginTask(String name) {
+        task = name;
+        lastPercent = -10;
+    }
+
+    public synchronized void progress(long done, long total) {
+        if (task == null || total <= 0) return;
+        int percent = (int) Math.min(100, done * 100 / total);
+        if (percent / 10 != lastPercent / 10) {
+            lastPercent = percent;
+            System.out.println(task + ": " + percent + "%");
+        }
+    }
+
+    public void endTask() {
+        task = null;
+    }
+
+    public void lockFrame() {
+        frameLock.lock();
+    }
+
+    public void unlockFrame() {
+        frameLock.unlock();
+    }
+
+    public void publish(Runnable paint) {
+        runOnEdt(paint);
+    }
+
+    public void runOnEdt(Runnable action) {
+        callOnEdt(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T callOnEdt(Callable<T> action) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            try {
+                return action.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        AtomicReference<T> result = new AtomicReference<>();
+        int holds = releaseFrame();
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    result.set(action.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            reacquireFrame(holds);
+        }
+        return result.get();
+    }
+
+    public void yieldFrame() {
+        if (frameLock.hasQueuedThreads()) {
+            reacquireFrame(releaseFrame());
+        }
+    }
+
+    public int releaseFrame() {
+        int holds = frameLock.getHoldCount();
+        for (int i = 0; i < holds; i++) {
+            frameLock.unlock();
+        }
+        return holds;
+    }
+
+    public void reacquireFrame(int holds) {
+        for (int i = 0; i < holds; i++) {
+            frameLock.lock();
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            Queued next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            running = next.ticket;
+            if (isCancelRequested()) {
+                running = Long.MAX_VALUE;
+                continue;
+            }
+            frameLock.lock();
+            try {
+                next.command.run();
+            } catch (CancellationException e) {
+                System.out.println("Cancelled " + e.getMessage() + ".");
+            } catch (Throwable e) {
+                // an OutOfMemoryError or StackOverflowError fails the command, not the only render thread
+                System.out.println("Command failed: " + e);
+            } finally {
+                running = Long.MAX_VALUE;
+                endTask();
+                frameLock.unlock();
+            }
+        }
+    }
+
+    private static class Queued {
+        private final Runnable command;
+        private final long ticket;
+
+        Queued(Runnable command, long ticket) {
+            this.command = command;
+            this.ticket = ticket;
+        }
+    }
+}
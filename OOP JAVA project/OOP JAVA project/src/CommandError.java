@@ -0,0 +1,36 @@
+public class CommandError {
+
+    private final int line;
+    private final int column;
+    private final String message;
+
+    public CommandError(int line, String message) {
+        this(line, 0, message);
+    }
+
+    public CommandError(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        if (column > 0) {
+            return "line " + line + ", column " + column + ": " + message;
+        }
+        return "line " + line + ": " + message;
+    }
+}
@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("turtlegraphics.Command")
+@Label("Turtle Command")
+@Category("Turtle Graphics")
+@StackTrace(false)
+public class CommandEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
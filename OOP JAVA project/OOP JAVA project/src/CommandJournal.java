@@ -0,0 +1,378 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class CommandJournal implements Closeable {
+
+    public static final int VERSION = 1;
+
+    public static final int APPEND = 1;
+    public static final int MOVE = 2;
+    public static final int RESET = 3;
+
+    static final byte[] MAGIC = {'T', 'G', 'J', 'L'};
+    static final int HEADER_SIZE = MAGIC.length + 1;
+
+    private static final int SNAPSHOT = 0;
+    private static final int MAX_BATCH = 4096;
+    private static final int MAX_PAYLOAD = 1 << 24;
+    private static final Entry CLOSE = new Entry(0, null, 0, 0, 0);
+
+    private final File file;
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final List<Entry> recovered = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private final Thread writer;
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private long discardedBytes = 0;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    private CommandJournal(File file) throws IOException {
+        this.file = file;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        long valid = recover();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (valid == 0) {
+            channel.truncate(0);
+            writeFully(channel, header());
+            channel.force(true);
+        } else {
+            discardedBytes = channel.size() - valid;
+            channel.truncate(valid);
+        }
+        channel.position(channel.size());
+
+        writer = new Thread(this::writeLoop, "turtle-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static CommandJournal open(File file) throws IOException {
+        return new CommandJournal(file);
+    }
+
+    public static File defaultFile() {
+        String path = System.getProperty("turtlegraphics.journal");
+        if (path != null) {
+            return path.isEmpty() ? null : new File(path);
+        }
+        return new File(new File(System.getProperty("user.home"), ".turtlegraphics"), "journal.bin");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<Entry> getRecoveredEntries() {
+        return recovered;
+    }
+
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    public void append(String command) {
+        enqueue(new Entry(APPEND, command, 0, 0, 0));
+    }
+
+    public void moveTo(int command) {
+        enqueue(new Entry(MOVE, null, command, 0, 0));
+    }
+
+    public void reset(File source) {
+        File absolute = source.getAbsoluteFile();
+        enqueue(new Entry(RESET, absolute.getPath(), 0, absolute.length(), absolute.lastModified()));
+    }
+
+    public void compact(File source, List<String> commands, int applied) {
+        enqueue(new Entry(SNAPSHOT, null, 0, 0, 0));
+        if (source != null) {
+            reset(source);
+        }
+        for (String command : commands) {
+            append(command);
+        }
+        moveTo(applied);
+    }
+
+    private void enqueue(Entry entry) {
+        if (closed) return;
+        IOException error = failure;
+        if (error != null) {
+            failure = null;
+            System.out.println("Command journal write failed: " + error.getMessage());
+        }
+        queue.offer(entry);
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        queue.offer(CLOSE);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        boolean running = true;
+        try {
+            while (running) {
+                batch.clear();
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                int start = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    Entry entry = batch.get(i);
+                    if (entry == CLOSE) {
+                        running = false;
+                        batch.subList(i, batch.size()).clear();
+                        break;
+                    }
+                    if (entry.type == RESET || entry.type == SNAPSHOT) {
+                        start = i;
+                    }
+                }
+                if (batch.isEmpty()) continue;
+
+                long mark = -1;
+                try {
+                    int type = batch.get(start).type;
+                    if (type == RESET || type == SNAPSHOT) {
+                        compact(batch.subList(start, batch.size()));
+                    } else {
+                        mark = channel.position();
+                        commit(channel, batch);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    buffer.clear();
+                    if (mark >= 0) {
+                        try {
+                            channel.truncate(mark);
+                        } catch (IOException ignored) {
+                            // recovery stops at the torn record anyway
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    private void commit(FileChannel target, List<Entry> batch) throws IOException {
+        for (Entry entry : batch) {
+            if (entry.type == SNAPSHOT) continue;
+            byte[] payload = entry.payload();
+            int size = 1 + 4 + payload.length + 4;
+            if (buffer.remaining() < size) {
+                buffer.flip();
+                writeFully(target, buffer);
+                buffer.clear();
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocateDirect(size);
+                }
+            }
+            crc.reset();
+            crc.update(entry.type);
+            crc.update(payload);
+            buffer.put((byte) entry.type);
+            buffer.putInt(payload.length);
+            buffer.put(payload);
+            buffer.putInt((int) crc.getValue());
+        }
+        buffer.flip();
+        writeFully(target, buffer);
+        buffer.clear();
+        target.force(false);
+    }
+
+    private void compact(List<Entry> batch) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel fresh = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(fresh, header());
+            commit(fresh, batch);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel.close();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    private long recover() throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) return 0;
+
+        CRC32 check = new CRC32();
+        ByteBuffer data = ByteBuffer.allocate(256 * 1024).flip();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            fill(in, data, HEADER_SIZE);
+            for (byte b : MAGIC) {
+                if (data.get() != b) {
+                    System.out.println(file.getName() + " is not a command journal; starting a new one.");
+                    return 0;
+                }
+            }
+            int version = data.get() & 0xFF;
+            if (version > VERSION) {
+                System.out.println(file.getName() + " uses journal version " + version + "; starting a new one.");
+                return 0;
+            }
+
+            long valid = HEADER_SIZE;
+            while (fill(in, data, 1 + 4)) {
+                int start = data.position();
+                int type = data.get() & 0xFF;
+                int length = data.getInt();
+                if (type < APPEND || type > RESET || length < 0 || length > MAX_PAYLOAD) break;
+                int size = 1 + 4 + length + 4;
+                data.position(start);
+                if (data.capacity() < size) {
+                    data = ByteBuffer.allocate(size).put(data).flip();
+                }
+                if (!fill(in, data, size)) break;
+                start = data.position();
+                int offset = start + 1 + 4;
+
+                check.reset();
+                check.update(type);
+                check.update(data.array(), offset, length);
+                if ((int) check.getValue() != data.getInt(offset + length)) break;
+
+                Entry entry = Entry.decode(type, data.array(), offset, length);
+                if (entry == null) break;
+                if (type == RESET) {
+                    recovered.clear();
+                }
+                recovered.add(entry);
+                data.position(start + size);
+                valid += size;
+            }
+            return valid;
+        }
+    }
+
+    private static boolean fill(FileChannel in, ByteBuffer data, int wanted) throws IOException {
+        if (data.remaining() >= wanted) return true;
+        data.compact();
+        while (data.position() < wanted) {
+            if (in.read(data) < 0) break;
+        }
+        data.flip();
+        return data.remaining() >= wanted;
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.put((byte) VERSION);
+        return header.flip();
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            target.write(data);
+        }
+    }
+
+    public static class Entry {
+        private final int type;
+        private final String text;
+        private final int command;
+        private final long length;
+        private final long modified;
+
+        private Entry(int type, String text, int command, long length, long modified) {
+            this.type = type;
+            this.text = text;
+            this.command = command;
+            this.length = length;
+            this.modified = modified;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getCommand() {
+            return command;
+        }
+
+        public File getSource() {
+            return new File(text);
+        }
+
+        public boolean isSourceUnchanged() {
+            File source = getSource();
+            return source.length() == length && source.lastModified() == modified;
+        }
+
+        private byte[] payload() {
+            switch (type) {
+                case APPEND:
+                    return text.getBytes(StandardCharsets.UTF_8);
+                case MOVE:
+                    return ByteBuffer.allocate(4).putInt(command).array();
+                default:
+                    byte[] path = text.getBytes(StandardCharsets.UTF_8);
+                    return ByteBuffer.allocate(16 + path.length).putLong(length).putLong(modified).put(path).array();
+            }
+        }
+
+        private static Entry decode(int type, byte[] payload, int offset, int length) {
+            switch (type) {
+                case APPEND:
+                    return new Entry(APPEND, new String(payload, offset, length, StandardCharsets.UTF_8), 0, 0, 0);
+                case MOVE:
+                    return length == 4 ? new Entry(MOVE, null, ByteBuffer.wrap(payload, offset, 4).getInt(), 0, 0)
+                            : null;
+                default:
+                    if (length < 16) return null;
+                    ByteBuffer data = ByteBuffer.wrap(payload, offset, length);
+                    long size = data.getLong();
+                    long modified = data.getLong();
+                    String path = new String(payload, offset + 16, length - 16, StandardCharsets.UTF_8);
+                    return new Entry(RESET, path, 0, size, modified);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class CommandLog {
+
+    public static final String EXTENSION = "tlog";
+    public static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'T', 'G', 'C', 'L'};
+    static final int HEADER_SIZE = MAGIC.length + 2;
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    static final int FLAG_DEFLATE = 1;
+
+    static final int RECORD_PALETTE = 0xFE;
+    static final int RECORD_TEXT = 0xFF;
+
+    private static final String[] NAMES = {
+            "pendown", "penup", "move", "reverse", "left", "right", null, "penwidth", "square", "triangle",
+            null, "square_spiral", "clear", "reset", "about", "save", "load", "savecommands", "loadcommands",
+            "framerate", "zoom", "export", "pick", "undo", "seek", "checkpoints", "compression", null, null,
+            null, null, null, null, null, null, null, null, null, null, null, null, null, null, "polygon", "swarm", "stats",
+            "lod", "savevector", "pan"
+    };
+
+    private CommandLog() {
+    }
+
+    public static boolean isCommandLog(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) return false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.get(i) != MAGIC[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    static boolean isEncodable(int opcode) {
+        return opcode < NAMES.length && !CompiledScript.isControl(opcode)
+                && (NAMES[opcode] != null || opcode == CompiledScript.OP_COLOUR
+                || opcode == CompiledScript.OP_TRIANGLE3 || opcode == CompiledScript.OP_SAVEALPHA);
+    }
+
+    private static final String[] STATS_MODES = {"", "on", "off", "reset", "json"};
+
+    static String name(int opcode) {
+        switch (opcode) {
+            case CompiledScript.OP_COLOUR:
+                return "colour";
+            case CompiledScript.OP_TRIANGLE3:
+                return "triangle3";
+            case CompiledScript.OP_SAVEALPHA:
+                return "savealpha";
+            case CompiledScript.OP_RGB:
+                return "pencolour";
+            default:
+                return opcode < NAMES.length && NAMES[opcode] != null ? NAMES[opcode] : "op" + opcode;
+        }
+    }
+
+    static int statsMode(String word) {
+        for (int mode = 1; mode < STATS_MODES.length; mode++) {
+            if (STATS_MODES[mode].equalsIgnoreCase(word)) return mode;
+        }
+        return -1;
+    }
+
+    static String describe(int opcode, int[] operands, int rgb) {
+        switch (opcode) {
+            case CompiledScript.OP_COLOUR:
+                switch (rgb & 0xFFFFFF) {
+                    case 0xFF0000:
+                        return "red";
+                    case 0x00FF00:
+                        return "green";
+                    case 0x0000FF:
+                        return "blue";
+                    case 0xFFFF00:
+                        return "yellow";
+                    default:
+                        Color colour = new Color(rgb);
+                        return "pencolour " + colour.getRed() + " " + colour.getGreen() + " " + colour.getBlue();
+                }
+            case CompiledScript.OP_TRIANGLE3:
+                return "triangle " + operands[0] + "," + operands[1] + "," + operands[2];
+            case CompiledScript.OP_SAVEALPHA:
+                return "savealpha " + (operands[0] != 0 ? "on" : "off");
+            case CompiledScript.OP_STATS:
+                return operands[0] == CompiledScript.STATS_SHOW ? "stats" : "stats " + STATS_MODES[operands[0]];
+            default:
+                StringBuilder text = new StringBuilder(NAMES[opcode]);
+                for (int i = 0; i < CompiledScript.arity(opcode); i++) {
+                    text.append(' ').append(operands[i]);
+                }
+                return text.toString();
+        }
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            zigzag |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed number in command log.");
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class CommandLogReader {
+
+    public static final int BATCH_SIZE = MappedCommandStream.BATCH_SIZE;
+
+    private static final int MAX_RECORD_SIZE = 1 + 4 + 1 + 3 * 5;
+    private static final int DESCRIPTION_BITS = 12;
+
+    private final CompiledScript chunk = new CompiledScript();
+    private final ScriptEnvironment environment = new ScriptEnvironment();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CommandLog.BUFFER_SIZE);
+    private final ByteBuffer input = ByteBuffer.allocateDirect(CommandLog.BUFFER_SIZE);
+    private final long[] descriptionKeys = new long[1 << DESCRIPTION_BITS];
+    private final String[] descriptions = new String[1 << DESCRIPTION_BITS];
+    private final int[] operands = new int[3];
+    private final List<String> history;
+
+    private FileChannel channel;
+    private Inflater inflater;
+    private boolean endOfFile;
+    private int[] palette = new int[16];
+    private int paletteSize = 0;
+    private int line = 0;
+    private long bytesRead = 0;
+
+    public CommandLogReader() {
+        this(null);
+    }
+
+    public CommandLogReader(List<String> history) {
+        this.history = history;
+    }
+
+    public static long read(File file, Consumer<CompiledScript> sink) throws IOException {
+        CommandLogReader reader = new CommandLogReader();
+        reader.run(file, sink);
+        return reader.getBytesRead();
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public ScriptEnvironment getEnvironment() {
+        return environment;
+    }
+
+    public void run(File file, Consumer<CompiledScript> sink) throws IOException {
+        try (FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel = opened;
+            endOfFile = false;
+            bytesRead = 0;
+            buffer.clear().flip();
+            readHeader(file);
+
+            while (fill(MAX_RECORD_SIZE)) {
+                try {
+                    readRecord();
+                } catch (BufferUnderflowException e) {
+                    throw new EOFException("Command log ends inside command " + (line + 1) + ".");
+                }
+                if (chunk.getInstructionCount() >= BATCH_SIZE || chunk.getErrors().size() >= BATCH_SIZE) {
+                    flush(sink);
+                }
+            }
+            BlockCompiler.finish(chunk, environment);
+            flush(sink);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+            channel = null;
+        }
+    }
+
+    private void readHeader(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CommandLog.HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+        }
+        bytesRead += header.position();
+        header.flip();
+        if (header.remaining() < CommandLog.HEADER_SIZE) {
+            throw new IOException(file.getName() + " is not a command log.");
+        }
+        for (byte b : CommandLog.MAGIC) {
+            if (header.get() != b) {
+                throw new IOException(file.getName() + " is not a command log.");
+            }
+        }
+        int version = header.get() & 0xFF;
+        int flags = header.get() & 0xFF;
+        if (version > CommandLog.VERSION) {
+            throw new IOException(file.getName() + " uses command log version " + version
+                    + "; this build reads up to version " + CommandLog.VERSION + ".");
+        }
+        if ((flags & CommandLog.FLAG_DEFLATE) != 0) {
+            inflater = new Inflater(true);
+            input.clear().flip();
+        }
+    }
+
+    private void readRecord() throws IOException {
+        int opcode = buffer.get() & 0xFF;
+        if (opcode == CommandLog.RECORD_PALETTE) {
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, paletteSize * 2);
+            }
+            palette[paletteSize++] = buffer.getInt();
+            return;
+        }
+
+        line++;
+        if (opcode == CommandLog.RECORD_TEXT) {
+            String text = readText(CommandLog.getVarint(buffer));
+            if (history != null) {
+                history.add(text);
+            }
+            CommandCompiler.compileLine(text, line, chunk, environment);
+            return;
+        }
+
+        if (!CommandLog.isEncodable(opcode)) {
+            throw new IOException("Corrupt command log: unknown opcode " + opcode + " at command " + line + ".");
+        }
+        int arity = CompiledScript.arity(opcode);
+        for (int i = 0; i < arity; i++) {
+            operands[i] = CommandLog.getVarint(buffer);
+        }
+
+        int rgb = 0;
+        if (opcode == CompiledScript.OP_COLOUR) {
+            if (operands[0] < 0 || operands[0] >= paletteSize) {
+                throw new IOException("Corrupt command log: bad colour at command " + line + ".");
+            }
+            rgb = palette[operands[0]];
+            chunk.emitRgb(line, rgb & 0xFFFFFF);
+        } else if (arity == 0) {
+            chunk.emit(line, opcode);
+        } else if (arity == 1) {
+            chunk.emit(line, opcode, operands[0]);
+        } else if (arity == 2) {
+            chunk.emit(line, opcode, operands[0], operands[1]);
+        } else {
+            chunk.emit(line, opcode, operands[0], operands[1], operands[2]);
+        }
+        if (history != null) {
+            history.add(describe(opcode, arity, rgb));
+        }
+    }
+
+    private String describe(int opcode, int arity, int rgb) {
+        if (arity > 1) {
+            return CommandLog.describe(opcode, operands, rgb);
+        }
+        long key = ((long) (opcode + 1) << 32) | ((opcode == CompiledScript.OP_COLOUR ? rgb : arity == 1 ? operands[0] : 0)
+                & 0xFFFFFFFFL);
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - DESCRIPTION_BITS));
+        if (descriptionKeys[slot] != key) {
+            descriptionKeys[slot] = key;
+            descriptions[slot] = CommandLog.describe(opcode, operands, rgb);
+        }
+        return descriptions[slot];
+    }
+
+    private String readText(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupt command log: bad text length at command " + line + ".");
+        }
+        if (length <= buffer.remaining()) {
+            String text = StandardCharsets.UTF_8.decode(buffer.slice().limit(length)).toString();
+            buffer.position(buffer.position() + length);
+            return text;
+        }
+        byte[] bytes = new byte[length];
+        for (int offset = 0; offset < length; ) {
+            if (!buffer.hasRemaining() && !fill(1)) {
+                throw new EOFException("Command log ends inside command " + line + ".");
+            }
+            int n = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, n);
+            offset += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean fill(int wanted) throws IOException {
+        if (buffer.remaining() >= wanted || endOfFile) {
+            return buffer.hasRemaining();
+        }
+        buffer.compact();
+        while (buffer.position() < wanted) {
+            if (inflater == null) {
+                int n = channel.read(buffer);
+                if (n < 0) {
+                    endOfFile = true;
+                    break;
+                }
+                bytesRead += n;
+            } else if (!inflate()) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.hasRemaining();
+    }
+
+    private boolean inflate() throws IOException {
+        if (inflater.finished()) return false;
+        if (inflater.needsInput()) {
+            input.clear();
+            int n = channel.read(input);
+            if (n < 0) {
+                throw new EOFException("Command log is truncated after command " + line + ".");
+            }
+            bytesRead += n;
+            input.flip();
+            inflater.setInput(input);
+        }
+        try {
+            inflater.inflate(buffer);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt command log after command " + line + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void flush(Consumer<CompiledScript> sink) {
+        if (chunk.getInstructionCount() > 0 || chunk.hasErrors()) {
+            sink.accept(chunk);
+            chunk.clear();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+public class CommandLogWriter implements Closeable {
+
+    private static final int MAX_RECORD_SIZE = 1 + 3 * 5;
+    private static final int MAX_CACHED_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CommandLog.BUFFER_SIZE);
+    private final ByteBuffer output = ByteBuffer.allocateDirect(CommandLog.BUFFER_SIZE);
+    private final Deflater deflater;
+    private final CompiledScript scratch = new CompiledScript();
+    private final ScriptEnvironment environment = new ScriptEnvironment();
+    private final Map<Integer, Integer> palette = new HashMap<>();
+    private final Map<String, int[]> records = new HashMap<>();
+
+    private int line = 0;
+    private long bytesWritten = 0;
+    private int textRecords = 0;
+
+    public CommandLogWriter(File file) throws IOException {
+        this(file, true);
+    }
+
+    public CommandLogWriter(File file, boolean compressed) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        deflater = compressed ? new Deflater(Deflater.BEST_SPEED, true) : null;
+        output.put(CommandLog.MAGIC);
+        output.put((byte) CommandLog.VERSION);
+        output.put((byte) (compressed ? CommandLog.FLAG_DEFLATE : 0));
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten + output.position();
+    }
+
+    public int getTextRecords() {
+        return textRecords;
+    }
+
+    public void append(String input) throws IOException {
+        line++;
+        if (!environment.isPending()) {
+            int[] record = records.get(input);
+            if (record != null) {
+                writeRecord(record);
+                return;
+            }
+        }
+        if (input.trim().isEmpty()) {
+            appendText(input);
+            return;
+        }
+        if (BlockCompiler.handles(input, environment)) {
+            BlockCompiler.compileLine(input, line, scratch, environment);
+            scratch.clear();
+            appendText(input);
+            return;
+        }
+
+        CommandCompiler.compileLine(input, line, scratch);
+        int[] code = scratch.getCode();
+        int opcode = code[0];
+        if (scratch.hasErrors() || scratch.getInstructionCount() != 1 || !CommandLog.isEncodable(opcode)) {
+            scratch.clear();
+            appendText(input);
+            return;
+        }
+
+        int[] record = opcode == CompiledScript.OP_COLOUR
+                ? new int[] {opcode, scratch.getPalette()[code[1]].getRGB()}
+                : Arrays.copyOf(code, 1 + CompiledScript.arity(opcode));
+        scratch.clear();
+        if (records.size() < MAX_CACHED_RECORDS) {
+            records.put(input, record);
+        }
+        writeRecord(record);
+    }
+
+    private void writeRecord(int[] record) throws IOException {
+        ensure(MAX_RECORD_SIZE + 5);
+        int opcode = record[0];
+        if (opcode == CompiledScript.OP_COLOUR) {
+            Integer index = palette.get(record[1]);
+            if (index == null) {
+                index = palette.size();
+                palette.put(record[1], index);
+                buffer.put((byte) CommandLog.RECORD_PALETTE);
+                buffer.putInt(record[1]);
+            }
+            buffer.put((byte) opcode);
+            CommandLog.putVarint(buffer, index);
+        } else {
+            buffer.put((byte) opcode);
+            for (int i = 1; i < record.length; i++) {
+                CommandLog.putVarint(buffer, record[i]);
+            }
+        }
+    }
+
+    private void appendText(String input) throws IOException {
+        byte[] text = input.getBytes(StandardCharsets.UTF_8);
+        ensure(1 + 5);
+        buffer.put((byte) CommandLog.RECORD_TEXT);
+        CommandLog.putVarint(buffer, text.length);
+        for (int offset = 0; offset < text.length; ) {
+            ensure(1);
+            int length = Math.min(buffer.remaining(), text.length - offset);
+            buffer.put(text, offset, length);
+            offset += length;
+        }
+        textRecords++;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        if (deflater == null) {
+            writeOutput();
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+        } else {
+            deflater.setInput(buffer);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        buffer.clear();
+    }
+
+    private void deflate() throws IOException {
+        deflater.deflate(output);
+        if (output.remaining() < 1024) {
+            writeOutput();
+        }
+    }
+
+    private void writeOutput() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            bytesWritten += channel.write(output);
+        }
+        output.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+            if (deflater != null) {
+                deflater.setInput(buffer.flip());
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+            }
+            writeOutput();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CommandMetrics {
+
+    public static final String PARSE = "parse";
+    public static final String REPAINT = "repaint";
+    public static final String REPLAY = "replay";
+    public static final String LOAD_COMMANDS = "load-commands";
+    public static final String SAVE_COMMANDS = "save-commands";
+    public static final String LOAD_IMAGE = "load-image";
+    public static final String SAVE_IMAGE = "save-image";
+
+    private final LatencyHistogram[] commands = new LatencyHistogram[CompiledScript.opcodeCount()];
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private long started = System.nanoTime();
+
+    public void command(int opcode, long nanos) {
+        LatencyHistogram histogram = commands[opcode];
+        if (histogram == null) {
+            histogram = commands[opcode] = new LatencyHistogram();
+        }
+        histogram.record(nanos);
+
+        CommandEvent event = new CommandEvent();
+        if (event.isEnabled()) {
+            event.command = CommandLog.name(opcode);
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    public void phase(String name, long nanos) {
+        phase(name, nanos, 0, 0);
+    }
+
+    public synchronized void phase(String name, long nanos, long bytesRead, long bytesWritten) {
+        Phase phase = phases.computeIfAbsent(name, key -> new Phase());
+        phase.latency.record(nanos);
+        phase.bytesRead += bytesRead;
+        phase.bytesWritten += bytesWritten;
+
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = name;
+            event.latency = nanos;
+            event.bytesRead = bytesRead;
+            event.bytesWritten = bytesWritten;
+            event.commit();
+        }
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : commands) {
+            if (histogram != null) {
+                histogram.reset();
+            }
+        }
+        phases.clear();
+        started = System.nanoTime();
+    }
+
+    public synchronized String report() {
+        StringBuilder text = new StringBuilder();
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram histogram : commands) {
+            if (histogram != null) {
+                all.add(histogram);
+            }
+        }
+        text.append(String.format("Statistics over %s: %d commands%n", duration(System.nanoTime() - started),
+                all.getCount()));
+        text.append(String.format("%-16s %10s %10s %10s %10s %10s %10s%n",
+                "command", "count", "mean", "p50", "p99", "p999", "max"));
+        for (int opcode = 0; opcode < commands.length; opcode++) {
+            LatencyHistogram histogram = commands[opcode];
+            if (histogram != null && histogram.getCount() > 0) {
+                row(text, CommandLog.name(opcode), histogram);
+                text.append('\n');
+            }
+        }
+        if (all.getCount() > 0) {
+            row(text, "all", all);
+            text.append('\n');
+        }
+        if (!phases.isEmpty()) {
+            text.append(String.format("%-16s %10s %10s %10s %10s %10s %10s %12s %12s%n",
+                    "phase", "count", "mean", "p50", "p99", "p999", "max", "read", "written"));
+            for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+                Phase phase = entry.getValue();
+                row(text, entry.getKey(), phase.latency);
+                text.append(String.format(" %12s %12s%n", bytes(phase.bytesRead), bytes(phase.bytesWritten)));
+            }
+        }
+        return text.toString();
+    }
+
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"uptimeNanos\": ").append(System.nanoTime() - started).append(",\n  \"commands\": {");
+        String separator = "\n";
+        for (int opcode = 0; opcode < commands.length; opcode++) {
+            LatencyHistogram histogram = commands[opcode];
+            if (histogram != null && histogram.getCount() > 0) {
+                json.append(separator).append("    \"").append(CommandLog.name(opcode)).append("\": ");
+                histogramJson(json, histogram);
+                json.append('}');
+                separator = ",\n";
+            }
+        }
+        json.append("\n  },\n  \"phases\": {");
+        separator = "\n";
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": ");
+            histogramJson(json, phase.latency);
+            json.append(", \"bytesRead\": ").append(phase.bytesRead)
+                    .append(", \"bytesWritten\": ").append(phase.bytesWritten).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static void histogramJson(StringBuilder json, LatencyHistogram histogram) {
+        json.append("{\"count\": ").append(histogram.getCount())
+                .append(", \"meanNanos\": ").append(histogram.getMean())
+                .append(", \"p50Nanos\": ").append(histogram.percentile(0.5))
+                .append(", \"p99Nanos\": ").append(histogram.percentile(0.99))
+                .append(", \"p999Nanos\": ").append(histogram.percentile(0.999))
+                .append(", \"maxNanos\": ").append(histogram.getMax());
+    }
+
+    private static void row(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append(String.format("%-16s %10d %10s %10s %10s %10s %10s", name, histogram.getCount(),
+                duration(histogram.getMean()), duration(histogram.percentile(0.5)),
+                duration(histogram.percentile(0.99)), duration(histogram.percentile(0.999)),
+                duration(histogram.getMax())));
+    }
+
+    private static String duration(long nanos) {
+        if (nanos < 1_000) return nanos + " ns";
+        if (nanos < 1_000_000) return String.format("%.1f us", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format("%.1f ms", nanos / 1e6);
+        return String.format("%.2f s", nanos / 1e9);
+    }
+
+    private static String bytes(long count) {
+        if (count < 1024) return count + " B";
+        if (count < 1024 * 1024) return String.format("%.1f KB", count / 1024.0);
+        return String.format("%.1f MB", count / (1024.0 * 1024));
+    }
+
+    private static class Phase {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long bytesRead = 0;
+        private long bytesWritten = 0;
+    }
+}
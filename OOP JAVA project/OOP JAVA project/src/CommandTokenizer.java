@@ -0,0 +1,144 @@
+public class CommandTokenizer {
+
+    public static final int NUMBER = 0;
+    public static final int MISSING = 1;
+    public static final int INVALID = 2;
+    public static final int OUT_OF_RANGE = 3;
+
+    private CharSequence text = "";
+    private int length = 0;
+    private int position = 0;
+    private int start = 0;
+    private int end = 0;
+    private int value = 0;
+
+    public void reset(CharSequence text) {
+        this.text = text;
+        length = text.length();
+        position = 0;
+        start = 0;
+        end = 0;
+    }
+
+    public boolean isBlank() {
+        skipWhitespace();
+        return position == length;
+    }
+
+    public boolean nextWord() {
+        skipWhitespace();
+        start = position;
+        while (position < length && !Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        end = position;
+        return end > start;
+    }
+
+    public int nextInt() {
+        skipWhitespace();
+        start = position;
+        while (position < length && !Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        end = position;
+        return parseInt(start, end);
+    }
+
+    public int nextInt(char separator) {
+        skipWhitespace();
+        start = position;
+        while (position < length && text.charAt(position) != separator
+                && !Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        end = position;
+        int status = parseInt(start, end);
+        skipWhitespace();
+        if (position < length && text.charAt(position) == separator) {
+            position++;
+        }
+        return status;
+    }
+
+    public int count(char c) {
+        int count = 0;
+        for (int i = position; i < length; i++) {
+            if (text.charAt(i) == c) count++;
+        }
+        return count;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public void setValue(int value) {
+        this.value = value;
+    }
+
+    public int getColumn() {
+        return start + 1;
+    }
+
+    public int getNextColumn() {
+        skipWhitespace();
+        return position + 1;
+    }
+
+    public boolean matches(String word) {
+        if (end - start != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public String lookup(String[] words) {
+        for (String word : words) {
+            if (matches(word)) return word;
+        }
+        return null;
+    }
+
+    public String token() {
+        return text.subSequence(start, end).toString();
+    }
+
+    private int parseInt(int from, int to) {
+        if (from == to) return MISSING;
+        int i = from;
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == to) return INVALID;
+        }
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return INVALID;
+            result = result * 10 + digit;
+            if (result > Integer.MAX_VALUE + 1L) {
+                while (++i < to) {
+                    digit = text.charAt(i) - '0';
+                    if (digit < 0 || digit > 9) return INVALID;
+                }
+                return OUT_OF_RANGE;
+            }
+        }
+        if (negative) {
+            result = -result;
+        } else if (result > Integer.MAX_VALUE) {
+            return OUT_OF_RANGE;
+        }
+        value = (int) result;
+        return NUMBER;
+    }
+
+    private void skipWhitespace() {
+        while (position < length && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CompiledScript {
+
+    public static final int OP_PENDOWN = 0;
+    public static final int OP_PENUP = 1;
+    public static final int OP_MOVE = 2;
+    public static final int OP_REVERSE = 3;
+    public static final int OP_LEFT = 4;
+    public static final int OP_RIGHT = 5;
+    public static final int OP_COLOUR = 6;
+    public static final int OP_PENWIDTH = 7;
+    public static final int OP_SQUARE = 8;
+    public static final int OP_TRIANGLE = 9;
+    public static final int OP_TRIANGLE3 = 10;
+    public static final int OP_SPIRAL = 11;
+    public static final int OP_CLEAR = 12;
+    public static final int OP_RESET = 13;
+    public static final int OP_ABOUT = 14;
+    public static final int OP_SAVE = 15;
+    public static final int OP_LOAD = 16;
+    public static final int OP_SAVECOMMANDS = 17;
+    public static final int OP_LOADCOMMANDS = 18;
+    public static final int OP_FRAMERATE = 19;
+    public static final int OP_ZOOM = 20;
+    public static final int OP_EXPORT = 21;
+    public static final int OP_PICK = 22;
+    public static final int OP_UNDO = 23;
+    public static final int OP_SEEK = 24;
+    public static final int OP_CHECKPOINTS = 25;
+    public static final int OP_COMPRESSION = 26;
+    public static final int OP_SAVEALPHA = 27;
+    public static final int OP_RGB = 28;
+
+    public static final int OP_PUSH = 29;
+    public static final int OP_LOCAL = 30;
+    public static final int OP_GLOBAL = 31;
+    public static final int OP_STORE = 32;
+    public static final int OP_ADD = 33;
+    public static final int OP_SUB = 34;
+    public static final int OP_MUL = 35;
+    public static final int OP_DIV = 36;
+    public static final int OP_MOD = 37;
+    public static final int OP_NEG = 38;
+    public static final int OP_APPLY = 39;
+    public static final int OP_REPEAT = 40;
+    public static final int OP_LOOP = 41;
+    public static final int OP_CALL = 42;
+
+    public static final int OP_POLYGON = 43;
+    public static final int OP_SWARM = 44;
+    public static final int OP_STATS = 45;
+    public static final int OP_LOD = 46;
+    public static final int OP_SAVEVECTOR = 47;
+    public static final int OP_PAN = 48;
+
+    public static final int STATS_SHOW = 0;
+    public static final int STATS_ON = 1;
+    public static final int STATS_OFF = 2;
+    public static final int STATS_RESET = 3;
+    public static final int STATS_JSON = 4;
+
+    public static final int FIRST_CONTROL_OP = OP_PUSH;
+    public static final int LAST_CONTROL_OP = OP_CALL;
+
+    private static final int[] ARITY = {0, 0, 1, 1, 1, 1, 1, 1, 1, 1, 3, 2, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 1, 1, 1, 1, 1, 3,
+            1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 1, 2, 2, 1, 2, 0, 1, 1, 0, 2};
+
+    private int[] code = new int[64];
+    private int codeLength = 0;
+    private int[] lines = new int[16];
+    private int instructionCount = 0;
+
+    private Color[] palette = new Color[4];
+    private int paletteSize = 0;
+    private final Map<Integer, Integer> paletteIndex = new HashMap<>();
+
+    private final List<CommandError> errors = new ArrayList<>();
+    private CommandTokenizer tokenizer;
+
+    private ScriptEnvironment environment = null;
+
+    public static int arity(int opcode) {
+        return ARITY[opcode];
+    }
+
+    public static int opcodeCount() {
+        return ARITY.length;
+    }
+
+    public static boolean isControl(int opcode) {
+        return opcode >= FIRST_CONTROL_OP && opcode <= LAST_CONTROL_OP;
+    }
+
+    public boolean onlyDraws() {
+        return onlyDraws(new HashSet<>());
+    }
+
+    private boolean onlyDraws(Set<CompiledScript> visited) {
+        if (!visited.add(this)) return true;
+        for (int pc = 0; pc < codeLength; pc += 1 + ARITY[code[pc]]) {
+            int op = code[pc];
+            if (op == OP_CALL) {
+                CompiledScript body = environment != null ? environment.getProcedure(code[pc + 1]).getBody() : null;
+                if (body == null || !body.onlyDraws(visited)) return false;
+            } else if (!isControl(op) && (op > OP_SPIRAL && op != OP_RESET && op != OP_RGB && op != OP_POLYGON)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public int getCodeLength() {
+        return codeLength;
+    }
+
+    public int[] getLines() {
+        return lines;
+    }
+
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    public Color[] getPalette() {
+        return palette;
+    }
+
+    public List<CommandError> getErrors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public ScriptEnvironment getEnvironment() {
+        return environment;
+    }
+
+    void setEnvironment(ScriptEnvironment environment) {
+        this.environment = environment;
+    }
+
+    void patch(int index, int value) {
+        code[index] = value;
+    }
+
+    void rewind(int codeLength, int instructionCount) {
+        this.codeLength = codeLength;
+        this.instructionCount = instructionCount;
+    }
+
+    void clear() {
+        codeLength = 0;
+        instructionCount = 0;
+        errors.clear();
+    }
+
+    void emit(int line, int opcode) {
+        beginInstruction(line, 1);
+        code[codeLength++] = opcode;
+    }
+
+    void emit(int line, int opcode, int a) {
+        beginInstruction(line, 2);
+        code[codeLength++] = opcode;
+        code[codeLength++] = a;
+    }
+
+    void emit(int line, int opcode, int a, int b) {
+        beginInstruction(line, 3);
+        code[codeLength++] = opcode;
+        code[codeLength++] = a;
+        code[codeLength++] = b;
+    }
+
+    void emit(int line, int opcode, int a, int b, int c) {
+        beginInstruction(line, 4);
+        code[codeLength++] = opcode;
+        code[codeLength++] = a;
+        code[codeLength++] = b;
+        code[codeLength++] = c;
+    }
+
+    void emitColour(int line, Color colour) {
+        int index = paletteIndexOf(colour.getRGB());
+        if (index < 0) {
+            index = addToPalette(colour);
+        }
+        emit(line, OP_COLOUR, index);
+    }
+
+    void emitRgb(int line, int rgb) {
+        int index = paletteIndexOf(rgb | 0xFF000000);
+        if (index < 0) {
+            index = addToPalette(new Color(rgb));
+        }
+        emit(line, OP_COLOUR, index);
+    }
+
+    private int paletteIndexOf(int argb) {
+        if (paletteSize <= 16) {
+            for (int i = 0; i < paletteSize; i++) {
+                if (palette[i].getRGB() == argb) return i;
+            }
+            return -1;
+        }
+        Integer index = paletteIndex.get(argb);
+        return index == null ? -1 : index;
+    }
+
+    private int addToPalette(Color colour) {
+        if (paletteSize == palette.length) {
+            palette = Arrays.copyOf(palette, paletteSize * 2);
+        }
+        paletteIndex.put(colour.getRGB(), paletteSize);
+        palette[paletteSize] = colour;
+        return paletteSize++;
+    }
+
+    void error(int line, String message) {
+        errors.add(new CommandError(line, message));
+    }
+
+    void error(int line, int column, String message) {
+        errors.add(new CommandError(line, column, message));
+    }
+
+    CommandTokenizer tokenizer() {
+        if (tokenizer == null) {
+            tokenizer = new CommandTokenizer();
+        }
+        return tokenizer;
+    }
+
+    private void beginInstruction(int line, int words) {
+        if (codeLength + words > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, codeLength + words));
+        }
+        if (instructionCount == lines.length) {
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        lines[instructionCount++] = line;
+    }
+}
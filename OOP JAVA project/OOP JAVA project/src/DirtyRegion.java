@@ -0,0 +1,62 @@
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DirtyRegion {
+
+    public static final int DEFAULT_MERGE_GAP = 8;
+    public static final int DEFAULT_MAX_RECTANGLES = 32;
+
+    private final int mergeGap;
+    private final int maxRectangles;
+    private final ArrayList<Rectangle> rectangles = new ArrayList<>();
+
+    public DirtyRegion() {
+        this(DEFAULT_MERGE_GAP, DEFAULT_MAX_RECTANGLES);
+    }
+
+    public DirtyRegion(int mergeGap, int maxRectangles) {
+        this.mergeGap = mergeGap;
+        this.maxRectangles = maxRectangles;
+    }
+
+    public synchronized boolean isEmpty() {
+        return rectangles.isEmpty();
+    }
+
+    public synchronized void add(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        Rectangle added = new Rectangle(x, y, width, height);
+        boolean merged;
+        do {
+            merged = false;
+            Rectangle grown = new Rectangle(added.x - mergeGap, added.y - mergeGap,
+                    added.width + 2 * mergeGap, added.height + 2 * mergeGap);
+            for (int i = rectangles.size() - 1; i >= 0; i--) {
+                Rectangle existing = rectangles.get(i);
+                if (grown.intersects(existing)) {
+                    added = added.union(existing);
+                    rectangles.remove(i);
+                    merged = true;
+                }
+            }
+        } while (merged);
+        rectangles.add(added);
+
+        if (rectangles.size() > maxRectangles) {
+            Rectangle bounds = rectangles.get(0);
+            for (Rectangle r : rectangles) {
+                bounds = bounds.union(r);
+            }
+            rectangles.clear();
+            rectangles.add(bounds);
+        }
+    }
+
+    public synchronized List<Rectangle> drain() {
+        List<Rectangle> drained = new ArrayList<>(rectangles);
+        rectangles.clear();
+        return drained;
+    }
+}
@@ -0,0 +1,229 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DisplayList {
+
+    private float[] coords = new float[1024];
+    private int[] colours = new int[256];
+    private int[] widths = new int[256];
+    private int[] commands = new int[256];
+    private int size = 0;
+
+    private final SegmentGrid grid = new SegmentGrid(this);
+
+    private Color[] palette = new Color[8];
+    private int paletteSize = 0;
+    private final Map<Integer, Integer> paletteIndex = new HashMap<>();
+
+    private Color lastColour = null;
+    private int lastColourIndex = -1;
+
+    private double tolerance = PathSimplifier.DEFAULT_TOLERANCE;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        grid.clear();
+    }
+
+    public void truncate(int newSize) {
+        if (newSize < size) {
+            newSize = Math.max(0, newSize);
+            grid.truncate(newSize, size);
+            size = newSize;
+        }
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public SegmentGrid getGrid() {
+        return grid;
+    }
+
+    public int add(float x1, float y1, float x2, float y2, Color colour, int width, int command) {
+        if (size == colours.length) {
+            int capacity = size * 2;
+            coords = Arrays.copyOf(coords, capacity * 4);
+            colours = Arrays.copyOf(colours, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            commands = Arrays.copyOf(commands, capacity);
+        }
+        int c = size * 4;
+        coords[c] = x1;
+        coords[c + 1] = y1;
+        coords[c + 2] = x2;
+        coords[c + 3] = y2;
+        colours[size] = colourIndex(colour);
+        widths[size] = width;
+        commands[size] = command;
+        grid.insert(size);
+        return size++;
+    }
+
+    public void addAll(DisplayList other) {
+        for (int i = 0; i < other.size; i++) {
+            int c = i * 4;
+            add(other.coords[c], other.coords[c + 1], other.coords[c + 2], other.coords[c + 3], other.getColour(i),
+                    other.widths[i], other.commands[i]);
+        }
+    }
+
+    public float getX1(int i) {
+        return coords[i * 4];
+    }
+
+    public float getY1(int i) {
+        return coords[i * 4 + 1];
+    }
+
+    public float getX2(int i) {
+        return coords[i * 4 + 2];
+    }
+
+    public float getY2(int i) {
+        return coords[i * 4 + 3];
+    }
+
+    public Color getColour(int i) {
+        return palette[colours[i]];
+    }
+
+    public int getColourIndex(int i) {
+        return colours[i];
+    }
+
+    public int getWidth(int i) {
+        return widths[i];
+    }
+
+    public int getCommand(int i) {
+        return commands[i];
+    }
+
+    public Rectangle getBounds() {
+        if (size == 0) return new Rectangle();
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            int c = i * 4;
+            float pad = widths[i] / 2f + 1;
+            minX = Math.min(minX, Math.min(coords[c], coords[c + 2]) - pad);
+            minY = Math.min(minY, Math.min(coords[c + 1], coords[c + 3]) - pad);
+            maxX = Math.max(maxX, Math.max(coords[c], coords[c + 2]) + pad);
+            maxY = Math.max(maxY, Math.max(coords[c + 1], coords[c + 3]) + pad);
+        }
+        int x = (int) Math.floor(minX);
+        int y = (int) Math.floor(minY);
+        return new Rectangle(x, y, (int) Math.ceil(maxX) - x, (int) Math.ceil(maxY) - y);
+    }
+
+    public void paint(Graphics2D g, double scale) {
+        paint(g, scale, 0, size);
+    }
+
+    public void paint(Graphics2D g, double scale, int from, int to) {
+        paint(g, scale, null, from, to);
+    }
+
+    public void paintVisible(Graphics2D g, double scale) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            paint(g, scale);
+            return;
+        }
+        int[] visible = grid.query((float) (clip.x / scale), (float) (clip.y / scale),
+                (float) ((clip.x + clip.width) / scale), (float) ((clip.y + clip.height) / scale));
+        paint(g, scale, visible, 0, visible.length);
+    }
+
+    private void paint(Graphics2D g, double scale, int[] segments, int from, int to) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.scale(scale, scale);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    g2.getTransform().getScaleX() == 1.0
+                            ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+
+            double pixel = 1 / Math.sqrt(Math.abs(g2.getTransform().getDeterminant()));
+            Rectangle clip = g2.getClipBounds();
+            PathSimplifier simplifier = new PathSimplifier();
+            int currentColour = -1;
+            int currentWidth = -1;
+            float endX = Float.NaN;
+            float endY = Float.NaN;
+            for (int n = from; n < to; n++) {
+                int i = segments == null ? n : segments[n];
+                if (colours[i] != currentColour || widths[i] != currentWidth) {
+                    if (currentColour >= 0) {
+                        g2.draw(simplifier.finish());
+                    }
+                    if (colours[i] != currentColour) {
+                        currentColour = colours[i];
+                        g2.setColor(palette[currentColour]);
+                    }
+                    if (widths[i] != currentWidth) {
+                        currentWidth = widths[i];
+                        g2.setStroke(new BasicStroke(currentWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                    }
+                    float pad = currentWidth / 2f + 1;
+                    if (clip == null) {
+                        simplifier.reset(tolerance * pixel, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+                    } else {
+                        simplifier.reset(tolerance * pixel, clip.x - pad, clip.y - pad, clip.x + clip.width + pad,
+                                clip.y + clip.height + pad);
+                    }
+                    endX = Float.NaN;
+                }
+                int c = i * 4;
+                if (coords[c] != endX || coords[c + 1] != endY) {
+                    simplifier.moveTo(coords[c], coords[c + 1]);
+                }
+                simplifier.lineTo(coords[c + 2], coords[c + 3]);
+                endX = coords[c + 2];
+                endY = coords[c + 3];
+            }
+            if (currentColour >= 0) {
+                g2.draw(simplifier.finish());
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private int colourIndex(Color colour) {
+        if (colour == lastColour) {
+            return lastColourIndex;
+        }
+        int argb = colour.getRGB();
+        Integer index = paletteIndex.get(argb);
+        if (index == null) {
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, paletteSize * 2);
+            }
+            palette[paletteSize] = colour;
+            index = paletteSize++;
+            paletteIndex.put(argb, index);
+        }
+        lastColour = colour;
+        lastColourIndex = index;
+        return index;
+    }
+}
@@ -0,0 +1,88 @@
+public class FramePacer {
+
+    public static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+    private final Runnable flush;
+
+    private long frameIntervalNanos;
+    private boolean active = false;
+    private boolean dirty = false;
+
+    private long startNanos;
+    private long lastFrameNanos;
+    private long startCommands;
+    private long commands;
+    private long frames;
+
+    public FramePacer(Runnable flush) {
+        this(flush, DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    public FramePacer(Runnable flush, int framesPerSecond) {
+        this.flush = flush;
+        setFramesPerSecond(framesPerSecond);
+    }
+
+    public void setFramesPerSecond(int framesPerSecond) {
+        frameIntervalNanos = framesPerSecond > 0 ? 1_000_000_000L / framesPerSecond : 0;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void begin(long executedCommands) {
+        active = true;
+        dirty = false;
+        startCommands = executedCommands;
+        commands = 0;
+        frames = 0;
+        startNanos = System.nanoTime();
+        lastFrameNanos = startNanos;
+    }
+
+    public void markDirty() {
+        dirty = true;
+        if (frameIntervalNanos == 0) return;
+
+        long now = System.nanoTime();
+        if (now - lastFrameNanos >= frameIntervalNanos) {
+            lastFrameNanos = now;
+            flushFrame();
+        }
+    }
+
+    public void end(long executedCommands) {
+        commands = executedCommands - startCommands;
+        if (dirty) {
+            flushFrame();
+        }
+        active = false;
+        lastFrameNanos = System.nanoTime();
+    }
+
+    public long getCommands() {
+        return commands;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getSeconds() {
+        return (lastFrameNanos - startNanos) / 1e9;
+    }
+
+    public String report() {
+        double seconds = getSeconds();
+        long perSecond = seconds > 0 ? (long) (commands / seconds) : commands;
+        return String.format("Played %d commands in %.3f s (%d commands/s), %d frames drawn",
+                commands, seconds, perSecond, frames);
+    }
+
+    private void flushFrame() {
+        dirty = false;
+        frames++;
+        flush.run();
+    }
+}
@@ -0,0 +1,325 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HeadlessTurtle implements TurtleTarget {
+
+    public static final int DEFAULT_WIDTH = 800;
+    public static final int DEFAULT_HEIGHT = 400;
+    public static final Color BACKGROUND = Color.BLACK;
+
+    private final BufferedImage canvas;
+    private final Graphics2D g2;
+    private final List<String> errors = new ArrayList<>();
+    private final DisplayList displayList = new DisplayList();
+    private final ScriptExecutor executor = new ScriptExecutor();
+    private final CompiledScript lineScript = new CompiledScript();
+    private final ScriptEnvironment environment = new ScriptEnvironment();
+    private final PathSimplifier simplifier = new PathSimplifier();
+    private final Line2D.Double segment = new Line2D.Double();
+    private final TurtlePose pose;
+
+    private boolean penDown = false;
+    private Color penColor = Color.RED;
+    private int penWidth = 1;
+
+    private int lineNumber = 0;
+    private long maxSegments = Long.MAX_VALUE;
+    private long segments = 0;
+
+    public HeadlessTurtle() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    public HeadlessTurtle(int width, int height) {
+        canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        g2 = canvas.createGraphics();
+        clear();
+        pose = new TurtlePose(width / 2, height / 2);
+        setPenColour(penColor);
+        penWidth(penWidth);
+    }
+
+    public int getWidth() {
+        return canvas.getWidth();
+    }
+
+    public int getHeight() {
+        return canvas.getHeight();
+    }
+
+    public BufferedImage getImage() {
+        return canvas;
+    }
+
+    public DisplayList getDisplayList() {
+        return displayList;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setBudget(long maxSteps, long maxSegments, long deadline) {
+        executor.setBudget(maxSteps, deadline);
+        this.maxSegments = maxSegments;
+        segments = 0;
+    }
+
+    public void dispose() {
+        g2.dispose();
+    }
+
+    public void setPenColour(Color c) {
+        penColor = c;
+        g2.setColor(c);
+    }
+
+    public void penWidth(int width) {
+        penWidth = width;
+        g2.setStroke(new BasicStroke(width));
+    }
+
+    public void processCommand(String input) {
+        lineNumber++;
+        lineScript.clear();
+        CommandCompiler.compileLine(input, lineNumber, lineScript, environment);
+        run(lineScript);
+    }
+
+    public void run(CompiledScript script) {
+        for (CommandError error : script.getErrors()) {
+            errors.add(error.toString());
+        }
+        executor.execute(script, this);
+    }
+
+    @Override
+    public void doPenDown() {
+        penDown = true;
+    }
+
+    @Override
+    public void doPenUp() {
+        penDown = false;
+    }
+
+    @Override
+    public void doMove(int dist) {
+        forward(dist);
+    }
+
+    @Override
+    public void doReverse(int distance) {
+        forward(-distance);
+    }
+
+    @Override
+    public void doLeft(int angle) {
+        pose.left(angle);
+    }
+
+    @Override
+    public void doRight(int angle) {
+        pose.right(angle);
+    }
+
+    @Override
+    public void doPenColour(Color colour) {
+        setPenColour(colour);
+    }
+
+    @Override
+    public void doPenWidth(int width) {
+        penWidth(width);
+    }
+
+    @Override
+    public void doSquare(int length) {
+        drawShape(pose.square(length));
+    }
+
+    @Override
+    public void doTriangle(int size) {
+        drawShape(pose.triangle(size));
+    }
+
+    @Override
+    public void doTriangle(int a, int b, int c) {
+        drawShape(pose.triangle(a, b, c));
+    }
+
+    @Override
+    public void doSquareSpiral(int turns, int initialLength) {
+        drawShape(pose.squareSpiral(turns, initialLength));
+    }
+
+    @Override
+    public void doPolygon(int sides, int length) {
+        drawShape(pose.polygon(sides, length));
+    }
+
+    @Override
+    public void doClear() {
+        clear();
+    }
+
+    @Override
+    public void doReset() {
+        pose.reset(getWidth() / 2, getHeight() / 2);
+        setPenColour(Color.RED);
+        penWidth(1);
+    }
+
+    @Override
+    public void doAbout() {
+        unavailable("about");
+    }
+
+    @Override
+    public void doSave() {
+        unavailable("save");
+    }
+
+    @Override
+    public void doLoad() {
+        unavailable("load");
+    }
+
+    @Override
+    public void doSaveCommands() {
+        unavailable("savecommands");
+    }
+
+    @Override
+    public void doLoadCommands() {
+        unavailable("loadcommands");
+    }
+
+    @Override
+    public void doFrameRate(int framesPerSecond) {
+    }
+
+    @Override
+    public void doZoom(int percent) {
+    }
+
+    @Override
+    public void doPan(int dx, int dy) {
+    }
+
+    @Override
+    public void doExport(int width, int height) {
+        unavailable("export");
+    }
+
+    @Override
+    public void doPick(int x, int y) {
+        int segment = displayList.getGrid().pick(x, y);
+        if (segment < 0) {
+            System.out.println("No stroke at (" + x + ", " + y + ").");
+        } else {
+            System.out.println("Pixel (" + x + ", " + y + ") was drawn by line " + displayList.getCommand(segment));
+        }
+    }
+
+    @Override
+    public void doUndo(int steps) {
+        unavailable("undo");
+    }
+
+    @Override
+    public void doSeek(int command) {
+        unavailable("seek");
+    }
+
+    @Override
+    public void doCheckpointBudget(int megabytes) {
+    }
+
+    @Override
+    public void doCompression(int level) {
+    }
+
+    @Override
+    public void doSaveAlpha(boolean alpha) {
+    }
+
+    @Override
+    public void doSwarm() {
+        unavailable("swarm");
+    }
+
+    @Override
+    public void doStats(int mode) {
+        unavailable("stats");
+    }
+
+    @Override
+    public void doLevelOfDetail(int hundredths) {
+        displayList.setTolerance(hundredths / 100.0);
+    }
+
+    @Override
+    public void doSaveVector() {
+        unavailable("savevector");
+    }
+
+    @Override
+    public void doError(String message) {
+        error(message);
+    }
+
+    private void unavailable(String command) {
+        error("Command not available in headless mode: " + command);
+    }
+
+    private void error(String message) {
+        errors.add(new CommandError(executor.getLine(), message).toString());
+    }
+
+    private void clear() {
+        displayList.clear();
+        Color pen = g2.getColor();
+        g2.setColor(BACKGROUND);
+        g2.fillRect(0, 0, getWidth(), getHeight());
+        g2.setColor(pen);
+    }
+
+    private void forward(int dist) {
+        double fromX = pose.getX();
+        double fromY = pose.getY();
+        pose.forward(dist);
+        if (penDown) {
+            countSegments(1);
+            segment.setLine(fromX, fromY, pose.getX(), pose.getY());
+            g2.draw(segment);
+            displayList.add((float) fromX, (float) fromY, (float) pose.getX(), (float) pose.getY(), penColor, penWidth,
+                    executor.getLine());
+        }
+    }
+
+    private void drawShape(Polyline shape) {
+        if (penDown) {
+            countSegments(shape.getPointCount() - 1);
+            int line = executor.getLine();
+            shape.forEachSegment((x1, y1, x2, y2) -> displayList.add((float) x1, (float) y1, (float) x2, (float) y2,
+                    penColor, penWidth, line));
+            float pad = penWidth / 2f + 1;
+            simplifier.reset(displayList.getTolerance(), -pad, -pad, getWidth() + pad, getHeight() + pad);
+            g2.draw(shape.toPath(simplifier));
+        }
+        pose.moveToEnd(shape);
+    }
+
+    private void countSegments(int count) {
+        segments += count;
+        if (segments > maxSegments) {
+            throw new ScriptExecutor.BudgetExceeded("Script drew more than " + maxSegments + " segments.");
+        }
+    }
+}
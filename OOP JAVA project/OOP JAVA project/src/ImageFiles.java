@@ -0,0 +1,88 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+
+public class ImageFiles {
+
+    private ImageFiles() {
+    }
+
+    public static BufferedImage read(File file, CommandEngine engine) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+
+            ImageReader reader = readers.next();
+            ReadProgress progress = new ReadProgress(engine);
+            try {
+                reader.setInput(in, true, true);
+                reader.addIIOReadProgressListener(progress);
+                BufferedImage image = reader.read(0);
+                if (progress.aborted) {
+                    throw new CancellationException("loading " + file.getName());
+                }
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static class ReadProgress implements IIOReadProgressListener {
+
+        private final CommandEngine engine;
+        private boolean aborted = false;
+
+        ReadProgress(CommandEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            engine.progress((long) percentageDone, 100);
+            if (engine.isCancelRequested()) {
+                source.abort();
+            }
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+            aborted = true;
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+    }
+}
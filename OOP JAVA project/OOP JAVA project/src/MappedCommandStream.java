@@ -0,0 +1,277 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+public class MappedCommandStream {
+
+    public static final long WINDOW_SIZE = 64L << 20;
+    public static final int BATCH_SIZE = 4096;
+
+    private static final int MAX_TOKENS = 4;
+    private static final long NO_NUMBER = Long.MIN_VALUE;
+
+    private static final int COLOUR_RED = -1;
+    private static final int COLOUR_GREEN = -2;
+    private static final int COLOUR_BLUE = -3;
+    private static final int COLOUR_YELLOW = -4;
+
+    private static final String[] KEYWORDS = {
+            "pendown", "penup", "move", "forward", "reverse", "left", "right",
+            "red", "green", "blue", "yellow", "clear", "reset", "about", "save", "load",
+            "savecommands", "loadcommands", "square", "pencolour", "penwidth", "triangle", "square_spiral"
+    };
+    private static final int[] KEYWORD_OPS = {
+            CompiledScript.OP_PENDOWN, CompiledScript.OP_PENUP, CompiledScript.OP_MOVE, CompiledScript.OP_MOVE,
+            CompiledScript.OP_REVERSE, CompiledScript.OP_LEFT, CompiledScript.OP_RIGHT,
+            COLOUR_RED, COLOUR_GREEN, COLOUR_BLUE, COLOUR_YELLOW,
+            CompiledScript.OP_CLEAR, CompiledScript.OP_RESET, CompiledScript.OP_ABOUT,
+            CompiledScript.OP_SAVE, CompiledScript.OP_LOAD, CompiledScript.OP_SAVECOMMANDS,
+            CompiledScript.OP_LOADCOMMANDS, CompiledScript.OP_SQUARE, CompiledScript.OP_COLOUR,
+            CompiledScript.OP_PENWIDTH, CompiledScript.OP_TRIANGLE, CompiledScript.OP_SPIRAL
+    };
+    private static final byte[][] KEYWORD_BYTES = new byte[KEYWORDS.length][];
+
+    static {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            KEYWORD_BYTES[i] = KEYWORDS[i].getBytes();
+        }
+    }
+
+    private final CompiledScript chunk = new CompiledScript();
+    private final ScriptEnvironment environment = new ScriptEnvironment();
+    private final Charset charset;
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenEnd = new int[MAX_TOKENS];
+
+    private MappedByteBuffer buffer;
+    private int line = 0;
+    private long bytesRead = 0;
+
+    public MappedCommandStream() {
+        this(Charset.defaultCharset());
+    }
+
+    public MappedCommandStream(Charset charset) {
+        this.charset = charset;
+    }
+
+    public static long stream(File file, Consumer<CompiledScript> sink) throws IOException {
+        MappedCommandStream stream = new MappedCommandStream();
+        stream.run(file, sink);
+        return stream.getBytesRead();
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public ScriptEnvironment getEnvironment() {
+        return environment;
+    }
+
+    public void run(File file, Consumer<CompiledScript> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(WINDOW_SIZE, size - position);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int end = length;
+                if (position + length < size) {
+                    int lastNewline = lastNewline(length);
+                    if (lastNewline >= 0) {
+                        end = lastNewline + 1;
+                    }
+                }
+
+                parseWindow(end, sink);
+                position += end;
+                bytesRead = position;
+            }
+            BlockCompiler.finish(chunk, environment);
+            flush(sink);
+        } finally {
+            buffer = null;
+        }
+    }
+
+    private int lastNewline(int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void parseWindow(int end, Consumer<CompiledScript> sink) {
+        int start = 0;
+        while (start < end) {
+            int stop = start;
+            while (stop < end && buffer.get(stop) != '\n') stop++;
+
+            compileLine(start, stop);
+            if (chunk.getInstructionCount() >= BATCH_SIZE || chunk.getErrors().size() >= BATCH_SIZE) {
+                flush(sink);
+            }
+            start = stop + 1;
+        }
+    }
+
+    private void flush(Consumer<CompiledScript> sink) {
+        if (chunk.getInstructionCount() > 0 || chunk.hasErrors()) {
+            sink.accept(chunk);
+            chunk.clear();
+        }
+    }
+
+    private void compileLine(int start, int stop) {
+        line++;
+
+        int tokens = 0;
+        int i = start;
+        while (true) {
+            while (i < stop && isSpace(buffer.get(i))) i++;
+            if (i >= stop) break;
+            int tokenBegin = i;
+            while (i < stop && !isSpace(buffer.get(i))) i++;
+            if (tokens < MAX_TOKENS) {
+                tokenStart[tokens] = tokenBegin;
+                tokenEnd[tokens] = i;
+            }
+            tokens++;
+        }
+        if (tokens == 0) return;
+
+        if (environment.isPending() || !compileFast(tokens)) {
+            byte[] bytes = new byte[stop - start];
+            buffer.get(start, bytes);
+            CommandCompiler.compileLine(new String(bytes, charset), line, chunk, environment);
+        }
+    }
+
+    private boolean compileFast(int tokens) {
+        int op = keyword();
+        if (op == Integer.MIN_VALUE) return false;
+
+        switch (op) {
+            case COLOUR_RED:
+                chunk.emitColour(line, Color.RED);
+                return true;
+            case COLOUR_GREEN:
+                chunk.emitColour(line, Color.GREEN);
+                return true;
+            case COLOUR_BLUE:
+                chunk.emitColour(line, Color.BLUE);
+                return true;
+            case COLOUR_YELLOW:
+                chunk.emitColour(line, Color.YELLOW);
+                return true;
+
+            case CompiledScript.OP_MOVE:
+            case CompiledScript.OP_SQUARE:
+            case CompiledScript.OP_PENWIDTH:
+                if (tokens != 2) return false;
+                long value = number(1);
+                long min = op == CompiledScript.OP_PENWIDTH ? 1 : 0;
+                if (value == NO_NUMBER || value < min) return false;
+                if (op == CompiledScript.OP_MOVE && value > Polyline.MAX_LENGTH) return false;
+                if (op == CompiledScript.OP_SQUARE && 4 * value > Polyline.MAX_LENGTH) return false;
+                chunk.emit(line, op, (int) value);
+                return true;
+
+            case CompiledScript.OP_REVERSE:
+            case CompiledScript.OP_LEFT:
+            case CompiledScript.OP_RIGHT:
+                if (tokens > 2) return false;
+                long operand = op == CompiledScript.OP_REVERSE ? 100 : 90;
+                if (tokens > 1) {
+                    operand = number(1);
+                    if (operand == NO_NUMBER) return false;
+                    if (op == CompiledScript.OP_REVERSE && (operand < 0 || operand > Polyline.MAX_LENGTH)) return false;
+                }
+                chunk.emit(line, op, (int) operand);
+                return true;
+
+            case CompiledScript.OP_TRIANGLE:
+                if (tokens != 2) return false;
+                long size = number(1);
+                if (size == NO_NUMBER || 3 * Math.abs(size) > Polyline.MAX_LENGTH) return false;
+                chunk.emit(line, op, (int) size);
+                return true;
+
+            case CompiledScript.OP_SPIRAL:
+                if (tokens != 3) return false;
+                long turns = number(1);
+                long length = number(2);
+                if (turns == NO_NUMBER || length == NO_NUMBER || turns > Polyline.MAX_SEGMENTS) return false;
+                if (Polyline.spiralLength((int) turns, (int) length) > Polyline.MAX_LENGTH) return false;
+                chunk.emit(line, op, (int) turns, (int) length);
+                return true;
+
+            case CompiledScript.OP_COLOUR:
+                if (tokens != 4) return false;
+                long r = number(1);
+                long g = number(2);
+                long b = number(3);
+                if (r < 0 || r > 255 || g < 0 || g > 255 || b < 0 || b > 255) return false;
+                chunk.emitRgb(line, (int) ((r << 16) | (g << 8) | b));
+                return true;
+
+            default:
+                chunk.emit(line, op);
+                return true;
+        }
+    }
+
+    private int keyword() {
+        int start = tokenStart[0];
+        int length = tokenEnd[0] - start;
+        for (int k = 0; k < KEYWORD_BYTES.length; k++) {
+            byte[] word = KEYWORD_BYTES[k];
+            if (word.length != length) continue;
+            int j = 0;
+            while (j < length && toLower(buffer.get(start + j)) == word[j]) j++;
+            if (j == length) return KEYWORD_OPS[k];
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private long number(int token) {
+        int i = tokenStart[token];
+        int end = tokenEnd[token];
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        if (i == end || end - i > 10) return NO_NUMBER;
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) return NO_NUMBER;
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return NO_NUMBER;
+        return value;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
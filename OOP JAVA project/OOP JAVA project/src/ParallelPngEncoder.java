@@ -0,0 +1,243 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class ParallelPngEncoder {
+
+    public static final int DEFAULT_STRIPE_ROWS = 32;
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9C};
+    private static final byte[] FINAL_BLOCK = {0x03, 0x00};
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int ADLER_BASE = 65521;
+
+    private final int stripeRows;
+    private final ForkJoinPool pool;
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private boolean alpha = true;
+
+    private int width = -1;
+    private int height = -1;
+    private byte[][] stripes = new byte[0][];
+    private long[] stripeAdler = new long[0];
+    private boolean[] dirty = new boolean[0];
+
+    public ParallelPngEncoder() {
+        this(DEFAULT_STRIPE_ROWS, ForkJoinPool.commonPool());
+    }
+
+    public ParallelPngEncoder(int stripeRows, ForkJoinPool pool) {
+        this.stripeRows = stripeRows;
+        this.pool = pool;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        if (level != this.level) {
+            this.level = level;
+            markAllDirty();
+        }
+    }
+
+    public boolean isAlpha() {
+        return alpha;
+    }
+
+    public void setAlpha(boolean alpha) {
+        if (alpha != this.alpha) {
+            this.alpha = alpha;
+            markAllDirty();
+        }
+    }
+
+    public int getStripeRows() {
+        return stripeRows;
+    }
+
+    public int getStripeCount() {
+        return dirty.length;
+    }
+
+    public boolean isDirty(int stripe) {
+        return dirty[stripe];
+    }
+
+    public int getDirtyCount() {
+        int count = 0;
+        for (boolean d : dirty) {
+            if (d) count++;
+        }
+        return count;
+    }
+
+    public void markAllDirty() {
+        Arrays.fill(dirty, true);
+    }
+
+    public void markDirty(int fromRow, int toRow) {
+        int first = Math.max(0, fromRow / stripeRows);
+        int last = Math.min(dirty.length - 1, Math.max(0, toRow) / stripeRows);
+        for (int s = first; s <= last; s++) {
+            dirty[s] = true;
+        }
+    }
+
+    public void resize(int width, int height) {
+        if (width == this.width && height == this.height) return;
+        this.width = width;
+        this.height = height;
+        int count = (height + stripeRows - 1) / stripeRows;
+        stripes = new byte[count][];
+        stripeAdler = new long[count];
+        dirty = new boolean[count];
+        markAllDirty();
+    }
+
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        encode(image, out, null);
+    }
+
+    public void encode(BufferedImage image, OutputStream out, BiConsumer<Integer, Integer> progress) throws IOException {
+        resize(image.getWidth(), image.getHeight());
+
+        int[] pending = IntStream.range(0, dirty.length).filter(s -> dirty[s]).toArray();
+        AtomicInteger done = new AtomicInteger();
+        pool.submit(() -> Arrays.stream(pending).parallel().forEach(s -> {
+            compressStripe(image, s);
+            if (progress != null) {
+                progress.accept(done.incrementAndGet(), pending.length);
+            }
+        })).join();
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE));
+        data.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8);
+        h.writeByte(alpha ? 6 : 2);
+        h.writeByte(0);
+        h.writeByte(0);
+        h.writeByte(0);
+        writeChunk(data, "IHDR", header.toByteArray(), 0, header.size());
+
+        long adler = 1;
+        long rowBytes = 1 + (long) width * (alpha ? 4 : 3);
+        writeChunk(data, "IDAT", ZLIB_HEADER, 0, ZLIB_HEADER.length);
+        for (int s = 0; s < stripes.length; s++) {
+            byte[] stripe = stripes[s];
+            for (int off = 0; off < stripe.length; off += CHUNK_SIZE) {
+                writeChunk(data, "IDAT", stripe, off, Math.min(CHUNK_SIZE, stripe.length - off));
+            }
+            adler = combineAdler(adler, stripeAdler[s], rowBytes * rowsIn(s));
+        }
+        byte[] trailer = Arrays.copyOf(FINAL_BLOCK, FINAL_BLOCK.length + 4);
+        trailer[2] = (byte) (adler >>> 24);
+        trailer[3] = (byte) (adler >>> 16);
+        trailer[4] = (byte) (adler >>> 8);
+        trailer[5] = (byte) adler;
+        writeChunk(data, "IDAT", trailer, 0, trailer.length);
+        writeChunk(data, "IEND", new byte[0], 0, 0);
+        data.flush();
+    }
+
+    private int rowsIn(int stripe) {
+        return Math.min(stripeRows, height - stripe * stripeRows);
+    }
+
+    private void compressStripe(BufferedImage image, int stripe) {
+        int y0 = stripe * stripeRows;
+        int rows = rowsIn(stripe);
+        int bytesPerPixel = alpha ? 4 : 3;
+        byte[] raw = new byte[rows * (1 + width * bytesPerPixel)];
+
+        int[] pixels;
+        int offset;
+        int stride;
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && (image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB)) {
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            offset = y0 * width;
+            stride = width;
+        } else {
+            pixels = image.getRGB(0, y0, width, rows, null, 0, width);
+            offset = 0;
+            stride = width;
+        }
+        boolean opaqueSource = image.getType() == BufferedImage.TYPE_INT_RGB;
+
+        int p = 0;
+        for (int y = 0; y < rows; y++) {
+            raw[p++] = 0;
+            int row = offset + y * stride;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[row + x];
+                raw[p++] = (byte) (argb >> 16);
+                raw[p++] = (byte) (argb >> 8);
+                raw[p++] = (byte) argb;
+                if (alpha) {
+                    raw[p++] = opaqueSource ? (byte) 0xFF : (byte) (argb >>> 24);
+                }
+            }
+        }
+
+        Adler32 checksum = new Adler32();
+        checksum.update(raw, 0, raw.length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(raw);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 8 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+                compressed.write(buffer, 0, n);
+            } while (n == buffer.length);
+            stripes[stripe] = compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        stripeAdler[stripe] = checksum.getValue();
+        dirty[stripe] = false;
+    }
+
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= 2L * ADLER_BASE) sum2 -= 2L * ADLER_BASE;
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    static void writeChunk(DataOutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
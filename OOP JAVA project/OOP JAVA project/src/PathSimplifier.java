@@ -0,0 +1,172 @@
+import java.awt.geom.Path2D;
+
+public class PathSimplifier {
+
+    public static final double DEFAULT_TOLERANCE = 0.5;
+
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int TOP = 4;
+    private static final int BOTTOM = 8;
+
+    private final Path2D.Double path = new Path2D.Double();
+
+    private double tolerance;
+    private double minX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.NEGATIVE_INFINITY;
+    private double maxX = Double.POSITIVE_INFINITY;
+    private double maxY = Double.POSITIVE_INFINITY;
+
+    private double lastX;
+    private double lastY;
+    private double anchorX;
+    private double anchorY;
+    private boolean anchorEmitted = false;
+
+    private boolean pending = false;
+    private double pendingX;
+    private double pendingY;
+    private double pendingDistance;
+    private boolean hasDirection = false;
+    private double lowX;
+    private double lowY;
+    private double highX;
+    private double highY;
+
+    private long segmentsIn = 0;
+    private long segmentsOut = 0;
+
+    public PathSimplifier() {
+        this(DEFAULT_TOLERANCE);
+    }
+
+    public PathSimplifier(double tolerance) {
+        this.tolerance = Math.max(0, tolerance);
+    }
+
+    public void reset(double tolerance, double minX, double minY, double maxX, double maxY) {
+        this.tolerance = Math.max(0, tolerance);
+        this.minX = minX - this.tolerance;
+        this.minY = minY - this.tolerance;
+        this.maxX = maxX + this.tolerance;
+        this.maxY = maxY + this.tolerance;
+        path.reset();
+        anchorEmitted = false;
+        pending = false;
+        hasDirection = false;
+    }
+
+    public void moveTo(double x, double y) {
+        flush();
+        lastX = x;
+        lastY = y;
+        anchorX = x;
+        anchorY = y;
+        anchorEmitted = false;
+    }
+
+    public void lineTo(double x, double y) {
+        segmentsIn++;
+        if ((outcode(lastX, lastY) & outcode(x, y)) != 0) {
+            flush();
+            anchorX = x;
+            anchorY = y;
+            anchorEmitted = false;
+        } else {
+            if (!anchorEmitted) {
+                path.moveTo(anchorX, anchorY);
+                anchorEmitted = true;
+            }
+            extend(x, y);
+        }
+        lastX = x;
+        lastY = y;
+    }
+
+    public Path2D.Double finish() {
+        flush();
+        anchorEmitted = false;
+        return path;
+    }
+
+    public long getSegmentsIn() {
+        return segmentsIn;
+    }
+
+    public long getSegmentsOut() {
+        return segmentsOut;
+    }
+
+    private void extend(double x, double y) {
+        double dx = x - anchorX;
+        double dy = y - anchorY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (!hasDirection) {
+            if (distance < tolerance || distance == 0) {
+                pending(x, y, 0);
+            } else {
+                hasDirection = true;
+                narrow(dx / distance, dy / distance, distance, true);
+                pending(x, y, distance);
+            }
+            return;
+        }
+
+        if (distance >= pendingDistance && lowX * dy - lowY * dx >= 0 && dx * highY - dy * highX >= 0) {
+            narrow(dx / distance, dy / distance, distance, false);
+            pending(x, y, distance);
+            return;
+        }
+        flush();
+        extend(x, y);
+    }
+
+    private void narrow(double ux, double uy, double distance, boolean first) {
+        double sin = Math.min(1, tolerance / distance);
+        double cos = Math.sqrt(1 - sin * sin);
+        double fromX = ux * cos + uy * sin;
+        double fromY = uy * cos - ux * sin;
+        double toX = ux * cos - uy * sin;
+        double toY = uy * cos + ux * sin;
+        if (first || lowX * fromY - lowY * fromX > 0) {
+            lowX = fromX;
+            lowY = fromY;
+        }
+        if (first || toX * highY - toY * highX > 0) {
+            highX = toX;
+            highY = toY;
+        }
+    }
+
+    private void pending(double x, double y, double distance) {
+        pending = true;
+        pendingX = x;
+        pendingY = y;
+        pendingDistance = distance;
+    }
+
+    private void flush() {
+        hasDirection = false;
+        if (!pending) return;
+        pending = false;
+        path.lineTo(pendingX, pendingY);
+        segmentsOut++;
+        anchorX = pendingX;
+        anchorY = pendingY;
+    }
+
+    private int outcode(double x, double y) {
+        int code = 0;
+        if (x < minX) {
+            code |= LEFT;
+        } else if (x > maxX) {
+            code |= RIGHT;
+        }
+        if (y < minY) {
+            code |= TOP;
+        } else if (y > maxY) {
+            code |= BOTTOM;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,126 @@
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class PngStreamWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+    private final byte[] row;
+    private int rowsWritten = 0;
+
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public PngStreamWriter(OutputStream out, int width, int height, int level) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE));
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + width * 4];
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8);
+        h.writeByte(6);
+        h.writeByte(0);
+        h.writeByte(0);
+        h.writeByte(0);
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        deflater = new Deflater(level);
+        idat = new DeflaterOutputStream(new ChunkStream(), deflater, CHUNK_SIZE);
+    }
+
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void writeRows(BufferedImage image, int rows) throws IOException {
+        int[] pixels = new int[width];
+        for (int y = 0; y < rows; y++) {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+            int p = 1;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[x];
+                row[p++] = (byte) (argb >> 16);
+                row[p++] = (byte) (argb >> 8);
+                row[p++] = (byte) argb;
+                row[p++] = (byte) (argb >>> 24);
+            }
+            idat.write(row, 0, row.length);
+        }
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Expected " + height + " rows but " + rowsWritten + " were written");
+            }
+            idat.finish();
+            idat.flush();
+            writeChunk("IEND", new byte[0], 0);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private class ChunkStream extends OutputStream {
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) flush();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk("IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
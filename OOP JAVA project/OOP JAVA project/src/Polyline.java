@@ -0,0 +1,161 @@
+import java.awt.geom.Path2D;
+
+public class Polyline {
+
+    public static final int MAX_SEGMENTS = 1_000_000;
+    public static final int MAX_LENGTH = 1 << 16;
+
+    public interface SegmentSink {
+        void segment(double x1, double y1, double x2, double y2);
+    }
+
+    private static final int POLYGON = 0;
+    private static final int TRIANGLE = 1;
+    private static final int SPIRAL = 2;
+
+    private final int kind;
+    private final double x;
+    private final double y;
+    private final double heading;
+    private final double step;
+    private final int count;
+    private final double[] points;
+    private final double endAngle;
+
+    private Polyline(int kind, double x, double y, double heading, double step, int count, double[] points,
+            double endAngle) {
+        this.kind = kind;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.step = step;
+        this.count = count;
+        this.points = points;
+        this.endAngle = endAngle;
+    }
+
+    public static Polyline regularPolygon(double x, double y, double heading, double side, int sides) {
+        if (sides < 3 || sides > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Polygon sides out of range: " + sides);
+        }
+        return new Polyline(POLYGON, x, y, heading, side, sides + 1, null, heading);
+    }
+
+    public static Polyline triangle(double x, double y, double heading, int a, int b, int c) {
+        double aa = (double) a * a;
+        double bb = (double) b * b;
+        double cc = (double) c * c;
+        double angleC = Math.toDegrees(Math.acos((aa + bb - cc) / (2.0 * a * b)));
+        double angleA = Math.toDegrees(Math.acos((bb + cc - aa) / (2.0 * b * c)));
+        double second = heading + 180 - angleC;
+        double[] points = new double[8];
+        points[0] = x;
+        points[1] = y;
+        points[2] = x + a * cosDegrees(heading);
+        points[3] = y - a * sinDegrees(heading);
+        points[4] = points[2] + b * cosDegrees(second);
+        points[5] = points[3] - b * sinDegrees(second);
+        points[6] = x;
+        points[7] = y;
+        return new Polyline(TRIANGLE, x, y, heading, 0, 4, points, heading + 360 - angleC - angleA);
+    }
+
+    public static Polyline squareSpiral(double x, double y, double heading, int turns, int initialLength) {
+        if (turns < 0 || turns > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Spiral turns out of range: " + turns);
+        }
+        return new Polyline(SPIRAL, x, y, heading, initialLength, turns + 1, null, heading + 90 * (turns % 4));
+    }
+
+    public static double spiralLength(int turns, int initialLength) {
+        double edges = Math.max(0, turns);
+        return Math.abs((double) initialLength) * edges * (edges + 1) / 2;
+    }
+
+    public void forEachSegment(SegmentSink sink) {
+        double fromX = x;
+        double fromY = y;
+        for (int k = 1; k < count; k++) {
+            double toX;
+            double toY;
+            if (kind == TRIANGLE) {
+                toX = points[k * 2];
+                toY = points[k * 2 + 1];
+            } else if (kind == SPIRAL) {
+                toX = spiralX(k);
+                toY = spiralY(k);
+            } else if (k == count - 1) {
+                toX = x;
+                toY = y;
+            } else {
+                double direction = heading + (k - 1) * (360.0 / (count - 1));
+                toX = fromX + step * cosDegrees(direction);
+                toY = fromY - step * sinDegrees(direction);
+            }
+            sink.segment(fromX, fromY, toX, toY);
+            fromX = toX;
+            fromY = toY;
+        }
+    }
+
+    private double spiralX(int k) {
+        return x + step * (spiralSum(k, 0) - spiralSum(k, 2)) * cosDegrees(heading)
+                + step * (spiralSum(k, 1) - spiralSum(k, 3)) * cosDegrees(heading + 90);
+    }
+
+    private double spiralY(int k) {
+        return y - step * (spiralSum(k, 0) - spiralSum(k, 2)) * sinDegrees(heading)
+                - step * (spiralSum(k, 1) - spiralSum(k, 3)) * sinDegrees(heading + 90);
+    }
+
+    private static long spiralSum(int edges, int residue) {
+        if (edges <= residue) return 0;
+        long n = (edges - residue + 3) / 4;
+        return n * (residue + 1) + 2 * n * (n - 1);
+    }
+
+    static double cosDegrees(double degrees) {
+        double reduced = ((degrees % 360) + 360) % 360;
+        if (reduced == 0) return 1;
+        if (reduced == 90 || reduced == 270) return 0;
+        if (reduced == 180) return -1;
+        return Math.cos(Math.toRadians(reduced));
+    }
+
+    static double sinDegrees(double degrees) {
+        double reduced = ((degrees % 360) + 360) % 360;
+        if (reduced == 0 || reduced == 180) return 0;
+        if (reduced == 90) return 1;
+        if (reduced == 270) return -1;
+        return Math.sin(Math.toRadians(reduced));
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public double getEndX() {
+        return kind == SPIRAL ? spiralX(count - 1) : x;
+    }
+
+    public double getEndY() {
+        return kind == SPIRAL ? spiralY(count - 1) : y;
+    }
+
+    public double getEndAngle() {
+        return endAngle;
+    }
+
+    public Path2D.Double toPath() {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, count);
+        path.moveTo(x, y);
+        forEachSegment((x1, y1, x2, y2) -> path.lineTo(x2, y2));
+        return path;
+    }
+
+    public Path2D.Double toPath(PathSimplifier simplifier) {
+        simplifier.moveTo(x, y);
+        forEachSegment((x1, y1, x2, y2) -> simplifier.lineTo(x2, y2));
+        return simplifier.finish();
+    }
+}
@@ -0,0 +1,447 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class RenderCache {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+    public static final long DEFAULT_DISK_BUDGET = 256L << 20;
+    public static final int VERSION = 2;
+
+    static final byte[] MAGIC = {'T', 'G', 'R', 'C'};
+
+    private static final int IMAGE = 1;
+    private static final int RENDER = 2;
+    private static final String SUFFIX = ".bin";
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final File directory;
+    private final long diskBudget;
+    private final ExecutorService diskWriter;
+    private long memoryBudget;
+    private long bytesUsed = 0;
+
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public RenderCache(long memoryBudget) {
+        this(memoryBudget, null, 0);
+    }
+
+    public RenderCache(long memoryBudget, File directory, long diskBudget) {
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+        if (directory != null) {
+            diskWriter = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "turtle-render-cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            diskWriter = null;
+        }
+    }
+
+    public static RenderCache fromProperties() {
+        long memory = Long.getLong("turtlegraphics.cache.mb", DEFAULT_MEMORY_BUDGET >> 20) << 20;
+        String path = System.getProperty("turtlegraphics.cache.dir", "");
+        File directory = null;
+        if (!path.isEmpty()) {
+            directory = new File(path);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                System.out.println("Render cache directory " + directory + " cannot be created; using memory only.");
+                directory = null;
+            }
+        }
+        if (memory <= 0 && directory == null) return null;
+        long disk = Long.getLong("turtlegraphics.cache.disk.mb", DEFAULT_DISK_BUDGET >> 20) << 20;
+        return new RenderCache(Math.max(0, memory), directory, disk);
+    }
+
+    public static String scriptKey(List<String> lines, int width, int height) {
+        MessageDigest digest = sha256();
+        digest.update(("script " + width + "x" + height + "\n").getBytes(StandardCharsets.UTF_8));
+        StringBuilder normalized = new StringBuilder();
+        for (String line : lines) {
+            normalized.setLength(0);
+            normalize(line, normalized);
+            normalized.append('\n');
+            digest.update(normalized.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    public static String imageKey(File file) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(("image " + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                digest.update(chunk, 0, n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    static void normalize(String line, StringBuilder out) {
+        boolean space = false;
+        boolean firstWord = true;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+                firstWord = false;
+            }
+            out.append(firstWord ? Character.toLowerCase(c) : c);
+        }
+    }
+
+    public BufferedImage getImage(String key) {
+        return (BufferedImage) get(key, IMAGE);
+    }
+
+    public void putImage(String key, BufferedImage image) {
+        put(key, image, (long) image.getWidth() * image.getHeight() * 4, IMAGE);
+    }
+
+    public Render getRender(String key) {
+        return (Render) get(key, RENDER);
+    }
+
+    public void putRender(String key, Render render) {
+        put(key, render, render.bytes(), RENDER);
+    }
+
+    public synchronized void setMemoryBudget(long budget) {
+        memoryBudget = budget;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytesUsed = 0;
+    }
+
+    public synchronized long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    public synchronized long getHits() {
+        return memoryHits + diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized String report() {
+        long lookups = memoryHits + diskHits + misses;
+        return "Render cache: " + (memoryHits + diskHits) + " hits (" + memoryHits + " memory, " + diskHits + " disk), "
+                + misses + " misses" + (lookups > 0 ? " (" + (memoryHits + diskHits) * 100 / lookups + "% hit rate)" : "")
+                + ", " + entries.size() + " entries, " + (bytesUsed >> 10) + " of " + (memoryBudget >> 10)
+                + " KB in memory, " + evictions + " evicted" + (directory != null ? ", disk tier " + directory : "");
+    }
+
+    private synchronized Object get(String key, int kind) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.kind == kind) {
+            memoryHits++;
+            return entry.value;
+        }
+        Object value = directory != null ? readFromDisk(key, kind) : null;
+        if (value == null) {
+            misses++;
+            return null;
+        }
+        diskHits++;
+        remember(key, new Entry(value, kind == IMAGE ? (long) ((BufferedImage) value).getWidth()
+                * ((BufferedImage) value).getHeight() * 4 : ((Render) value).bytes(), kind));
+        return value;
+    }
+
+    private synchronized void put(String key, Object value, long bytes, int kind) {
+        remember(key, new Entry(value, bytes, kind));
+        if (diskWriter != null) {
+            diskWriter.execute(() -> writeToDisk(key, value, kind));
+        }
+    }
+
+    private void remember(String key, Entry entry) {
+        if (entry.bytes > memoryBudget) return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytesUsed -= previous.bytes;
+        }
+        bytesUsed += entry.bytes;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytesUsed > memoryBudget && eldest.hasNext()) {
+            bytesUsed -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private Object readFromDisk(String key, int kind) {
+        File file = new File(directory, key + SUFFIX);
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(file)), 64 * 1024))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION || in.readUnsignedByte() != kind) {
+                return null;
+            }
+            BufferedImage image = readImage(in);
+            Object value = kind == IMAGE ? image : new Render(image, readState(in), readSegments(in));
+            file.setLastModified(System.currentTimeMillis());
+            return value;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Discarding unreadable render cache entry " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Object value, int kind) {
+        File file = new File(directory, key + SUFFIX);
+        File temp = new File(directory, key + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(new FileOutputStream(temp), deflater, 64 * 1024), 64 * 1024))) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(kind);
+                if (kind == IMAGE) {
+                    writeImage(out, (BufferedImage) value);
+                } else {
+                    Render render = (Render) value;
+                    writeImage(out, render.canvas);
+                    writeState(out, render.state);
+                    writeSegments(out, render.segments);
+                }
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            trimDisk();
+        } catch (IOException e) {
+            temp.delete();
+            System.out.println("Render cache write failed: " + e.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= diskBudget) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > diskBudget; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static void writeImage(DataOutputStream out, BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        out.writeInt(width);
+        out.writeInt(height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                out.writeInt(argb);
+            }
+        }
+    }
+
+    private static BufferedImage readImage(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE / 4) {
+            throw new IOException("bad canvas size " + width + "x" + height);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = in.readInt();
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static void writeState(DataOutputStream out, TurtleState state) throws IOException {
+        out.writeDouble(state.getX());
+        out.writeDouble(state.getY());
+        out.writeDouble(state.getAngle());
+        out.writeInt(state.getPenColor().getRGB());
+        out.writeInt(state.getPenWidth());
+        out.writeBoolean(state.isPenDown());
+        int[] variables = state.getVariables();
+        out.writeInt(variables.length);
+        for (int value : variables) {
+            out.writeInt(value);
+        }
+    }
+
+    private static TurtleState readState(DataInputStream in) throws IOException {
+        double x = in.readDouble();
+        double y = in.readDouble();
+        double angle = in.readDouble();
+        Color penColor = new Color(in.readInt(), true);
+        int penWidth = in.readInt();
+        boolean penDown = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0 || count > 1 << 20) {
+            throw new IOException("bad variable count " + count);
+        }
+        int[] variables = new int[count];
+        for (int i = 0; i < count; i++) {
+            variables[i] = in.readInt();
+        }
+        return new TurtleState(x, y, angle, penColor, penWidth, penDown, variables);
+    }
+
+    private static void writeSegments(DataOutputStream out, DisplayList segments) throws IOException {
+        out.writeInt(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            out.writeFloat(segments.getX1(i));
+            out.writeFloat(segments.getY1(i));
+            out.writeFloat(segments.getX2(i));
+            out.writeFloat(segments.getY2(i));
+            out.writeInt(segments.getColour(i).getRGB());
+            out.writeInt(segments.getWidth(i));
+            out.writeInt(segments.getCommand(i));
+        }
+    }
+
+    private static DisplayList readSegments(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("bad segment count " + count);
+        }
+        DisplayList segments = new DisplayList();
+        Color colour = null;
+        for (int i = 0; i < count; i++) {
+            float x1 = in.readFloat();
+            float y1 = in.readFloat();
+            float x2 = in.readFloat();
+            float y2 = in.readFloat();
+            int rgb = in.readInt();
+            if (colour == null || colour.getRGB() != rgb) {
+                colour = new Color(rgb, true);
+            }
+            segments.add(x1, y1, x2, y2, colour, in.readInt(), in.readInt());
+        }
+        return segments;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public static class Render {
+        private final BufferedImage canvas;
+        private final TurtleState state;
+        private final DisplayList segments;
+
+        public Render(BufferedImage canvas, TurtleState state, DisplayList segments) {
+            this.canvas = canvas;
+            this.state = state;
+            this.segments = segments;
+        }
+
+        public BufferedImage getCanvas() {
+            return canvas;
+        }
+
+        public TurtleState getState() {
+            return state;
+        }
+
+        public DisplayList getSegments() {
+            return segments;
+        }
+
+        long bytes() {
+            return (long) canvas.getWidth() * canvas.getHeight() * 4 + segments.size() * 28L
+                    + state.getVariables().length * 4L + 128;
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long bytes;
+        private final int kind;
+
+        Entry(Object value, long bytes, int kind) {
+            this.value = value;
+            this.bytes = bytes;
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RenderServer {
+
+    public static final int DEFAULT_PORT = 8765;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final int MAX_REQUEST_BYTES = 16 << 20;
+    public static final int MAX_CANVAS_PIXELS = 16 << 20;
+    public static final int BYTES_PER_PIXEL = 8;
+    public static final long MAX_STEPS = 10_000_000;
+    public static final long MAX_SEGMENTS = 1 << 20;
+    public static final long RENDER_TIMEOUT_MILLIS = 10_000;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor renderPool;
+    private final ExecutorService connectionPool;
+    private final int queueCapacity;
+    private final long maxCanvasPixels;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final LatencyHistogram waitLatency = new LatencyHistogram();
+    private final LatencyHistogram renderLatency = new LatencyHistogram();
+    private int peakQueueDepth = 0;
+
+    public RenderServer(int port) throws IOException {
+        this(port, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public RenderServer(int port, int workers, int queueCapacity) throws IOException {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        workers = Math.max(1, workers);
+        long perWorker = Runtime.getRuntime().maxMemory() / 2 / workers / BYTES_PER_PIXEL;
+        maxCanvasPixels = Math.max(HeadlessTurtle.DEFAULT_WIDTH * HeadlessTurtle.DEFAULT_HEIGHT,
+                Math.min(MAX_CANVAS_PIXELS, perWorker));
+        renderPool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), namedThreads("turtle-render"),
+                new ThreadPoolExecutor.AbortPolicy());
+        connectionPool = Executors.newFixedThreadPool(workers, namedThreads("turtle-http"));
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(connectionPool);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        renderPool.shutdownNow();
+        connectionPool.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public URI getRenderUri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + getPort() + "/render");
+    }
+
+    public long getMaxCanvasPixels() {
+        return maxCanvasPixels;
+    }
+
+    public int getQueueDepth() {
+        return renderPool.getQueue().size();
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, 405, "POST a commands script to /render.\n");
+                exchange.close();
+                return;
+            }
+            int width = queryInt(exchange.getRequestURI(), "width", HeadlessTurtle.DEFAULT_WIDTH);
+            int height = queryInt(exchange.getRequestURI(), "height", HeadlessTurtle.DEFAULT_HEIGHT);
+            if (width <= 0 || height <= 0 || (long) width * height > maxCanvasPixels) {
+                sendText(exchange, 400, "Canvas must be between 1x1 and " + maxCanvasPixels + " pixels.\n");
+                exchange.close();
+                return;
+            }
+            byte[] script = readBody(exchange.getRequestBody());
+            if (script == null) {
+                sendText(exchange, 413, "Scripts are limited to " + MAX_REQUEST_BYTES + " bytes.\n");
+                exchange.close();
+                return;
+            }
+            bytesRead.addAndGet(script.length);
+
+            long queued = System.nanoTime();
+            try {
+                renderPool.execute(() -> respond(exchange, script, width, height, queued));
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Render queue is full (" + queueCapacity + " waiting); retry shortly.\n");
+                exchange.close();
+                return;
+            }
+            accepted.incrementAndGet();
+            recordQueueDepth();
+        } catch (IOException e) {
+            exchange.close();
+            throw e;
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            sendQuietly(exchange, 500, "Request failed: " + e + "\n");
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, byte[] script, int width, int height, long queued) {
+        long started = System.nanoTime();
+        long deadline = queued + TimeUnit.MILLISECONDS.toNanos(RENDER_TIMEOUT_MILLIS);
+        inFlight.incrementAndGet();
+        HeadlessTurtle turtle = null;
+        try {
+            if (started - deadline > 0) {
+                overBudget.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Request waited more than " + RENDER_TIMEOUT_MILLIS + " ms to render.\n");
+                return;
+            }
+            turtle = new HeadlessTurtle(width, height);
+            turtle.setBudget(MAX_STEPS, MAX_SEGMENTS, deadline);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(script),
+                    StandardCharsets.UTF_8));
+            turtle.run(CommandCompiler.compile(reader));
+            ByteArrayOutputStream png = new ByteArrayOutputStream(64 * 1024);
+            new ParallelPngEncoder().encode(turtle.getImage(), png);
+            List<String> errors = turtle.getErrors();
+
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.getResponseHeaders().set("X-Turtle-Errors", Integer.toString(errors.size()));
+            if (!errors.isEmpty()) {
+                exchange.getResponseHeaders().set("X-Turtle-First-Error", errors.get(0));
+            }
+            exchange.getResponseHeaders().set("X-Queue-Depth", Integer.toString(getQueueDepth()));
+            send(exchange, 200, png.toByteArray());
+            completed.incrementAndGet();
+        } catch (ScriptExecutor.BudgetExceeded e) {
+            overBudget.incrementAndGet();
+            sendQuietly(exchange, 422, e.getMessage() + "\n");
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            if (turtle != null) {
+                turtle.dispose();
+                turtle = null;
+            }
+            sendQuietly(exchange, 500, "Render failed: " + e + "\n");
+        } finally {
+            if (turtle != null) {
+                turtle.dispose();
+            }
+            exchange.close();
+            inFlight.decrementAndGet();
+            synchronized (this) {
+                waitLatency.record(started - queued);
+                renderLatency.record(System.nanoTime() - started);
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            send(exchange, 200, metricsJson().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public synchronized String metricsJson() {
+        return "{\n"
+                + "  \"workers\": " + renderPool.getMaximumPoolSize() + ",\n"
+                + "  \"activeRenders\": " + renderPool.getActiveCount() + ",\n"
+                + "  \"queueDepth\": " + getQueueDepth() + ",\n"
+                + "  \"queueCapacity\": " + queueCapacity + ",\n"
+                + "  \"peakQueueDepth\": " + peakQueueDepth + ",\n"
+                + "  \"inFlight\": " + inFlight.get() + ",\n"
+                + "  \"accepted\": " + accepted.get() + ",\n"
+                + "  \"completed\": " + completed.get() + ",\n"
+                + "  \"rejected\": " + rejected.get() + ",\n"
+                + "  \"failed\": " + failed.get() + ",\n"
+                + "  \"overBudget\": " + overBudget.get() + ",\n"
+                + "  \"maxCanvasPixels\": " + maxCanvasPixels + ",\n"
+                + "  \"bytesRead\": " + bytesRead.get() + ",\n"
+                + "  \"bytesWritten\": " + bytesWritten.get() + ",\n"
+                + "  \"queueWait\": " + latencyJson(waitLatency) + ",\n"
+                + "  \"render\": " + latencyJson(renderLatency) + "\n"
+                + "}\n";
+    }
+
+    private static String latencyJson(LatencyHistogram histogram) {
+        return "{\"count\": " + histogram.getCount()
+                + ", \"p50Nanos\": " + histogram.percentile(0.5)
+                + ", \"p99Nanos\": " + histogram.percentile(0.99)
+                + ", \"p999Nanos\": " + histogram.percentile(0.999)
+                + ", \"maxNanos\": " + histogram.getMax() + "}";
+    }
+
+    private synchronized void recordQueueDepth() {
+        peakQueueDepth = Math.max(peakQueueDepth, getQueueDepth());
+    }
+
+    private void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        send(exchange, status, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendQuietly(HttpExchange exchange, int status, String text) {
+        try {
+            sendText(exchange, status, text);
+        } catch (Throwable ignored) {
+            // the response was already started or the client has gone away
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        bytesWritten.addAndGet(body.length);
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(chunk)) >= 0) {
+            if (body.size() + n > MAX_REQUEST_BYTES) {
+                in.transferTo(OutputStream.nullOutputStream());
+                return null;
+            }
+            body.write(chunk, 0, n);
+        }
+        return body.toByteArray();
+    }
+
+    private static int queryInt(URI uri, String name, int fallback) {
+        String query = uri.getRawQuery();
+        if (query == null) return fallback;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                try {
+                    return Integer.parseInt(pair.substring(eq + 1));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return fallback;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static int run(String[] args) {
+        int port = DEFAULT_PORT;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE_CAPACITY;
+        try {
+            if (args.length > 0) port = Integer.parseInt(args[0]);
+            if (args.length > 1) workers = Integer.parseInt(args[1]);
+            if (args.length > 2) queue = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: mainclass --serve [port] [workers] [queue]");
+            return 2;
+        }
+
+        RenderServer server;
+        try {
+            server = new RenderServer(port, workers, queue);
+        } catch (IOException e) {
+            System.out.println("Cannot start render server: " + e.getMessage());
+            return 1;
+        }
+        server.start();
+        System.out.println("Render server listening on " + server.getRenderUri() + " (" + workers + " workers, "
+                + queue + " queued requests); metrics at /metrics");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+}
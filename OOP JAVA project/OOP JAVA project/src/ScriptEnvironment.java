@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ScriptEnvironment {
+
+    public static final int MAX_CALL_DEPTH = 1000;
+
+    private final Map<String, Procedure> procedures = new HashMap<>();
+    private final List<Procedure> procedureTable = new ArrayList<>();
+
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+    private int[] globals = new int[16];
+
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingLine = 0;
+    private int pendingEnd = 0;
+    private int openBrackets = 0;
+    private int openProcedures = 0;
+
+    public boolean isPending() {
+        return pending.length() > 0;
+    }
+
+    public int getPendingLine() {
+        return pendingLine;
+    }
+
+    String peekPending() {
+        return pending.toString();
+    }
+
+    boolean extendPending(int line, String text, int brackets, int procedures) {
+        if (pending.length() == 0) {
+            pendingLine = line;
+            pendingEnd = line;
+        }
+        for (; pendingEnd < line; pendingEnd++) {
+            pending.append('\n');
+        }
+        pending.append(text).append('\n');
+        pendingEnd++;
+        openBrackets += brackets;
+        openProcedures += procedures;
+        return openBrackets <= 0 && openProcedures <= 0;
+    }
+
+    public void clearPending() {
+        pending.setLength(0);
+        openBrackets = 0;
+        openProcedures = 0;
+    }
+
+    public boolean hasProcedures() {
+        return !procedures.isEmpty();
+    }
+
+    public boolean hasProcedure(String name) {
+        return procedures.containsKey(name);
+    }
+
+    public Procedure getProcedure(String name) {
+        return procedures.get(name);
+    }
+
+    public Procedure getProcedure(int index) {
+        return procedureTable.get(index);
+    }
+
+    Procedure define(String name, List<String> parameters) {
+        Procedure existing = procedures.get(name);
+        if (existing != null && existing.getParameterCount() == parameters.size()) {
+            existing.redefine(parameters);
+            return existing;
+        }
+        Procedure procedure = new Procedure(name, parameters, procedureTable.size());
+        procedureTable.add(procedure);
+        procedures.put(name, procedure);
+        return procedure;
+    }
+
+    void undefine(Procedure procedure) {
+        procedures.remove(procedure.getName(), procedure);
+        procedure.undefine();
+    }
+
+    public boolean hasGlobal(String name) {
+        return globalSlots.containsKey(name);
+    }
+
+    int globalSlot(String name) {
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            slot = globalSlots.size();
+            globalSlots.put(name, slot);
+            if (slot == globals.length) {
+                globals = Arrays.copyOf(globals, slot * 2);
+            }
+        }
+        return slot;
+    }
+
+    public int getGlobal(int slot) {
+        return globals[slot];
+    }
+
+    public void setGlobal(int slot, int value) {
+        globals[slot] = value;
+    }
+
+    public int[] copyGlobals() {
+        return Arrays.copyOf(globals, globalSlots.size());
+    }
+
+    public void restoreGlobals(int[] values) {
+        System.arraycopy(values, 0, globals, 0, Math.min(values.length, globalSlots.size()));
+    }
+
+    public static class Procedure {
+
+        private final String name;
+        private final int index;
+        private List<String> parameters;
+        private CompiledScript body = new CompiledScript();
+        private boolean defined = true;
+
+        Procedure(String name, List<String> parameters, int index) {
+            this.name = name;
+            this.parameters = parameters;
+            this.index = index;
+        }
+
+        void redefine(List<String> parameters) {
+            this.parameters = parameters;
+            this.body = new CompiledScript();
+            this.defined = true;
+        }
+
+        void undefine() {
+            this.body = new CompiledScript();
+            this.defined = false;
+        }
+
+        public boolean isDefined() {
+            return defined;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getParameterCount() {
+            return parameters.size();
+        }
+
+        public int parameterIndex(String parameter) {
+            return parameters.indexOf(parameter);
+        }
+
+        public CompiledScript getBody() {
+            return body;
+        }
+    }
+}
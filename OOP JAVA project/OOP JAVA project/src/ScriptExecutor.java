@@ -0,0 +1,338 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+public class ScriptExecutor {
+
+    private int line = 0;
+    private long executed = 0;
+    private Runnable commandListener = null;
+    private CommandMetrics metrics = null;
+
+    private long maxSteps = Long.MAX_VALUE;
+    private long deadline = 0;
+    private long steps = 0;
+
+    private int[] stack = new int[64];
+    private int sp = 0;
+    private int[] loopCounters = new int[16];
+    private int loopDepth = 0;
+    private int callDepth = 0;
+
+    public int getLine() {
+        return line;
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public boolean isNested() {
+        return loopDepth > 0 || callDepth > 0;
+    }
+
+    public void setCommandListener(Runnable commandListener) {
+        this.commandListener = commandListener;
+    }
+
+    public void setMetrics(CommandMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setBudget(long maxSteps, long deadline) {
+        this.maxSteps = maxSteps;
+        this.deadline = deadline;
+        steps = 0;
+    }
+
+    public void execute(CompiledScript script, TurtleTarget target) {
+        int savedSp = sp;
+        int savedLoops = loopDepth;
+        int savedCalls = callDepth;
+        try {
+            run(script, target, sp);
+        } catch (ScriptAbort e) {
+            target.doError(e.getMessage());
+        } finally {
+            sp = savedSp;
+            loopDepth = savedLoops;
+            callDepth = savedCalls;
+        }
+    }
+
+    private void run(CompiledScript script, TurtleTarget target, int frame) {
+        int[] code = script.getCode();
+        int[] lines = script.getLines();
+        Color[] palette = script.getPalette();
+        int codeLength = script.getCodeLength();
+        ScriptEnvironment environment = script.getEnvironment();
+
+        int pc = 0;
+        int instruction = 0;
+        while (pc < codeLength) {
+            line = lines[instruction++];
+            int op = code[pc];
+            if (CompiledScript.isControl(op)) {
+                switch (op) {
+                    case CompiledScript.OP_PUSH:
+                        push(code[pc + 1]);
+                        break;
+                    case CompiledScript.OP_LOCAL:
+                        push(stack[frame + code[pc + 1]]);
+                        break;
+                    case CompiledScript.OP_GLOBAL:
+                        push(environment.getGlobal(code[pc + 1]));
+                        break;
+                    case CompiledScript.OP_STORE:
+                        environment.setGlobal(code[pc + 1], stack[--sp]);
+                        break;
+                    case CompiledScript.OP_ADD:
+                        sp--;
+                        stack[sp - 1] += stack[sp];
+                        break;
+                    case CompiledScript.OP_SUB:
+                        sp--;
+                        stack[sp - 1] -= stack[sp];
+                        break;
+                    case CompiledScript.OP_MUL:
+                        sp--;
+                        stack[sp - 1] *= stack[sp];
+                        break;
+                    case CompiledScript.OP_DIV:
+                    case CompiledScript.OP_MOD:
+                        sp--;
+                        if (stack[sp] == 0) {
+                            throw new ScriptAbort("Division by zero.");
+                        }
+                        stack[sp - 1] = op == CompiledScript.OP_DIV ? stack[sp - 1] / stack[sp] : stack[sp - 1] % stack[sp];
+                        break;
+                    case CompiledScript.OP_NEG:
+                        stack[sp - 1] = -stack[sp - 1];
+                        break;
+                    case CompiledScript.OP_APPLY:
+                        int applied = code[pc + 1];
+                        sp -= CompiledScript.arity(applied);
+                        String problem = BlockCompiler.checkArguments(applied, stack, sp);
+                        if (problem != null) {
+                            throw new ScriptAbort(problem);
+                        }
+                        if (metrics == null) {
+                            dispatch(applied, stack, sp, palette, target);
+                        } else {
+                            long started = System.nanoTime();
+                            dispatch(applied, stack, sp, palette, target);
+                            metrics.command(applied, System.nanoTime() - started);
+                        }
+                        commandExecuted();
+                        break;
+                    case CompiledScript.OP_REPEAT:
+                        int count = stack[--sp];
+                        if (count <= 0) {
+                            instruction = code[pc + 2];
+                            pc = code[pc + 1];
+                            continue;
+                        }
+                        if (loopDepth == loopCounters.length) {
+                            loopCounters = Arrays.copyOf(loopCounters, loopDepth * 2);
+                        }
+                        loopCounters[loopDepth++] = count;
+                        break;
+                    case CompiledScript.OP_LOOP:
+                        step();
+                        if (--loopCounters[loopDepth - 1] > 0) {
+                            instruction = code[pc + 2];
+                            pc = code[pc + 1];
+                            continue;
+                        }
+                        loopDepth--;
+                        break;
+                    case CompiledScript.OP_CALL:
+                        step();
+                        ScriptEnvironment.Procedure procedure = environment.getProcedure(code[pc + 1]);
+                        if (!procedure.isDefined()) {
+                            throw new ScriptAbort("Procedure " + procedure.getName() + " is no longer defined.");
+                        }
+                        if (callDepth == ScriptEnvironment.MAX_CALL_DEPTH) {
+                            throw new ScriptAbort("Procedure " + procedure.getName() + " nested more than "
+                                    + ScriptEnvironment.MAX_CALL_DEPTH + " calls deep.");
+                        }
+                        int base = sp - procedure.getParameterCount();
+                        int loops = loopDepth;
+                        callDepth++;
+                        run(procedure.getBody(), target, base);
+                        callDepth--;
+                        loopDepth = loops;
+                        sp = base;
+                        break;
+                    default:
+                        throw new IllegalStateException("Bad opcode " + op + " at line " + line);
+                }
+                pc += 1 + CompiledScript.arity(op);
+                continue;
+            }
+
+            if (metrics == null) {
+                dispatch(op, code, pc + 1, palette, target);
+            } else {
+                long started = System.nanoTime();
+                dispatch(op, code, pc + 1, palette, target);
+                metrics.command(op, System.nanoTime() - started);
+            }
+            pc += 1 + CompiledScript.arity(op);
+            commandExecuted();
+        }
+    }
+
+    private void commandExecuted() {
+        executed++;
+        step();
+        if (commandListener != null) {
+            commandListener.run();
+        }
+    }
+
+    private void step() {
+        if (++steps > maxSteps) {
+            throw new BudgetExceeded("Script ran more than " + maxSteps + " steps.");
+        }
+        if (deadline != 0 && (steps & 1023) == 0 && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceeded("Script ran past its time limit.");
+        }
+    }
+
+    private void push(int value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private void dispatch(int op, int[] args, int at, Color[] palette, TurtleTarget target) {
+        switch (op) {
+            case CompiledScript.OP_PENDOWN:
+                target.doPenDown();
+                break;
+            case CompiledScript.OP_PENUP:
+                target.doPenUp();
+                break;
+            case CompiledScript.OP_MOVE:
+                target.doMove(args[at]);
+                break;
+            case CompiledScript.OP_REVERSE:
+                target.doReverse(args[at]);
+                break;
+            case CompiledScript.OP_LEFT:
+                target.doLeft(args[at]);
+                break;
+            case CompiledScript.OP_RIGHT:
+                target.doRight(args[at]);
+                break;
+            case CompiledScript.OP_COLOUR:
+                target.doPenColour(palette[args[at]]);
+                break;
+            case CompiledScript.OP_PENWIDTH:
+                target.doPenWidth(args[at]);
+                break;
+            case CompiledScript.OP_SQUARE:
+                target.doSquare(args[at]);
+                break;
+            case CompiledScript.OP_TRIANGLE:
+                target.doTriangle(args[at]);
+                break;
+            case CompiledScript.OP_TRIANGLE3:
+                target.doTriangle(args[at], args[at + 1], args[at + 2]);
+                break;
+            case CompiledScript.OP_SPIRAL:
+                target.doSquareSpiral(args[at], args[at + 1]);
+                break;
+            case CompiledScript.OP_POLYGON:
+                target.doPolygon(args[at], args[at + 1]);
+                break;
+            case CompiledScript.OP_CLEAR:
+                target.doClear();
+                break;
+            case CompiledScript.OP_RESET:
+                target.doReset();
+                break;
+            case CompiledScript.OP_ABOUT:
+                target.doAbout();
+                break;
+            case CompiledScript.OP_SAVE:
+                target.doSave();
+                break;
+            case CompiledScript.OP_LOAD:
+                target.doLoad();
+                break;
+            case CompiledScript.OP_SAVECOMMANDS:
+                target.doSaveCommands();
+                break;
+            case CompiledScript.OP_LOADCOMMANDS:
+                target.doLoadCommands();
+                break;
+            case CompiledScript.OP_SWARM:
+                target.doSwarm();
+                break;
+            case CompiledScript.OP_STATS:
+                target.doStats(args[at]);
+                break;
+            case CompiledScript.OP_LOD:
+                target.doLevelOfDetail(args[at]);
+                break;
+            case CompiledScript.OP_SAVEVECTOR:
+                target.doSaveVector();
+                break;
+            case CompiledScript.OP_FRAMERATE:
+                target.doFrameRate(args[at]);
+                break;
+            case CompiledScript.OP_ZOOM:
+                target.doZoom(args[at]);
+                break;
+            case CompiledScript.OP_PAN:
+                target.doPan(args[at], args[at + 1]);
+                break;
+            case CompiledScript.OP_EXPORT:
+                target.doExport(args[at], args[at + 1]);
+                break;
+            case CompiledScript.OP_PICK:
+                target.doPick(args[at], args[at + 1]);
+                break;
+            case CompiledScript.OP_UNDO:
+                target.doUndo(args[at]);
+                break;
+            case CompiledScript.OP_SEEK:
+                target.doSeek(args[at]);
+                break;
+            case CompiledScript.OP_CHECKPOINTS:
+                target.doCheckpointBudget(args[at]);
+                break;
+            case CompiledScript.OP_COMPRESSION:
+                target.doCompression(args[at]);
+                break;
+            case CompiledScript.OP_SAVEALPHA:
+                target.doSaveAlpha(args[at] != 0);
+                break;
+            case CompiledScript.OP_RGB:
+                target.doPenColour(new Color(args[at], args[at + 1], args[at + 2]));
+                break;
+            default:
+                throw new IllegalStateException("Bad opcode " + op + " at line " + line);
+        }
+    }
+
+    public static class BudgetExceeded extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceeded(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static class ScriptAbort extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ScriptAbort(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
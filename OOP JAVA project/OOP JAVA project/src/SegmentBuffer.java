@@ -0,0 +1,106 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class SegmentBuffer {
+
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = 50_000;
+
+    private final int mask;
+    private final float[] coords;
+    private final int[] colours;
+    private final int[] widths;
+    private final int[] lines;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long writeIndex = 0;
+    private long cachedHead = 0;
+
+    private volatile boolean closed = false;
+    private volatile boolean abandoned = false;
+
+    public SegmentBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SegmentBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        coords = new float[size * 4];
+        colours = new int[size];
+        widths = new int[size];
+        lines = new int[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public void put(float x1, float y1, float x2, float y2, int rgb, int width, int line) {
+        if (writeIndex - cachedHead > mask) {
+            awaitSpace();
+        }
+        int slot = (int) writeIndex & mask;
+        int c = slot * 4;
+        coords[c] = x1;
+        coords[c + 1] = y1;
+        coords[c + 2] = x2;
+        coords[c + 3] = y2;
+        colours[slot] = rgb;
+        widths[slot] = width;
+        lines[slot] = line;
+        tail.lazySet(++writeIndex);
+    }
+
+    private void awaitSpace() {
+        for (int spins = 0; ; spins++) {
+            if (abandoned) {
+                throw new CancellationException("turtle");
+            }
+            cachedHead = head.get();
+            if (writeIndex - cachedHead <= mask) return;
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public void abandon() {
+        abandoned = true;
+    }
+
+    public boolean isAbandoned() {
+        return abandoned;
+    }
+
+    public int drain(Sink sink, int max) {
+        long read = head.get();
+        int count = (int) Math.min(max, tail.get() - read);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (read + i) & mask;
+            int c = slot * 4;
+            sink.segment(coords[c], coords[c + 1], coords[c + 2], coords[c + 3], colours[slot], widths[slot],
+                    lines[slot]);
+        }
+        head.lazySet(read + count);
+        return count;
+    }
+
+    public boolean isDrained() {
+        return closed && head.get() == tail.get();
+    }
+
+    public interface Sink {
+        void segment(float x1, float y1, float x2, float y2, int rgb, int width, int line);
+    }
+}
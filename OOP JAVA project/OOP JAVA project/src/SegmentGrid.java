@@ -0,0 +1,195 @@
+import java.util.Arrays;
+
+public class SegmentGrid {
+
+    public static final int DEFAULT_CELL_SIZE = 16;
+
+    private static final int BUCKETS = 1 << 12;
+    private static final int MAX_CELLS_PER_SEGMENT = 256;
+
+    private final DisplayList displayList;
+    private final int cellSize;
+
+    private final int[][] buckets = new int[BUCKETS][];
+    private final int[] bucketSizes = new int[BUCKETS];
+    private int[] large = new int[16];
+    private int largeSize = 0;
+
+    public SegmentGrid(DisplayList displayList) {
+        this(displayList, DEFAULT_CELL_SIZE);
+    }
+
+    public SegmentGrid(DisplayList displayList, int cellSize) {
+        this.displayList = displayList;
+        this.cellSize = cellSize;
+    }
+
+    public void clear() {
+        Arrays.fill(bucketSizes, 0);
+        largeSize = 0;
+    }
+
+    public int getEntryCount() {
+        int entries = largeSize;
+        for (int size : bucketSizes) {
+            entries += size;
+        }
+        return entries;
+    }
+
+    public void insert(int segment) {
+        int[] cells = cells(segment);
+        if (cells == null) {
+            if (largeSize == large.length) {
+                large = Arrays.copyOf(large, largeSize * 2);
+            }
+            large[largeSize++] = segment;
+            return;
+        }
+
+        for (int cy = cells[1]; cy <= cells[3]; cy++) {
+            for (int cx = cells[0]; cx <= cells[2]; cx++) {
+                add(bucket(cx, cy), segment);
+            }
+        }
+    }
+
+    public void truncate(int from, int to) {
+        // segments are inserted in index order, so every bucket ends with its newest segments
+        for (int segment = from; segment < to; segment++) {
+            int[] cells = cells(segment);
+            if (cells == null) continue;
+            for (int cy = cells[1]; cy <= cells[3]; cy++) {
+                for (int cx = cells[0]; cx <= cells[2]; cx++) {
+                    int b = bucket(cx, cy);
+                    while (bucketSizes[b] > 0 && buckets[b][bucketSizes[b] - 1] >= from) {
+                        bucketSizes[b]--;
+                    }
+                }
+            }
+        }
+        while (largeSize > 0 && large[largeSize - 1] >= from) {
+            largeSize--;
+        }
+    }
+
+    private int[] cells(int segment) {
+        float pad = displayList.getWidth(segment) / 2f + 1;
+        int cx0 = cell(Math.min(displayList.getX1(segment), displayList.getX2(segment)) - pad);
+        int cy0 = cell(Math.min(displayList.getY1(segment), displayList.getY2(segment)) - pad);
+        int cx1 = cell(Math.max(displayList.getX1(segment), displayList.getX2(segment)) + pad);
+        int cy1 = cell(Math.max(displayList.getY1(segment), displayList.getY2(segment)) + pad);
+        long cells = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+        return cells > MAX_CELLS_PER_SEGMENT ? null : new int[] {cx0, cy0, cx1, cy1};
+    }
+
+    public int[] query(float minX, float minY, float maxX, float maxY) {
+        int cx0 = cell(minX);
+        int cy0 = cell(minY);
+        int cx1 = cell(maxX);
+        int cy1 = cell(maxY);
+
+        int[] found = new int[64];
+        int count = 0;
+
+        long cells = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+        if (cells >= BUCKETS) {
+            for (int b = 0; b < BUCKETS; b++) {
+                found = ensure(found, count + bucketSizes[b]);
+                count = collect(buckets[b], bucketSizes[b], found, count, minX, minY, maxX, maxY);
+            }
+        } else {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int b = bucket(cx, cy);
+                    found = ensure(found, count + bucketSizes[b]);
+                    count = collect(buckets[b], bucketSizes[b], found, count, minX, minY, maxX, maxY);
+                }
+            }
+        }
+        found = ensure(found, count + largeSize);
+        count = collect(large, largeSize, found, count, minX, minY, maxX, maxY);
+
+        Arrays.sort(found, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || found[unique - 1] != found[i]) {
+                found[unique++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, unique);
+    }
+
+    public int pick(float x, float y) {
+        int b = bucket(cell(x), cell(y));
+        int best = topmostHit(buckets[b], bucketSizes[b], x, y, -1);
+        return topmostHit(large, largeSize, x, y, best);
+    }
+
+    private int topmostHit(int[] segments, int count, float x, float y, int best) {
+        for (int i = count - 1; i >= 0; i--) {
+            int s = segments[i];
+            if (s <= best) continue;
+            float reach = displayList.getWidth(s) / 2f + 0.5f;
+            if (distanceSquared(s, x, y) <= reach * reach) {
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    private float distanceSquared(int s, float px, float py) {
+        float x1 = displayList.getX1(s);
+        float y1 = displayList.getY1(s);
+        float dx = displayList.getX2(s) - x1;
+        float dy = displayList.getY2(s) - y1;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        float ex = x1 + t * dx - px;
+        float ey = y1 + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    private int collect(int[] segments, int size, int[] found, int count,
+                        float minX, float minY, float maxX, float maxY) {
+        for (int i = 0; i < size; i++) {
+            int s = segments[i];
+            float pad = displayList.getWidth(s) / 2f + 1;
+            float x1 = displayList.getX1(s);
+            float y1 = displayList.getY1(s);
+            float x2 = displayList.getX2(s);
+            float y2 = displayList.getY2(s);
+            if (Math.max(x1, x2) + pad < minX || Math.min(x1, x2) - pad > maxX
+                    || Math.max(y1, y2) + pad < minY || Math.min(y1, y2) - pad > maxY) {
+                continue;
+            }
+            found[count++] = s;
+        }
+        return count;
+    }
+
+    private void add(int b, int segment) {
+        int[] bucket = buckets[b];
+        if (bucket == null) {
+            bucket = new int[8];
+            buckets[b] = bucket;
+        } else if (bucketSizes[b] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            buckets[b] = bucket;
+        }
+        bucket[bucketSizes[b]++] = segment;
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static int bucket(int cx, int cy) {
+        return ((cx * 73856093) ^ (cy * 19349663)) & (BUCKETS - 1);
+    }
+
+    private static int[] ensure(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+}
@@ -0,0 +1,222 @@
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class SvgExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SCALE = 100;
+
+    private final DisplayList displayList;
+    private final Rectangle area;
+    private final Color background;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private long bytesWritten = 0;
+    private int paths = 0;
+
+    public SvgExporter(DisplayList displayList, int width, int height, Color background) {
+        this(displayList, new Rectangle(0, 0, width, height), background);
+    }
+
+    public SvgExporter(DisplayList displayList, Rectangle area, Color background) {
+        this.displayList = displayList;
+        this.area = new Rectangle(area);
+        this.background = background;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getPaths() {
+        return paths;
+    }
+
+    public void export(File output) throws IOException {
+        buffer.clear();
+        bytesWritten = 0;
+        paths = 0;
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = out;
+            writeHeader();
+            writePaths();
+            write("</g>\n</svg>\n");
+            flush();
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        writeInt(area.width);
+        write("\" height=\"");
+        writeInt(area.height);
+        write("\" viewBox=\"");
+        writeInt(area.x);
+        write(" ");
+        writeInt(area.y);
+        write(" ");
+        writeInt(area.width);
+        write(" ");
+        writeInt(area.height);
+        write("\">\n");
+        if (background != null) {
+            write("<rect x=\"");
+            writeInt(area.x);
+            write("\" y=\"");
+            writeInt(area.y);
+            write("\" width=\"100%\" height=\"100%\" fill=\"");
+            writeColour(background);
+            write("\"/>\n");
+        }
+        write("<g fill=\"none\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+    }
+
+    private void writePaths() throws IOException {
+        int currentColour = -1;
+        int currentWidth = -1;
+        long x = 0;
+        long y = 0;
+        boolean relative = false;
+        for (int i = 0; i < displayList.size(); i++) {
+            if (displayList.getColourIndex(i) != currentColour || displayList.getWidth(i) != currentWidth) {
+                if (currentColour >= 0) {
+                    write("\"/>\n");
+                }
+                currentColour = displayList.getColourIndex(i);
+                currentWidth = displayList.getWidth(i);
+                Color colour = displayList.getColour(i);
+                write("<path stroke=\"");
+                writeColour(colour);
+                if (colour.getAlpha() < 255) {
+                    write("\" stroke-opacity=\"");
+                    writeNumber(Math.round(colour.getAlpha() * SCALE / 255.0));
+                }
+                if (currentWidth != 1) {
+                    write("\" stroke-width=\"");
+                    writeInt(currentWidth);
+                }
+                write("\" d=\"M");
+                x = quantize(displayList.getX1(i));
+                y = quantize(displayList.getY1(i));
+                writeNumber(x);
+                writeSigned(y);
+                relative = false;
+                paths++;
+            } else {
+                long startX = quantize(displayList.getX1(i));
+                long startY = quantize(displayList.getY1(i));
+                if (startX != x || startY != y) {
+                    write("m");
+                    writeNumber(startX - x);
+                    writeSigned(startY - y);
+                    x = startX;
+                    y = startY;
+                    relative = true;
+                }
+            }
+            long endX = quantize(displayList.getX2(i));
+            long endY = quantize(displayList.getY2(i));
+            if (relative) {
+                writeSigned(endX - x);
+            } else {
+                write("l");
+                writeNumber(endX - x);
+                relative = true;
+            }
+            writeSigned(endY - y);
+            x = endX;
+            y = endY;
+        }
+        if (currentColour >= 0) {
+            write("\"/>\n");
+        }
+    }
+
+    private static long quantize(float value) {
+        return Math.round(value * (double) SCALE);
+    }
+
+    private void writeColour(Color colour) throws IOException {
+        int rgb = colour.getRGB();
+        ensure(7);
+        buffer.put((byte) '#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            buffer.put((byte) Character.forDigit(rgb >> shift & 0xF, 16));
+        }
+    }
+
+    private void writeSigned(long hundredths) throws IOException {
+        if (hundredths >= 0) {
+            ensure(1);
+            buffer.put((byte) ' ');
+        }
+        writeNumber(hundredths);
+    }
+
+    private void writeNumber(long hundredths) throws IOException {
+        ensure(24);
+        if (hundredths < 0) {
+            buffer.put((byte) '-');
+            hundredths = -hundredths;
+        }
+        long whole = hundredths / SCALE;
+        int fraction = (int) (hundredths % SCALE);
+        if (whole != 0 || fraction == 0) {
+            putDigits(whole);
+        }
+        if (fraction != 0) {
+            buffer.put((byte) '.');
+            buffer.put((byte) ('0' + fraction / 10));
+            if (fraction % 10 != 0) {
+                buffer.put((byte) ('0' + fraction % 10));
+            }
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        ensure(12);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        putDigits(value);
+    }
+
+    private void putDigits(long value) {
+        if (value >= 10) {
+            putDigits(value / 10);
+        }
+        buffer.put((byte) ('0' + value % 10));
+    }
+
+    private void write(String text) throws IOException {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,370 @@
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TileCanvas {
+
+    public static final int TILE_SIZE = TileStore.TILE_SIZE;
+
+    private static final double FLATNESS = 0.25;
+
+    private final TileStore store;
+    private final HashMap<Long, Long> stamps = new HashMap<>();
+    private long modifications = 0;
+
+    private final BufferedImage scratch = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+    private final int[] scratchPixels = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+    private final Graphics2D scratchGraphics = scratch.createGraphics();
+    private final Line2D.Float line = new Line2D.Float();
+    private final Rectangle2D.Float tileArea = new Rectangle2D.Float();
+    private final BasicStroke[] strokes = new BasicStroke[16];
+    private BasicStroke stroke = null;
+
+    public TileCanvas() {
+        this(TileStore.fromProperties());
+    }
+
+    public TileCanvas(TileStore store) {
+        this.store = store;
+    }
+
+    public TileStore getStore() {
+        return store;
+    }
+
+    public synchronized int getTileCount() {
+        return store.getTileCount();
+    }
+
+    public synchronized long[] tileKeys() {
+        return store.keys();
+    }
+
+    public synchronized long getStamp(long key) {
+        Long stamp = stamps.get(key);
+        return stamp != null ? stamp : 0;
+    }
+
+    public synchronized Rectangle getBounds() {
+        if (stamps.isEmpty()) return new Rectangle();
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (long key : stamps.keySet()) {
+            minX = Math.min(minX, TileStore.tileX(key));
+            minY = Math.min(minY, TileStore.tileY(key));
+            maxX = Math.max(maxX, TileStore.tileX(key));
+            maxY = Math.max(maxY, TileStore.tileY(key));
+        }
+        return new Rectangle(minX * TILE_SIZE, minY * TILE_SIZE, (maxX - minX + 1) * TILE_SIZE,
+                (maxY - minY + 1) * TILE_SIZE);
+    }
+
+    public synchronized void clear() {
+        store.clear();
+        stamps.clear();
+    }
+
+    public synchronized void drawLine(float x1, float y1, float x2, float y2, Color colour, int width) {
+        setPen(colour, width);
+        line.setLine(x1, y1, x2, y2);
+        Shape shape = isThin() ? stroke.createStrokedShape(line) : line;
+        int pad = width / 2 + 2;
+        int left = (int) Math.floor(Math.min(x1, x2)) - pad;
+        int top = (int) Math.floor(Math.min(y1, y2)) - pad;
+        int right = (int) Math.ceil(Math.max(x1, x2)) + pad;
+        int bottom = (int) Math.ceil(Math.max(y1, y2)) + pad;
+        forEachTile(line, pad, (tileX, tileY) -> {
+            int originX = tileX * TILE_SIZE;
+            int originY = tileY * TILE_SIZE;
+            int clipX = Math.max(left, originX) - originX;
+            int clipY = Math.max(top, originY) - originY;
+            int clipRight = Math.min(right + 1, originX + TILE_SIZE) - originX;
+            int clipBottom = Math.min(bottom + 1, originY + TILE_SIZE) - originY;
+            drawInTile(shape, TileStore.key(tileX, tileY), originX, originY, clipX, clipY, clipRight - clipX,
+                    clipBottom - clipY);
+        });
+    }
+
+    public synchronized void draw(Shape shape, Color colour, int width) {
+        setPen(colour, width);
+        int pad = width / 2 + 2;
+        HashMap<Long, TilePath> paths = new HashMap<>();
+        float[] point = new float[6];
+        float lastX = 0;
+        float lastY = 0;
+        float moveX = 0;
+        float moveY = 0;
+        for (PathIterator it = shape.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+            int type = it.currentSegment(point);
+            if (type == PathIterator.SEG_MOVETO) {
+                lastX = moveX = point[0];
+                lastY = moveY = point[1];
+                continue;
+            }
+            float x = type == PathIterator.SEG_CLOSE ? moveX : point[0];
+            float y = type == PathIterator.SEG_CLOSE ? moveY : point[1];
+            line.setLine(lastX, lastY, x, y);
+            forEachTile(line, pad, (tileX, tileY) ->
+                    paths.computeIfAbsent(TileStore.key(tileX, tileY), k -> new TilePath()).add(line, pad));
+            lastX = x;
+            lastY = y;
+        }
+
+        for (Map.Entry<Long, TilePath> entry : paths.entrySet()) {
+            long key = entry.getKey();
+            TilePath path = entry.getValue();
+            int originX = TileStore.tileX(key) * TILE_SIZE;
+            int originY = TileStore.tileY(key) * TILE_SIZE;
+            int x0 = Math.max(path.left, originX) - originX;
+            int y0 = Math.max(path.top, originY) - originY;
+            int x1 = Math.min(path.right + 1, originX + TILE_SIZE) - originX;
+            int y1 = Math.min(path.bottom + 1, originY + TILE_SIZE) - originY;
+            drawInTile(isThin() ? stroke.createStrokedShape(path.path) : path.path, key, originX, originY, x0, y0,
+                    x1 - x0, y1 - y0);
+        }
+    }
+
+    public synchronized void paint(Graphics2D g, Rectangle area, int offsetX, int offsetY) {
+        int right = area.x + area.width;
+        int bottom = area.y + area.height;
+        for (int tileY = Math.floorDiv(area.y, TILE_SIZE); tileY <= Math.floorDiv(bottom - 1, TILE_SIZE); tileY++) {
+            for (int tileX = Math.floorDiv(area.x, TILE_SIZE); tileX <= Math.floorDiv(right - 1, TILE_SIZE); tileX++) {
+                ByteBuffer tile = tile(TileStore.key(tileX, tileY), false);
+                if (tile == null) continue;
+                int originX = tileX * TILE_SIZE;
+                int originY = tileY * TILE_SIZE;
+                int x0 = Math.max(area.x, originX) - originX;
+                int y0 = Math.max(area.y, originY) - originY;
+                int x1 = Math.min(right, originX + TILE_SIZE) - originX;
+                int y1 = Math.min(bottom, originY + TILE_SIZE) - originY;
+                copyOut(tile.asIntBuffer(), x0, y0, x1 - x0, y1 - y0);
+                int dx = originX + offsetX;
+                int dy = originY + offsetY;
+                g.drawImage(scratch, dx + x0, dy + y0, dx + x1, dy + y1, x0, y0, x1, y1, null);
+            }
+        }
+    }
+
+    public synchronized BufferedImage copy(Rectangle area) {
+        BufferedImage image = new BufferedImage(Math.max(1, area.width), Math.max(1, area.height),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            paint(g, area, -area.x, -area.y);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    public synchronized void drawImage(BufferedImage image, int x, int y) {
+        int right = x + image.getWidth();
+        int bottom = y + image.getHeight();
+        int[] row = new int[TILE_SIZE];
+        for (int tileY = Math.floorDiv(y, TILE_SIZE); tileY <= Math.floorDiv(bottom - 1, TILE_SIZE); tileY++) {
+            for (int tileX = Math.floorDiv(x, TILE_SIZE); tileX <= Math.floorDiv(right - 1, TILE_SIZE); tileX++) {
+                int originX = tileX * TILE_SIZE;
+                int originY = tileY * TILE_SIZE;
+                int x0 = Math.max(x, originX) - originX;
+                int y0 = Math.max(y, originY) - originY;
+                int width = Math.min(right, originX + TILE_SIZE) - originX - x0;
+                int height = Math.min(bottom, originY + TILE_SIZE) - originY - y0;
+                long key = TileStore.key(tileX, tileY);
+                IntBuffer pixels = null;
+                for (int r = 0; r < height; r++) {
+                    image.getRGB(originX + x0 - x, originY + y0 + r - y, width, 1, row, 0, width);
+                    if (pixels == null) {
+                        if (isBlank(row, 0, width) && !store.contains(key)) continue;
+                        pixels = tile(key, true).asIntBuffer();
+                        touched(key);
+                    }
+                    pixels.put((y0 + r) * TILE_SIZE + x0, row, 0, width);
+                }
+            }
+        }
+    }
+
+    public synchronized void putTile(long key, ByteBuffer pixels) {
+        tile(key, true).put(pixels).clear();
+        touched(key);
+    }
+
+    public synchronized void readTile(long key, ByteBuffer target) {
+        ByteBuffer tile = tile(key, false);
+        if (tile != null) {
+            target.put(tile.duplicate().clear());
+        }
+    }
+
+    public synchronized String report() {
+        return store.report();
+    }
+
+    public synchronized void close() {
+        scratchGraphics.dispose();
+        stamps.clear();
+        store.close();
+    }
+
+    private void drawInTile(Shape shape, long key, int originX, int originY, int x, int y, int width, int height) {
+        ByteBuffer existing = tile(key, false);
+        if (existing != null) {
+            copyOut(existing.asIntBuffer(), x, y, width, height);
+        } else {
+            for (int r = y; r < y + height; r++) {
+                Arrays.fill(scratchPixels, r * TILE_SIZE + x, r * TILE_SIZE + x + width, 0);
+            }
+        }
+
+        scratchGraphics.setClip(x, y, width, height);
+        scratchGraphics.translate(-originX, -originY);
+        if (isThin()) {
+            scratchGraphics.fill(shape);
+        } else {
+            scratchGraphics.draw(shape);
+        }
+        scratchGraphics.translate(originX, originY);
+
+        if (existing == null) {
+            boolean blank = true;
+            for (int r = y; r < y + height && blank; r++) {
+                blank = isBlank(scratchPixels, r * TILE_SIZE + x, width);
+            }
+            if (blank) return;
+        }
+        IntBuffer pixels = tile(key, true).asIntBuffer();
+        for (int r = y; r < y + height; r++) {
+            pixels.put(r * TILE_SIZE + x, scratchPixels, r * TILE_SIZE + x, width);
+        }
+        touched(key);
+    }
+
+    private void setPen(Color colour, int width) {
+        if (stroke == null || stroke.getLineWidth() != width) {
+            stroke = width >= 0 && width < strokes.length ? strokes[width] : null;
+            if (stroke == null || stroke.getLineWidth() != width) {
+                stroke = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+                if (width >= 0 && width < strokes.length) {
+                    strokes[width] = stroke;
+                }
+            }
+            scratchGraphics.setStroke(stroke);
+        }
+        scratchGraphics.setColor(colour);
+    }
+
+    private boolean isThin() {
+        // thin lines restart their stepping wherever a tile edge cuts them, so they are filled as outlines instead
+        return stroke.getLineWidth() <= 1;
+    }
+
+    private void forEachTile(Line2D.Float segment, int pad, TileVisitor visitor) {
+        // step along the longer axis one tile at a time, visiting only the tiles beside the line in that band
+        boolean steep = Math.abs(segment.y2 - segment.y1) > Math.abs(segment.x2 - segment.x1);
+        double a1 = steep ? segment.y1 : segment.x1;
+        double b1 = steep ? segment.x1 : segment.y1;
+        double a2 = steep ? segment.y2 : segment.x2;
+        double b2 = steep ? segment.x2 : segment.y2;
+        if (a1 > a2) {
+            double swap = a1;
+            a1 = a2;
+            a2 = swap;
+            swap = b1;
+            b1 = b2;
+            b2 = swap;
+        }
+        double slope = a2 > a1 ? (b2 - b1) / (a2 - a1) : 0;
+        int last = Math.floorDiv((int) Math.ceil(a2) + pad, TILE_SIZE);
+        for (int major = Math.floorDiv((int) Math.floor(a1) - pad, TILE_SIZE); major <= last; major++) {
+            double from = Math.max(a1, (double) major * TILE_SIZE - pad);
+            double to = Math.min(a2, (double) (major + 1) * TILE_SIZE + pad);
+            double bFrom = b1 + slope * (from - a1);
+            double bTo = b1 + slope * (to - a1);
+            int high = Math.floorDiv((int) Math.ceil(Math.max(bFrom, bTo)) + pad, TILE_SIZE);
+            for (int minor = Math.floorDiv((int) Math.floor(Math.min(bFrom, bTo)) - pad, TILE_SIZE); minor <= high;
+                    minor++) {
+                int tileX = steep ? minor : major;
+                int tileY = steep ? major : minor;
+                if (crosses(segment, tileX, tileY, pad)) {
+                    visitor.visit(tileX, tileY);
+                }
+            }
+        }
+    }
+
+    private boolean crosses(Line2D segment, int tileX, int tileY, int pad) {
+        tileArea.setRect(tileX * TILE_SIZE - pad, tileY * TILE_SIZE - pad, TILE_SIZE + 2 * pad, TILE_SIZE + 2 * pad);
+        return segment.intersects(tileArea);
+    }
+
+    private void copyOut(IntBuffer pixels, int x, int y, int width, int height) {
+        for (int r = y; r < y + height; r++) {
+            pixels.get(r * TILE_SIZE + x, scratchPixels, r * TILE_SIZE + x, width);
+        }
+    }
+
+    private ByteBuffer tile(long key, boolean create) {
+        try {
+            return create ? store.getOrCreate(key) : store.get(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Tile spill file failed", e);
+        }
+    }
+
+    private void touched(long key) {
+        stamps.put(key, ++modifications);
+    }
+
+    private interface TileVisitor {
+        void visit(int tileX, int tileY);
+    }
+
+    private static class TilePath {
+        private final Path2D.Float path = new Path2D.Float();
+        private float endX = Float.NaN;
+        private float endY = Float.NaN;
+        private int left = Integer.MAX_VALUE;
+        private int top = Integer.MAX_VALUE;
+        private int right = Integer.MIN_VALUE;
+        private int bottom = Integer.MIN_VALUE;
+
+        void add(Line2D.Float segment, int pad) {
+            if (segment.x1 != endX || segment.y1 != endY) {
+                path.moveTo(segment.x1, segment.y1);
+            }
+            path.lineTo(segment.x2, segment.y2);
+            endX = segment.x2;
+            endY = segment.y2;
+            left = Math.min(left, (int) Math.floor(Math.min(segment.x1, segment.x2)) - pad);
+            top = Math.min(top, (int) Math.floor(Math.min(segment.y1, segment.y2)) - pad);
+            right = Math.max(right, (int) Math.ceil(Math.max(segment.x1, segment.x2)) + pad);
+            bottom = Math.max(bottom, (int) Math.ceil(Math.max(segment.y1, segment.y2)) + pad);
+        }
+    }
+
+    private static boolean isBlank(int[] pixels, int from, int length) {
+        for (int i = from; i < from + length; i++) {
+            if (pixels[i] != 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TileStore {
+
+    public static final int TILE_SIZE = 256;
+    public static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+    public static final int TILE_BYTES = TILE_PIXELS * 4;
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    private static final int MIN_RESIDENT_TILES = 4;
+    private static final int SPILL_CHUNK_TILES = 64;
+
+    private final LinkedHashMap<Long, ByteBuffer> resident = new LinkedHashMap<>(64, 0.75f, true);
+    private final HashMap<Long, Integer> spilled = new HashMap<>();
+    private final ArrayDeque<ByteBuffer> spare = new ArrayDeque<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final File spillDirectory;
+    private long memoryBudget;
+
+    private File spillFile = null;
+    private FileChannel spillChannel = null;
+    private int slotCount = 0;
+
+    private long allocations = 0;
+    private long spills = 0;
+    private long reloads = 0;
+
+    public TileStore() {
+        this(DEFAULT_MEMORY_BUDGET, null);
+    }
+
+    public TileStore(long memoryBudget, File spillDirectory) {
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public static TileStore fromProperties() {
+        long megabytes = Long.getLong("turtlegraphics.tiles.mb", DEFAULT_MEMORY_BUDGET >> 20);
+        String directory = System.getProperty("turtlegraphics.tiles.dir");
+        return new TileStore(megabytes << 20, directory != null ? new File(directory) : null);
+    }
+
+    public static long key(int tileX, int tileY) {
+        return (long) tileX << 32 | (tileY & 0xFFFFFFFFL);
+    }
+
+    public static int tileX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int tileY(long key) {
+        return (int) key;
+    }
+
+    public boolean contains(long key) {
+        return resident.containsKey(key) || spilled.containsKey(key);
+    }
+
+    public ByteBuffer get(long key) throws IOException {
+        ByteBuffer tile = resident.get(key);
+        if (tile != null) return tile;
+        Integer slot = spilled.remove(key);
+        if (slot == null) return null;
+
+        tile = allocate(false);
+        ByteBuffer source = slice(slot);
+        tile.put(source).clear();
+        freeSlots.push(slot);
+        resident.put(key, tile);
+        reloads++;
+        return tile;
+    }
+
+    public ByteBuffer getOrCreate(long key) throws IOException {
+        ByteBuffer tile = get(key);
+        if (tile != null) return tile;
+        tile = allocate(true);
+        resident.put(key, tile);
+        return tile;
+    }
+
+    public long[] keys() {
+        long[] keys = new long[resident.size() + spilled.size()];
+        int n = 0;
+        for (long key : resident.keySet()) {
+            keys[n++] = key;
+        }
+        for (long key : spilled.keySet()) {
+            keys[n++] = key;
+        }
+        return keys;
+    }
+
+    public int getTileCount() {
+        return resident.size() + spilled.size();
+    }
+
+    public int getResidentCount() {
+        return resident.size();
+    }
+
+    public int getSpilledCount() {
+        return spilled.size();
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) throws IOException {
+        this.memoryBudget = memoryBudget;
+        while (resident.size() > maxResident()) {
+            spillEldest();
+        }
+        spare.clear();
+    }
+
+    public void clear() {
+        for (ByteBuffer tile : resident.values()) {
+            if (spare.size() < maxResident()) {
+                spare.push(tile);
+            }
+        }
+        resident.clear();
+        spilled.clear();
+        freeSlots.clear();
+        for (int slot = slotCount - 1; slot >= 0; slot--) {
+            freeSlots.push(slot);
+        }
+    }
+
+    public void close() {
+        resident.clear();
+        spilled.clear();
+        spare.clear();
+        freeSlots.clear();
+        chunks.clear();
+        slotCount = 0;
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException ignored) {
+                // the file is deleted below either way
+            }
+            spillChannel = null;
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    public String report() {
+        return getTileCount() + " tiles (" + resident.size() + " in memory, " + spilled.size() + " spilled), "
+                + (resident.size() * (long) TILE_BYTES >> 20) + " of " + (memoryBudget >> 20) + " MB, "
+                + allocations + " allocated, " + spills + " spills, " + reloads + " reloads";
+    }
+
+    private ByteBuffer allocate(boolean blank) throws IOException {
+        while (resident.size() >= maxResident()) {
+            spillEldest();
+        }
+        ByteBuffer tile = spare.poll();
+        if (tile == null) {
+            allocations++;
+            return ByteBuffer.allocateDirect(TILE_BYTES).order(ByteOrder.nativeOrder());
+        }
+        if (blank) {
+            clearPixels(tile);
+        }
+        return tile.clear();
+    }
+
+    private int maxResident() {
+        return (int) Math.max(MIN_RESIDENT_TILES, Math.min(Integer.MAX_VALUE, memoryBudget / TILE_BYTES));
+    }
+
+    private void spillEldest() throws IOException {
+        Iterator<Map.Entry<Long, ByteBuffer>> eldest = resident.entrySet().iterator();
+        Map.Entry<Long, ByteBuffer> entry = eldest.next();
+        eldest.remove();
+
+        ByteBuffer tile = entry.getValue();
+        int slot = freeSlots.isEmpty() ? newSlot() : freeSlots.pop();
+        slice(slot).put(tile.clear());
+        spilled.put(entry.getKey(), slot);
+        spare.push(tile.clear());
+        spills++;
+    }
+
+    private int newSlot() throws IOException {
+        if (slotCount == chunks.size() * SPILL_CHUNK_TILES) {
+            if (spillChannel == null) {
+                spillFile = File.createTempFile("turtle-tiles", ".spill", spillDirectory);
+                spillFile.deleteOnExit();
+                spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+            long size = (long) SPILL_CHUNK_TILES * TILE_BYTES;
+            chunks.add(spillChannel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * size, size));
+        }
+        return slotCount++;
+    }
+
+    private ByteBuffer slice(int slot) {
+        ByteBuffer chunk = chunks.get(slot / SPILL_CHUNK_TILES).duplicate();
+        int offset = slot % SPILL_CHUNK_TILES * TILE_BYTES;
+        chunk.limit(offset + TILE_BYTES).position(offset);
+        return chunk.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static void clearPixels(ByteBuffer tile) {
+        for (int i = 0; i < TILE_BYTES; i += 8) {
+            tile.putLong(i, 0);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class TiledExporter {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private final DisplayList displayList;
+    private final Rectangle area;
+    private final Color background;
+    private final BufferedImage backgroundImage;
+    private final Rectangle backgroundArea;
+    private final int tileSize;
+    private final ForkJoinPool pool;
+
+    public TiledExporter(DisplayList displayList, int sourceWidth, int sourceHeight,
+                         Color background, BufferedImage backgroundImage) {
+        this(displayList, new Rectangle(0, 0, sourceWidth, sourceHeight), background, backgroundImage,
+                new Rectangle(0, 0, sourceWidth, sourceHeight));
+    }
+
+    public TiledExporter(DisplayList displayList, Rectangle area, Color background, BufferedImage backgroundImage,
+                         Rectangle backgroundArea) {
+        this(displayList, area, background, backgroundImage, backgroundArea, DEFAULT_TILE_SIZE,
+                ForkJoinPool.commonPool());
+    }
+
+    public TiledExporter(DisplayList displayList, Rectangle area, Color background, BufferedImage backgroundImage,
+                         Rectangle backgroundArea, int tileSize, ForkJoinPool pool) {
+        this.displayList = displayList;
+        this.area = new Rectangle(area);
+        this.background = background;
+        this.backgroundImage = backgroundImage;
+        this.backgroundArea = new Rectangle(backgroundArea);
+        this.tileSize = tileSize;
+        this.pool = pool;
+    }
+
+    public void export(int targetWidth, int targetHeight, File output) throws IOException {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("Export size must be positive.");
+        }
+
+        double scale = Math.min((double) targetWidth / Math.max(1, area.width),
+                (double) targetHeight / Math.max(1, area.height));
+        double offsetX = (targetWidth - area.width * scale) / 2 - area.x * scale;
+        double offsetY = (targetHeight - area.height * scale) / 2 - area.y * scale;
+        BufferedImage band = new BufferedImage(targetWidth, Math.min(tileSize, targetHeight), BufferedImage.TYPE_INT_ARGB);
+
+        try (PngStreamWriter writer = new PngStreamWriter(new FileOutputStream(output), targetWidth, targetHeight)) {
+            for (int bandY = 0; bandY < targetHeight; bandY += tileSize) {
+                int y = bandY;
+                int bandHeight = Math.min(tileSize, targetHeight - bandY);
+                List<Callable<BufferedImage>> tiles = new ArrayList<>();
+                for (int tileX = 0; tileX < targetWidth; tileX += tileSize) {
+                    int x = tileX;
+                    int width = Math.min(tileSize, targetWidth - tileX);
+                    tiles.add(() -> renderTile(x, y, width, bandHeight, scale, offsetX, offsetY));
+                }
+
+                List<Future<BufferedImage>> rendered = pool.invokeAll(tiles);
+                for (int i = 0; i < rendered.size(); i++) {
+                    band.getRaster().setDataElements(i * tileSize, 0, join(rendered.get(i)).getRaster());
+                }
+                writer.writeRows(band, bandHeight);
+            }
+        }
+    }
+
+    private BufferedImage renderTile(int tileX, int tileY, int width, int height, double scale, double offsetX,
+                                     double offsetY) {
+        BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tile.createGraphics();
+        try {
+            g.setColor(background);
+            g.fillRect(0, 0, width, height);
+            g.setClip(0, 0, width, height);
+            g.translate(offsetX - tileX, offsetY - tileY);
+            g.scale(scale, scale);
+            if (backgroundImage != null) {
+                g.drawImage(backgroundImage, backgroundArea.x, backgroundArea.y, backgroundArea.width,
+                        backgroundArea.height, null);
+            }
+            displayList.paintVisible(g, 1.0);
+        } finally {
+            g.dispose();
+        }
+        return tile;
+    }
+
+    private static BufferedImage join(Future<BufferedImage> tile) throws IOException {
+        try {
+            return tile.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Tile rendering failed", e.getCause());
+        }
+    }
+}
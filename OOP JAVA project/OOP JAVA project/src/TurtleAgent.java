@@ -0,0 +1,295 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class TurtleAgent implements TurtleTarget {
+
+    private final int id;
+    private final String name;
+    private final double homeX;
+    private final double homeY;
+    private final File commandsFile;
+    private final List<String> lines;
+    private final SegmentBuffer buffer;
+    private final ScriptExecutor executor = new ScriptExecutor();
+    private final List<String> errors = new ArrayList<>();
+
+    private final TurtlePose pose;
+
+    private boolean penDown = false;
+    private int penColour = Color.RED.getRGB();
+    private int penWidth = 1;
+
+    public TurtleAgent(int id, File commandsFile, double homeX, double homeY) {
+        this(id, commandsFile.getName(), commandsFile, null, homeX, homeY);
+    }
+
+    public TurtleAgent(int id, List<String> lines, double homeX, double homeY) {
+        this(id, "turtle " + id, null, lines, homeX, homeY);
+    }
+
+    private TurtleAgent(int id, String name, File commandsFile, List<String> lines, double homeX, double homeY) {
+        this.id = id;
+        this.name = name;
+        this.commandsFile = commandsFile;
+        this.lines = lines;
+        this.homeX = homeX;
+        this.homeY = homeY;
+        buffer = new SegmentBuffer();
+        pose = new TurtlePose(homeX, homeY);
+        executor.setCommandListener(this::commandExecuted);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SegmentBuffer getBuffer() {
+        return buffer;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public long getExecuted() {
+        return executor.getExecuted();
+    }
+
+    public void run() {
+        try {
+            if (lines != null) {
+                run(CommandCompiler.compile(lines));
+            } else if (CommandLog.isCommandLog(commandsFile)) {
+                CommandLogReader.read(commandsFile, this::run);
+            } else {
+                MappedCommandStream.stream(commandsFile, this::run);
+            }
+        } catch (IOException e) {
+            errors.add("I/O error: " + e.getMessage());
+        } catch (CancellationException e) {
+            errors.add("Cancelled after line " + executor.getLine() + ".");
+        } catch (RuntimeException e) {
+            errors.add("Turtle failed at line " + executor.getLine() + ": " + e);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    private void run(CompiledScript script) {
+        for (CommandError error : script.getErrors()) {
+            errors.add(error.toString());
+        }
+        executor.execute(script, this);
+    }
+
+    private void commandExecuted() {
+        if (buffer.isAbandoned()) {
+            throw new CancellationException(name);
+        }
+    }
+
+    @Override
+    public void doPenDown() {
+        penDown = true;
+    }
+
+    @Override
+    public void doPenUp() {
+        penDown = false;
+    }
+
+    @Override
+    public void doMove(int distance) {
+        forward(distance);
+    }
+
+    @Override
+    public void doReverse(int distance) {
+        forward(-distance);
+    }
+
+    @Override
+    public void doLeft(int angle) {
+        pose.left(angle);
+    }
+
+    @Override
+    public void doRight(int angle) {
+        pose.right(angle);
+    }
+
+    @Override
+    public void doPenColour(Color colour) {
+        penColour = colour.getRGB();
+    }
+
+    @Override
+    public void doPenWidth(int width) {
+        penWidth = width;
+    }
+
+    @Override
+    public void doSquare(int length) {
+        drawShape(pose.square(length));
+    }
+
+    @Override
+    public void doTriangle(int size) {
+        drawShape(pose.triangle(size));
+    }
+
+    @Override
+    public void doTriangle(int a, int b, int c) {
+        drawShape(pose.triangle(a, b, c));
+    }
+
+    @Override
+    public void doSquareSpiral(int turns, int initialLength) {
+        drawShape(pose.squareSpiral(turns, initialLength));
+    }
+
+    @Override
+    public void doPolygon(int sides, int length) {
+        drawShape(pose.polygon(sides, length));
+    }
+
+    @Override
+    public void doClear() {
+        unavailable("clear");
+    }
+
+    @Override
+    public void doReset() {
+        pose.reset(homeX, homeY);
+        penColour = Color.RED.getRGB();
+        penWidth = 1;
+    }
+
+    @Override
+    public void doAbout() {
+        unavailable("about");
+    }
+
+    @Override
+    public void doSave() {
+        unavailable("save");
+    }
+
+    @Override
+    public void doLoad() {
+        unavailable("load");
+    }
+
+    @Override
+    public void doSaveCommands() {
+        unavailable("savecommands");
+    }
+
+    @Override
+    public void doLoadCommands() {
+        unavailable("loadcommands");
+    }
+
+    @Override
+    public void doFrameRate(int framesPerSecond) {
+    }
+
+    @Override
+    public void doZoom(int percent) {
+    }
+
+    @Override
+    public void doPan(int dx, int dy) {
+    }
+
+    @Override
+    public void doExport(int width, int height) {
+        unavailable("export");
+    }
+
+    @Override
+    public void doPick(int x, int y) {
+        unavailable("pick");
+    }
+
+    @Override
+    public void doUndo(int steps) {
+        unavailable("undo");
+    }
+
+    @Override
+    public void doSeek(int command) {
+        unavailable("seek");
+    }
+
+    @Override
+    public void doCheckpointBudget(int megabytes) {
+    }
+
+    @Override
+    public void doCompression(int level) {
+    }
+
+    @Override
+    public void doSaveAlpha(boolean alpha) {
+    }
+
+    @Override
+    public void doSwarm() {
+        unavailable("swarm");
+    }
+
+    @Override
+    public void doStats(int mode) {
+        unavailable("stats");
+    }
+
+    @Override
+    public void doLevelOfDetail(int hundredths) {
+    }
+
+    @Override
+    public void doSaveVector() {
+        unavailable("savevector");
+    }
+
+    @Override
+    public void doError(String message) {
+        error(message);
+    }
+
+    private void unavailable(String command) {
+        error("Command not available to a swarm turtle: " + command);
+    }
+
+    private void error(String message) {
+        errors.add(new CommandError(executor.getLine(), message).toString());
+    }
+
+    private void forward(int distance) {
+        double fromX = pose.getX();
+        double fromY = pose.getY();
+        pose.forward(distance);
+        if (penDown) {
+            buffer.put((float) fromX, (float) fromY, (float) pose.getX(), (float) pose.getY(), penColour, penWidth,
+                    executor.getLine());
+        }
+    }
+
+    private void drawShape(Polyline shape) {
+        if (penDown) {
+            int line = executor.getLine();
+            shape.forEachSegment((x1, y1, x2, y2) -> buffer.put((float) x1, (float) y1, (float) x2, (float) y2,
+                    penColour, penWidth, line));
+        }
+        pose.moveToEnd(shape);
+    }
+}
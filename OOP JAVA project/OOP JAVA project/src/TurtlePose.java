@@ -0,0 +1,76 @@
+public class TurtlePose {
+
+    public static final double HOME_ANGLE = 90;
+
+    private double x;
+    private double y;
+    private double angle = HOME_ANGLE;
+
+    public TurtlePose(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+
+    public void reset(double homeX, double homeY) {
+        set(homeX, homeY, HOME_ANGLE);
+    }
+
+    public void set(double x, double y, double angle) {
+        this.x = x;
+        this.y = y;
+        this.angle = normalize(angle);
+    }
+
+    public void forward(int distance) {
+        x += distance * Polyline.cosDegrees(angle);
+        y -= distance * Polyline.sinDegrees(angle);
+    }
+
+    public void left(int degrees) {
+        angle = normalize(angle - degrees);
+    }
+
+    public void right(int degrees) {
+        angle = normalize(angle + degrees);
+    }
+
+    public Polyline square(int length) {
+        return Polyline.regularPolygon(x, y, angle, length, 4);
+    }
+
+    public Polyline triangle(int size) {
+        return Polyline.regularPolygon(x, y, angle, size, 3);
+    }
+
+    public Polyline triangle(int a, int b, int c) {
+        return Polyline.triangle(x, y, angle, a, b, c);
+    }
+
+    public Polyline squareSpiral(int turns, int initialLength) {
+        return Polyline.squareSpiral(x, y, angle, Math.max(0, turns), initialLength);
+    }
+
+    public Polyline polygon(int sides, int length) {
+        return Polyline.regularPolygon(x, y, angle, length, sides);
+    }
+
+    public void moveToEnd(Polyline shape) {
+        set(shape.getEndX(), shape.getEndY(), shape.getEndAngle());
+    }
+
+    private static double normalize(double degrees) {
+        return (degrees % 360 + 360) % 360;
+    }
+}
@@ -0,0 +1,51 @@
+import java.awt.Color;
+
+public class TurtleState {
+
+    private final double x;
+    private final double y;
+    private final double angle;
+    private final Color penColor;
+    private final int penWidth;
+    private final boolean penDown;
+    private final int[] variables;
+
+    public TurtleState(double x, double y, double angle, Color penColor, int penWidth, boolean penDown,
+            int[] variables) {
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.penColor = penColor;
+        this.penWidth = penWidth;
+        this.penDown = penDown;
+        this.variables = variables;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+
+    public Color getPenColor() {
+        return penColor;
+    }
+
+    public int getPenWidth() {
+        return penWidth;
+    }
+
+    public boolean isPenDown() {
+        return penDown;
+    }
+
+    public int[] getVariables() {
+        return variables;
+    }
+}
@@ -0,0 +1,189 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+public class TurtleSwarm {
+
+    public static final int DRAIN_BATCH = 1024;
+
+    private static final long IDLE_NANOS = 100_000;
+
+    private final Rectangle area;
+    private final List<TurtleAgent> agents = new ArrayList<>();
+
+    private volatile boolean cancelled = false;
+    private long segments = 0;
+
+    public TurtleSwarm(int width, int height) {
+        this(new Rectangle(0, 0, width, height));
+    }
+
+    public TurtleSwarm(Rectangle area) {
+        this.area = new Rectangle(area);
+    }
+
+    public TurtleAgent add(File commandsFile) {
+        TurtleAgent agent = new TurtleAgent(agents.size() + 1, commandsFile, area.getCenterX(), area.getCenterY());
+        agents.add(agent);
+        return agent;
+    }
+
+    public TurtleAgent add(List<String> lines) {
+        TurtleAgent agent = new TurtleAgent(agents.size() + 1, lines, area.getCenterX(), area.getCenterY());
+        agents.add(agent);
+        return agent;
+    }
+
+    public List<TurtleAgent> getAgents() {
+        return Collections.unmodifiableList(agents);
+    }
+
+    public long getSegments() {
+        return segments;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (TurtleAgent agent : agents) {
+            agent.getBuffer().abandon();
+        }
+    }
+
+    public void run(SegmentBuffer.Sink sink, Runnable idle) throws InterruptedException {
+        ExecutorService threads = Executors.newFixedThreadPool(Math.max(1, Math.min(agents.size(),
+                Runtime.getRuntime().availableProcessors())));
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (TurtleAgent agent : agents) {
+                futures.add(threads.submit(agent::run));
+            }
+            composite(sink, idle);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    agents.get(i).getErrors().add("Turtle failed: " + e.getCause());
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    public BufferedImage render() throws InterruptedException {
+        BufferedImage canvas = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        try {
+            g.setColor(HeadlessTurtle.BACKGROUND);
+            g.fillRect(0, 0, area.width, area.height);
+            g.translate(-area.x, -area.y);
+            run(new CanvasSink(g), () -> {
+            });
+        } finally {
+            g.dispose();
+        }
+        return canvas;
+    }
+
+    private void composite(SegmentBuffer.Sink sink, Runnable idle) {
+        while (!cancelled) {
+            int drained = 0;
+            boolean finished = true;
+            for (TurtleAgent agent : agents) {
+                SegmentBuffer buffer = agent.getBuffer();
+                drained += buffer.drain(sink, DRAIN_BATCH);
+                if (!buffer.isDrained()) {
+                    finished = false;
+                }
+            }
+            segments += drained;
+            if (finished) return;
+
+            try {
+                idle.run();
+            } catch (RuntimeException e) {
+                cancel();
+                throw e;
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    public static int run(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: mainclass --swarm <output.png> <commands.txt>...");
+            return 2;
+        }
+
+        TurtleSwarm swarm = new TurtleSwarm(HeadlessTurtle.DEFAULT_WIDTH, HeadlessTurtle.DEFAULT_HEIGHT);
+        for (int i = 1; i < args.length; i++) {
+            swarm.add(new File(args[i]));
+        }
+
+        long start = System.nanoTime();
+        int failed = 0;
+        try (OutputStream out = new FileOutputStream(args[0])) {
+            BufferedImage image = swarm.render();
+            for (TurtleAgent agent : swarm.getAgents()) {
+                if (agent.getErrors().isEmpty()) continue;
+                failed++;
+                System.out.println("Turtle " + agent.getId() + " (" + agent.getName() + "):");
+                for (String error : agent.getErrors()) {
+                    System.out.println("    " + error);
+                }
+            }
+            new ParallelPngEncoder().encode(image, out);
+        } catch (IOException e) {
+            System.out.println("Error writing " + args[0] + ": " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        System.out.println("Composited " + swarm.getSegments() + " segments from " + swarm.getAgents().size()
+                + " turtles in " + (System.nanoTime() - start) / 1_000_000 + " ms, " + failed + " with errors");
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static class CanvasSink implements SegmentBuffer.Sink {
+        private final Graphics2D g;
+        private final Line2D.Float line = new Line2D.Float();
+        private int colour = 0;
+        private int width = -1;
+
+        CanvasSink(Graphics2D g) {
+            this.g = g;
+        }
+
+        @Override
+        public void segment(float x1, float y1, float x2, float y2, int rgb, int strokeWidth, int commandLine) {
+            if (rgb != colour || width < 0) {
+                colour = rgb;
+                g.setColor(new Color(rgb, true));
+            }
+            if (strokeWidth != width) {
+                width = strokeWidth;
+                g.setStroke(new BasicStroke(strokeWidth));
+            }
+            line.setLine(x1, y1, x2, y2);
+            g.draw(line);
+        }
+    }
+}
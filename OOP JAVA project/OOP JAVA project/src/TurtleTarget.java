@@ -0,0 +1,74 @@
+import java.awt.Color;
+
+public interface TurtleTarget {
+
+    void doPenDown();
+
+    void doPenUp();
+
+    void doMove(int distance);
+
+    void doReverse(int distance);
+
+    void doLeft(int angle);
+
+    void doRight(int angle);
+
+    void doPenColour(Color colour);
+
+    void doPenWidth(int width);
+
+    void doSquare(int length);
+
+    void doTriangle(int size);
+
+    void doTriangle(int a, int b, int c);
+
+    void doSquareSpiral(int turns, int initialLength);
+
+    void doPolygon(int sides, int length);
+
+    void doClear();
+
+    void doReset();
+
+    void doAbout();
+
+    void doSave();
+
+    void doLoad();
+
+    void doSaveCommands();
+
+    void doLoadCommands();
+
+    void doFrameRate(int framesPerSecond);
+
+    void doZoom(int percent);
+
+    void doPan(int dx, int dy);
+
+    void doExport(int width, int height);
+
+    void doPick(int x, int y);
+
+    void doUndo(int steps);
+
+    void doSeek(int command);
+
+    void doCheckpointBudget(int megabytes);
+
+    void doCompression(int level);
+
+    void doSaveAlpha(boolean alpha);
+
+    void doSwarm();
+
+    void doStats(int mode);
+
+    void doLevelOfDetail(int hundredths);
+
+    void doSaveVector();
+
+    void doError(String message);
+}
@@ -1,34 +1,99 @@
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import javax.imageio.ImageIO;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import uk.ac.leedsbeckett.oop.LBUGraphics;
 
-public class Turtlegraphics extends LBUGraphics {
+public class Turtlegraphics extends LBUGraphics implements TurtleTarget {
 
-    private int turtleAngle = 90;
+    private final TurtlePose pose = new TurtlePose(0, 0);
     private boolean penDown = false;
     private Color penColor = Color.RED;
     private BufferedImage loadedImage = null;
+    private BufferedImage scaledBackground = null;
     private int penWidth = 1;
 
-    private final ArrayList<String> commandHistory = new ArrayList<>();
+    private static final long STREAMING_THRESHOLD = 16L << 20;
+    private static final int MAX_ERRORS_SHOWN = 10;
 
-    private int startX;
-    private int startY;
+    private final ArrayList<String> commandHistory = new ArrayList<>();
+    private File historySourceFile = null;
+    private long historySourceLength = 0;
+    private int historySourceLines = 0;
 
     private boolean commandsSaved = false;
     private boolean isLoadingFromFile = false;
     private boolean isImageSaved = true;
+    private boolean clearConfirmed = false;
 
     private File lastSavedImageFile = null;
     private File lastSavedCommandsFile = null;
 
+    private final CommandEngine engine = new CommandEngine();
+    private final ScriptExecutor executor = new ScriptExecutor();
+    private final FramePacer framePacer = new FramePacer(this::flushFrame);
+    private final CompiledScript lineScript = new CompiledScript();
+    private ScriptEnvironment environment = new ScriptEnvironment();
+    private final DisplayList displayList = new DisplayList();
+    private final PathSimplifier simplifier = new PathSimplifier();
+    private double viewScale = 1.0;
+
+    private CompiledScript compiledScript = null;
+    private ArrayList<String> compiledCommandsLines = null;
+    private File compiledCommandsFile = null;
+    private long compiledCommandsStamp = 0;
+
+    private final CheckpointStore checkpoints = new CheckpointStore();
+    private final CompiledScript replayScript = new CompiledScript();
+    private final TileCanvas canvas = new TileCanvas();
+    private int viewX = 0;
+    private int viewY = 0;
+    private boolean retainedMode = false;
+    private boolean replaying = false;
+    private int appliedCommands = 0;
+    private int loadTotalLines = 0;
+
+    private static final int SPRITE_MARGIN = 24;
+
+    private final ParallelPngEncoder pngEncoder = new ParallelPngEncoder();
+    private BufferedImage saveBuffer = null;
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+    private CommandJournal journal = null;
+    private boolean recovering = false;
+
+    private volatile CommandMetrics metrics = null;
+    private final RenderCache renderCache = RenderCache.fromProperties();
+    private final AtomicInteger errorsShown = new AtomicInteger();
+    private volatile List<CommandError> loadErrors = null;
+
+    private Color swarmColour = null;
+    private Point dragFrom = null;
+    private final Object panLock = new Object();
+    private int pendingPanX = 0;
+    private int pendingPanY = 0;
+    private boolean panQueued = false;
+
     public Turtlegraphics() {
         JFrame mainFrame = new JFrame("Turtle Graphics");
         mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -38,19 +103,170 @@ public class Turtlegraphics extends LBUGraphics {
         mainFrame.pack();
         mainFrame.setVisible(true);
 
-        startX = getWidth() / 2;
-        startY = getHeight() / 2;
+        pose.reset(getWidth() / 2, getHeight() / 2);
 
         setPenColour(penColor);
         penWidth(penWidth);
+
+        executor.setCommandListener(this::commandExecuted);
+        checkpoints.add(Checkpoint.capture(0, snapshotState(), 0, canvas, null));
+
+        MouseAdapter panner = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragFrom = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragFrom == null) return;
+                int dx = (int) Math.round((dragFrom.x - e.getX()) / viewScale);
+                int dy = (int) Math.round((dragFrom.y - e.getY()) / viewScale);
+                if (dx == 0 && dy == 0) return;
+                dragFrom = e.getPoint();
+                queuePan(dx, dy);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragFrom = null;
+                queuePan(0, 0);
+            }
+        };
+        addMouseListener(panner);
+        addMouseMotionListener(panner);
+
+        if (Boolean.getBoolean("turtlegraphics.stats")) {
+            doStats(CompiledScript.STATS_ON);
+        }
+        openJournal();
+    }
+
+    private void openJournal() {
+        File journalFile = CommandJournal.defaultFile();
+        if (journalFile == null) return;
+        try {
+            journal = CommandJournal.open(journalFile);
+        } catch (IOException e) {
+            System.out.println("Command journal disabled: " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "turtle-journal-close"));
+        if (journal.getDiscardedBytes() > 0) {
+            System.out.println("Discarded " + journal.getDiscardedBytes() + " bytes of an unfinished journal record.");
+        }
+        if (!journal.getRecoveredEntries().isEmpty()) {
+            engine.submit(this::recoverJournal);
+        }
+    }
+
+    private void recoverJournal() {
+        long started = System.nanoTime();
+        List<CommandJournal.Entry> entries = journal.getRecoveredEntries();
+        recovering = true;
+        try {
+            int first = 0;
+            if (entries.get(0).getType() == CommandJournal.RESET) {
+                File source = entries.get(0).getSource();
+                first = 1;
+                if (!source.exists()) {
+                    System.out.println("Journal refers to " + source
+                            + ", which no longer exists; recovering the commands after it.");
+                } else {
+                    if (!entries.get(0).isSourceUnchanged()) {
+                        System.out.println(source.getName()
+                                + " changed since it was journalled; replaying its current contents.");
+                    }
+                    loadCommandsFromFile(source);
+                }
+            }
+            if (first == entries.size()) return;
+
+            for (int i = first; i < entries.size(); i++) {
+                CommandJournal.Entry entry = entries.get(i);
+                if (entry.getType() == CommandJournal.APPEND) {
+                    dropRedoHistory();
+                    commandHistory.add(entry.getText());
+                    appliedCommands = historySourceLines + commandHistory.size();
+                } else {
+                    int total = historySourceLines + commandHistory.size();
+                    appliedCommands = Math.max(0, Math.min(entry.getCommand(), total));
+                }
+            }
+            seekTo(appliedCommands);
+            System.out.println("Recovered " + (entries.size() - first) + " journalled commands from "
+                    + journal.getFile() + " in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        } finally {
+            recovering = false;
+        }
+    }
+
+    private boolean journalling() {
+        return journal != null && !recovering;
     }
 
     @Override
     public void paint(Graphics g) {
-        super.paint(g);
+        CommandMetrics stats = metrics;
+        long started = stats != null ? System.nanoTime() : 0;
+        engine.lockFrame();
+        try {
+            if (viewScale != 1.0) {
+                paintScaled((Graphics2D) g, viewScale);
+                return;
+            }
+            super.paint(g);
+            if (loadedImage != null) {
+                g.drawImage(scaledBackground(getWidth(), getHeight()), -viewX, -viewY, this);
+            }
+            if (retainedMode) {
+                Rectangle area = g.getClipBounds();
+                if (area == null) {
+                    area = new Rectangle(0, 0, getWidth(), getHeight());
+                }
+                area.translate(viewX, viewY);
+                canvas.paint((Graphics2D) g, area, -viewX, -viewY);
+            }
+        } finally {
+            engine.unlockFrame();
+            if (stats != null) {
+                stats.phase(CommandMetrics.REPAINT, System.nanoTime() - started);
+            }
+        }
+    }
+
+    private void paintScaled(Graphics2D g, double scale) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.translate(-viewX * scale, -viewY * scale);
         if (loadedImage != null) {
-            g.drawImage(loadedImage, 0, 0, getWidth(), getHeight(), this);
+            g.drawImage(scaledBackground((int) (getWidth() * scale), (int) (getHeight() * scale)), 0, 0, this);
         }
+        displayList.paintVisible(g, scale);
+        g.translate(viewX * scale, viewY * scale);
+    }
+
+    private BufferedImage scaledBackground(int width, int height) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (scaledBackground == null || scaledBackground.getWidth() != width || scaledBackground.getHeight() != height) {
+            int transparency = loadedImage.getColorModel().getTransparency();
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            BufferedImage scaled = gc != null
+                    ? gc.createCompatibleImage(width, height, transparency)
+                    : new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                            ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(loadedImage, 0, 0, width, height, null);
+            g.dispose();
+            scaledBackground = scaled;
+        }
+        return scaledBackground;
+    }
+
+    public DisplayList getDisplayList() {
+        return displayList;
     }
 
     @Override
@@ -68,350 +284,726 @@ public class Turtlegraphics extends LBUGraphics {
     public void processCommand(String input) {
         if (input == null || input.trim().isEmpty()) return;
 
+        if (input.trim().equalsIgnoreCase("cancel")) {
+            engine.cancel();
+            return;
+        }
+        if (!engine.submit(() -> executeCommand(input))) {
+            showErrorDialog("The renderer is busy and its command queue is full; \"" + input.trim()
+                    + "\" was not run. Try again when it catches up, or type cancel.");
+        }
+    }
+
+    private void executeCommand(String input) {
         String trimmedInput = input.trim();
         String lowerCmd = trimmedInput.toLowerCase();
 
-        boolean suppressShow = lowerCmd.equals("save") || lowerCmd.equals("savecommands") || lowerCmd.equals("clear");
+        String commandWord = lowerCmd.split("\\s+")[0];
+        boolean suppressShow = lowerCmd.equals("save") || lowerCmd.equals("savecommands")
+                || lowerCmd.equals("savevector")
+                || commandWord.equals("undo") || commandWord.equals("seek") || commandWord.equals("checkpoints")
+                || commandWord.equals("stats");
+
+        boolean clearing = lowerCmd.equals("clear") || lowerCmd.equals("reset");
+        if (lowerCmd.equals("clear")) {
+            if (!confirmClear()) return;
+            clearConfirmed = true;
+        }
 
         if (!isLoadingFromFile && !suppressShow) {
+            dropRedoHistory();
             commandHistory.add(trimmedInput);
+            appliedCommands = historySourceLines + commandHistory.size();
+            if (journalling()) {
+                journal.append(trimmedInput);
+            }
             System.out.println(trimmedInput);
-        } else if (lowerCmd.equals("save")) {
+        } else if (lowerCmd.equals("save") || lowerCmd.equals("savevector")) {
             System.out.println(trimmedInput);
         }
 
-        String[] parts = trimmedInput.split("\\s+");
-        String command = parts[0].toLowerCase();
+        CommandMetrics stats = metrics;
+        long started = stats != null ? System.nanoTime() : 0;
+        lineScript.clear();
+        CommandCompiler.compileLine(trimmedInput, 1, lineScript, environment);
+        if (stats != null) {
+            stats.phase(CommandMetrics.PARSE, System.nanoTime() - started);
+        }
+        runScript(lineScript);
+        clearConfirmed = false;
+        if (clearing && journalling()) {
+            journal.compact(historySourceLines > 0 ? historySourceFile : null, commandHistory, appliedCommands);
+        }
+    }
 
-        switch (command) {
-            case "pendown":
-                drawOn();
-                penDown = true;
-                isImageSaved = false;
-                loadedImage = null;
-                repaint();
-                break;
+    private void runScript(CompiledScript script) {
+        if (script.hasErrors()) {
+            reportErrors(null, script.getErrors());
+        }
+        executor.execute(script, this);
+    }
 
-            case "penup":
-                drawOff();
-                penDown = false;
-                break;
+    private void reportErrors(String source, List<CommandError> errors) {
+        if (errors.isEmpty()) return;
+        List<CommandError> collecting = loadErrors;
+        if (collecting != null && !SwingUtilities.isEventDispatchThread()) {
+            errorsShown.addAndGet(errors.size());
+            collecting.addAll(errors);
+            return;
+        }
+        if (source == null && errors.size() == 1) {
+            showErrorDialog(errors.get(0).getMessage());
+            return;
+        }
 
-            case "move":
-            case "forward":
-                if (parts.length < 2) {
-                    showErrorDialog("Missing parameter for command: " + command);
-                    System.out.println("Invalid move/forward command.");
-                    break;
-                }
-                try {
-                    int dist = Integer.parseInt(parts[1]);
-                    if (dist < 0) {
-                        showErrorDialog("Distance cannot be negative.");
-                    } else {
-                        double rad = Math.toRadians(turtleAngle);
-                        double newX = startX + dist * Math.cos(rad);
-                        double newY = startY - dist * Math.sin(rad);
-
-                        int width = getWidth();
-                        int height = getHeight();
-
-                        if (newX < 0 || newX > width || newY < 0 || newY > height) {
-                            showErrorDialog("Movement out of bounds.");
-                        } else {
-                            forward(dist);
-                            startX = (int)newX;
-                            startY = (int)newY;
-
-                            isImageSaved = false;
-                            repaint();
-                        }
-                    }
-                } catch (NumberFormatException e) {
-                    showErrorDialog("Invalid number for move/forward distance.");
-                }
-                break;
+        String heading = errors.size() + (errors.size() == 1 ? " error" : " errors")
+                + (source != null ? " in " + source : "") + ":";
+        System.out.println(heading);
+        StringBuilder summary = new StringBuilder(heading);
+        for (int i = 0; i < errors.size(); i++) {
+            System.out.println("  " + errors.get(i));
+            if (i < MAX_ERRORS_SHOWN) {
+                summary.append('\n').append(errors.get(i));
+            }
+        }
+        if (errors.size() > MAX_ERRORS_SHOWN) {
+            summary.append("\n...and ").append(errors.size() - MAX_ERRORS_SHOWN).append(" more (see the console).");
+        }
+        showErrorDialog(summary.toString());
+    }
 
-            case "reverse":
-                int revDist = 100;
-                if (parts.length > 1) {
-                    try {
-                        revDist = Integer.parseInt(parts[1]);
-                        if (revDist < 0) {
-                            showErrorDialog("Negative distance not allowed.");
-                            break;
-                        }
-                    } catch (NumberFormatException e) {
-                        showErrorDialog("Invalid number for reverse distance.");
-                        revDist = 100;
-                    }
-                }
-                left(180);
-                forward(revDist);
-                left(180);
-                isImageSaved = false;
+    @Override
+    public void doPenDown() {
+        drawOn();
+        penDown = true;
+        isImageSaved = false;
+        if (loadedImage != null) {
+            loadedImage = null;
+            scaledBackground = null;
+            touchAll();
+        }
+        requestRepaint();
+    }
 
-                double rad = Math.toRadians(turtleAngle);
-                startX = (int)(startX - revDist * Math.cos(rad));
-                startY = (int)(startY + revDist * Math.sin(rad));
+    @Override
+    public void doPenUp() {
+        drawOff();
+        penDown = false;
+    }
 
-                repaint();
-                break;
+    @Override
+    public void doMove(int dist) {
+        trace(dist);
+        isImageSaved = false;
+        requestRepaint();
+    }
 
-            case "left":
-                int leftAngle = 90;
-                if (parts.length > 1) {
-                    try {
-                        leftAngle = Integer.parseInt(parts[1]);
-                    } catch (NumberFormatException e) {
-                        showErrorDialog("Invalid number for left turn angle.");
-                    }
-                }
-                left(leftAngle);
-                turtleAngle = (turtleAngle - leftAngle + 360) % 360;
-                isImageSaved = false;
-                repaint();
-                break;
+    @Override
+    public void doReverse(int revDist) {
+        left(180);
+        moveTurtle(revDist);
+        left(180);
+        advance(-revDist);
+        isImageSaved = false;
+
+        requestRepaint();
+    }
 
-            case "right":
-                int rightAngle = 90;
-                if (parts.length > 1) {
-                    try {
-                        rightAngle = Integer.parseInt(parts[1]);
-                    } catch (NumberFormatException e) {
-                        showErrorDialog("Invalid number for right turn angle.");
-                    }
-                }
-                right(rightAngle);
-                turtleAngle = (turtleAngle + rightAngle) % 360;
-                isImageSaved = false;
-                repaint();
-                break;
+    @Override
+    public void doLeft(int leftAngle) {
+        touchTurtle();
+        left(leftAngle);
+        pose.left(leftAngle);
+        isImageSaved = false;
+        requestRepaint();
+    }
 
-            case "red":
-                setPenColour(Color.RED);
-                break;
+    @Override
+    public void doRight(int rightAngle) {
+        touchTurtle();
+        right(rightAngle);
+        pose.right(rightAngle);
+        isImageSaved = false;
+        requestRepaint();
+    }
 
-            case "green":
-                setPenColour(Color.GREEN);
-                break;
+    @Override
+    public void doPenColour(Color colour) {
+        setPenColour(colour);
+    }
 
-            case "blue":
-                setPenColour(Color.BLUE);
-                break;
+    @Override
+    public void doPenWidth(int width) {
+        penWidth(width);
+    }
 
-            case "yellow":
-                setPenColour(Color.YELLOW);
-                break;
+    @Override
+    public void doSquare(int length) {
+        drawShape(pose.square(length));
+        isImageSaved = false;
+        requestRepaint();
+    }
 
-            case "clear":
-                if (!isImageSaved) {
-                    int option = JOptionPane.showConfirmDialog(this,
-                            "You have unsaved changes. Are you sure you want to clear?",
-                            "Unsaved Changes",
-                            JOptionPane.YES_NO_OPTION,
-                            JOptionPane.WARNING_MESSAGE);
-                    if (option != JOptionPane.YES_OPTION) {
-                        System.out.println("Clear canceled. Please save your work.");
-                        break;
-                    }
-                }
-                clear();
-                isImageSaved = true;
-                repaint();
-                break;
+    @Override
+    public void doTriangle(int size) {
+        drawShape(pose.triangle(size));
+        requestRepaint();
+    }
 
-            case "reset":
-                reset();
-                turtleAngle = 90;
-                penColor = Color.RED;
-                setPenColour(penColor);
-                penWidth = 1;
-                penWidth(penWidth);
-                startX = getWidth() / 2;
-                startY = getHeight() / 2;
-                isImageSaved = true;
-                repaint();
-                break;
+    @Override
+    public void doTriangle(int a, int b, int c) {
+        drawShape(pose.triangle(a, b, c));
+        requestRepaint();
+    }
 
-            case "about":
-                super.about();
-                String myName = "Satkriti Khadka";
-                String message = "This program is created by: " + myName;
-                JOptionPane.showMessageDialog(this, message, "About", JOptionPane.INFORMATION_MESSAGE);
-                System.out.println(message);
-                break;
+    @Override
+    public void doSquareSpiral(int turns, int initialLength) {
+        drawShape(pose.squareSpiral(turns, initialLength));
+        isImageSaved = false;
+        requestRepaint();
+    }
 
-            case "save":
-                saveImage();
-                isImageSaved = true;
-                break;
+    @Override
+    public void doPolygon(int sides, int length) {
+        drawShape(pose.polygon(sides, length));
+        requestRepaint();
+    }
 
-            case "load":
-                if (lastSavedImageFile != null && lastSavedImageFile.exists()) {
-                    loadImage(lastSavedImageFile);
-                } else {
-                    loadImage();
-                }
-                break;
+    @Override
+    public void doClear() {
+        if (!replaying && !recovering && !clearConfirmed && !confirmClear()) return;
+        clearConfirmed = false;
+        clear();
+        displayList.clear();
+        canvas.clear();
+        touchAll();
+        isImageSaved = true;
+        requestRepaint();
+    }
 
-            case "savecommands":
-                saveCommandHistory();
-                commandsSaved = true;
-                break;
+    private boolean confirmClear() {
+        if (isImageSaved) return true;
+        int option = engine.callOnEdt(() -> JOptionPane.showConfirmDialog(this,
+                "You have unsaved changes. Are you sure you want to clear?",
+                "Unsaved Changes",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE));
+        if (option != JOptionPane.YES_OPTION) {
+            System.out.println("Clear canceled. Please save your work.");
+            return false;
+        }
+        return true;
+    }
 
-            case "loadcommands":
-                if (lastSavedCommandsFile != null && lastSavedCommandsFile.exists()) {
-                    loadCommandsFromFile(lastSavedCommandsFile);
-                } else {
-                    loadCommandsFromDialog();
-                }
-                break;
+    @Override
+    public void doReset() {
+        reset();
+        viewX = 0;
+        viewY = 0;
+        touchAll();
+        pose.reset(getWidth() / 2, getHeight() / 2);
+        penColor = Color.RED;
+        setPenColour(penColor);
+        penWidth = 1;
+        penWidth(penWidth);
+        isImageSaved = true;
+        requestRepaint();
+    }
 
-            case "square":
-                if (parts.length < 2) {
-                    showErrorDialog("Square command requires a length.");
-                    break;
-                }
-                try {
-                    int length = Integer.parseInt(parts[1]);
-                    if (length < 0) {
-                        showErrorDialog("Length cannot be negative.");
-                        break;
-                    }
-                    drawSquare(length);
-                    isImageSaved = false;
-                    repaint();
-                } catch (NumberFormatException e) {
-                    showErrorDialog("Invalid number for square length.");
-                }
-                break;
+    @Override
+    public void doAbout() {
+        if (replaying) return;
+        engine.runOnEdt(this::about);
+        touchAll();
+    }
 
-            case "pencolour":
-                if (parts.length != 4) {
-                    showErrorDialog("pencolour command requires 3 RGB values.");
-                    break;
-                }
-                try {
-                    int r = Integer.parseInt(parts[1]);
-                    int g = Integer.parseInt(parts[2]);
-                    int b = Integer.parseInt(parts[3]);
-
-                    if (r < 0 || r > 255 || g < 0 || g > 255 || b < 0 || b > 255) {
-                        showErrorDialog("RGB values must be between 0 and 255.");
-                        break;
-                    }
+    @Override
+    public void doSave() {
+        if (replaying) return;
+        saveImage();
+        isImageSaved = true;
+    }
 
-                    Color newColor = new Color(r, g, b);
-                    setPenColour(newColor);
-                } catch (Exception e) {
-                    showErrorDialog("Invalid RGB values.");
-                }
-                break;
+    @Override
+    public void doLoad() {
+        if (replaying) return;
+        if (lastSavedImageFile != null && lastSavedImageFile.exists()) {
+            loadImage(lastSavedImageFile);
+        } else {
+            loadImage();
+        }
+    }
 
-            case "penwidth":
-                if (parts.length < 2) {
-                    showErrorDialog("penwidth command requires a width value.");
-                    break;
-                }
-                try {
-                    int width = Integer.parseInt(parts[1]);
-                    if (width <= 0) {
-                        showErrorDialog("Width must be positive.");
-                    } else {
-                        penWidth(width);
-                    }
-                } catch (NumberFormatException e) {
-                    showErrorDialog("Invalid number for pen width.");
+    @Override
+    public void doSaveCommands() {
+        if (replaying) return;
+        saveCommandHistory();
+        commandsSaved = true;
+    }
+
+    @Override
+    public void doFrameRate(int framesPerSecond) {
+        framePacer.setFramesPerSecond(framesPerSecond);
+    }
+
+    @Override
+    public void doZoom(int percent) {
+        viewScale = percent / 100.0;
+        touchAll();
+        requestRepaint();
+    }
+
+    @Override
+    public void doPan(int dx, int dy) {
+        panBy(dx, dy);
+    }
+
+    @Override
+    public void doCompression(int level) {
+        pngEncoder.setLevel(level);
+        System.out.println("PNG compression level set to " + level);
+    }
+
+    @Override
+    public void doSaveAlpha(boolean alpha) {
+        pngEncoder.setAlpha(alpha);
+        System.out.println("PNG saves will " + (alpha ? "include" : "omit") + " the alpha channel");
+    }
+
+    @Override
+    public void doSwarm() {
+        if (replaying) return;
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Choose One Commands File Per Turtle");
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("Command Files (*.txt, *.tlog)", "txt",
+                CommandLog.EXTENSION);
+        fileChooser.addChoosableFileFilter(txtFilter);
+        fileChooser.setFileFilter(txtFilter);
+        if (lastSavedCommandsFile != null && lastSavedCommandsFile.getParentFile() != null) {
+            fileChooser.setCurrentDirectory(lastSavedCommandsFile.getParentFile());
+        } else {
+            fileChooser.setCurrentDirectory(new File(System.getProperty("user.home")));
+        }
+
+        int userSelection = engine.callOnEdt(() -> fileChooser.showOpenDialog(this));
+        if (userSelection == JFileChooser.APPROVE_OPTION && fileChooser.getSelectedFiles().length > 0) {
+            runSwarm(fileChooser.getSelectedFiles());
+        }
+    }
+
+    @Override
+    public void doStats(int mode) {
+        CommandMetrics stats = metrics;
+        switch (mode) {
+            case CompiledScript.STATS_ON:
+                if (stats == null) {
+                    metrics = stats = new CommandMetrics();
+                    executor.setMetrics(stats);
                 }
+                System.out.println("Statistics are on");
                 break;
-
-            case "triangle":
-                if (parts.length < 2) {
-                    showErrorDialog("Triangle command requires size or sides.");
-                    break;
+            case CompiledScript.STATS_OFF:
+                metrics = null;
+                executor.setMetrics(null);
+                System.out.println("Statistics are off");
+                break;
+            case CompiledScript.STATS_RESET:
+                if (stats != null) {
+                    stats.reset();
                 }
-                String args = trimmedInput.substring(command.length()).trim();
-
-                if (args.chars().filter(ch -> ch == ',').count() == 2) {
-                    drawCustomTriangle(args);
+                System.out.println("Statistics reset");
+                break;
+            case CompiledScript.STATS_JSON:
+                if (stats == null) {
+                    showErrorDialog("Statistics are off. Use 'stats on' first.");
                 } else {
-                    drawEquilateralTriangle(args);
+                    saveStatistics(stats.toJson());
                 }
                 break;
-
-            case "square_spiral":
-                if (parts.length < 3) {
-                    showErrorDialog("square_spiral command requires turns and initial length.");
-                    break;
-                }
-                try {
-                    int turns = Integer.parseInt(parts[1]);
-                    int initialLength = Integer.parseInt(parts[2]);
-                    drawSquareSpiral(turns, initialLength);
-                    isImageSaved = false;
-                    repaint();
-                } catch (NumberFormatException e) {
-                    showErrorDialog("Invalid numbers for square_spiral command.");
+            default:
+                System.out.print(stats != null ? stats.report() : "Statistics are off. Use 'stats on' to collect them.\n");
+                if (renderCache != null) {
+                    System.out.println(renderCache.report());
                 }
+                System.out.println("Canvas: " + canvas.report() + ", view at (" + viewX + ", " + viewY + ")");
                 break;
+        }
+    }
 
-            default:
-                showErrorDialog("Unknown command: " + input);
-                System.out.println("Unknown command: " + input);
+    private void saveStatistics(String json) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Statistics As");
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        FileNameExtensionFilter jsonFilter = new FileNameExtensionFilter("JSON File (*.json)", "json");
+        fileChooser.addChoosableFileFilter(jsonFilter);
+        fileChooser.setFileFilter(jsonFilter);
+
+        int userSelection = engine.callOnEdt(() -> fileChooser.showSaveDialog(this));
+        if (userSelection == JFileChooser.APPROVE_OPTION) {
+            File fileToSave = fileChooser.getSelectedFile();
+            if (!fileToSave.getName().toLowerCase().endsWith(".json")) {
+                fileToSave = new File(fileToSave.getAbsolutePath() + ".json");
+            }
+            try {
+                Files.writeString(fileToSave.toPath(), json);
+                System.out.println("Statistics saved to " + fileToSave.getAbsolutePath());
+            } catch (IOException e) {
+                showErrorDialog("Error saving statistics: " + e.getMessage());
+            }
         }
     }
 
-    private void showErrorDialog(String message) {
-        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+    @Override
+    public void doLevelOfDetail(int hundredths) {
+        displayList.setTolerance(hundredths / 100.0);
+        touchAll();
+        requestRepaint();
+        System.out.println("Level of detail tolerance set to " + hundredths / 100.0 + " px");
     }
 
-    private void drawSquare(int length) {
-        for (int i = 0; i < 4; i++) {
-            forward(length);
-            right(90);
+    @Override
+    public void doSaveVector() {
+        if (replaying) return;
+        saveVector();
+    }
+
+    @Override
+    public void doError(String message) {
+        showErrorDialog(message);
+    }
+
+    @Override
+    public void doExport(int width, int height) {
+        if (replaying) return;
+        exportImage(width, height);
+    }
+
+    @Override
+    public void doPick(int x, int y) {
+        if (replaying) return;
+        int segment = displayList.getGrid().pick((float) (x / viewScale + viewX), (float) (y / viewScale + viewY));
+        if (segment < 0) {
+            System.out.println("No stroke at (" + x + ", " + y + ").");
+            return;
         }
+        int command = displayList.getCommand(segment);
+        System.out.println("Pixel (" + x + ", " + y + ") was drawn by command " + command + ": " + commandText(command));
+    }
+
+    @Override
+    public void doUndo(int steps) {
+        if (replaying) return;
+        seekTo(Math.max(0, appliedCommands - steps));
+    }
+
+    @Override
+    public void doSeek(int command) {
+        if (replaying) return;
+        seekTo(command);
     }
 
-    private void drawEquilateralTriangle(String param) {
+    @Override
+    public void doCheckpointBudget(int megabytes) {
+        checkpoints.setBudget((long) megabytes << 20);
+        System.out.println("Checkpoint budget set to " + megabytes + " MB ("
+                + checkpoints.size() + " checkpoints, " + (checkpoints.getBytesUsed() >> 10) + " KB in use)");
+    }
+
+    private void seekTo(int target) {
+        int total = historySourceLines + commandHistory.size();
+        if (isLoadingFromFile) {
+            showErrorDialog("Cannot undo or seek while commands are playing.");
+            return;
+        }
+        if (target > total) {
+            showErrorDialog("Command index must be between 0 and " + total + ".");
+            return;
+        }
+        Checkpoint checkpoint = checkpoints.floor(target);
+        if (checkpoint == null || (checkpoint.getCommand() < historySourceLines && checkpoint.getCommand() != target)) {
+            showErrorDialog("Cannot seek to command " + target + ": commands up to line " + historySourceLines
+                    + " were streamed from file and no checkpoint covers them.");
+            return;
+        }
+
+        clear();
+        touchAll();
+        retainedMode = true;
+        checkpoint.restore(canvas);
+        displayList.truncate(checkpoint.getSegmentCount());
+        restoreState(checkpoint.getState());
+        environment.clearPending();
+
+        CommandMetrics stats = metrics;
+        long started = System.nanoTime();
+        replaying = true;
+        isLoadingFromFile = true;
+        framePacer.begin(executor.getExecuted());
+        loadErrors = new ArrayList<>();
         try {
-            int size = Integer.parseInt(param);
-            for (int i = 0; i < 3; i++) {
-                forward(size);
-                right(120);
+            for (int command = checkpoint.getCommand() + 1; command <= target; command++) {
+                replayScript.clear();
+                CommandCompiler.compileLine(commandHistory.get(command - historySourceLines - 1), command,
+                        replayScript, environment);
+                executor.execute(replayScript, this);
+            }
+        } finally {
+            environment.clearPending();
+            framePacer.end(executor.getExecuted());
+            isLoadingFromFile = false;
+            replaying = false;
+            List<CommandError> errors = loadErrors;
+            loadErrors = null;
+            reportErrors("the replay to command " + target, errors);
+            if (stats != null) {
+                stats.phase(CommandMetrics.REPLAY, System.nanoTime() - started);
+            }
+        }
+
+        appliedCommands = target;
+        if (journalling()) {
+            journal.moveTo(target);
+        }
+        isImageSaved = false;
+        System.out.println("Moved to command " + target + " of " + total + " (replayed "
+                + (target - checkpoint.getCommand()) + " commands from checkpoint " + checkpoint.getCommand() + ")");
+        requestRepaint();
+    }
+
+    private void dropRedoHistory() {
+        int applied = appliedCommands - historySourceLines;
+        if (applied >= 0 && applied < commandHistory.size()) {
+            commandHistory.subList(applied, commandHistory.size()).clear();
+            checkpoints.dropAfter(appliedCommands);
+        }
+    }
+
+    private void commandExecuted() {
+        if (replaying) return;
+        if (isLoadingFromFile) {
+            engine.checkCancelled();
+            engine.progress(executor.getLine(), loadTotalLines);
+            engine.yieldFrame();
+        }
+        int command = currentCommand();
+        if (command > 0 && !executor.isNested() && checkpoints.isDue(command)) {
+            checkpoints.add(Checkpoint.capture(command, snapshotState(), displayList.size(), canvas,
+                    checkpoints.floor(command)));
+        }
+    }
+
+    private TurtleState snapshotState() {
+        return new TurtleState(pose.getX(), pose.getY(), pose.getAngle(), penColor, penWidth, penDown,
+                environment.copyGlobals());
+    }
+
+    private void restoreState(TurtleState state) {
+        pose.set(state.getX(), state.getY(), state.getAngle());
+        setPenColour(state.getPenColor());
+        penWidth(state.getPenWidth());
+        penDown = state.isPenDown();
+        environment.restoreGlobals(state.getVariables());
+        if (penDown) {
+            drawOn();
+        } else {
+            drawOff();
+        }
+    }
+
+    private void resetCheckpoints() {
+        checkpoints.clear();
+        appliedCommands = 0;
+        checkpoints.add(Checkpoint.capture(0, snapshotState(), displayList.size(), canvas, null));
+    }
+
+    private int currentCommand() {
+        return isLoadingFromFile ? executor.getLine() : appliedCommands;
+    }
+
+    private String commandText(int command) {
+        int index = command - historySourceLines - 1;
+        if (index >= 0 && index < commandHistory.size()) {
+            return commandHistory.get(index);
+        }
+        if (historySourceFile != null && command <= historySourceLines) {
+            return "line " + command + " of " + historySourceFile.getName();
+        }
+        return "(unknown)";
+    }
+
+    @Override
+    public void doLoadCommands() {
+        if (replaying) return;
+        if (lastSavedCommandsFile != null && lastSavedCommandsFile.exists()) {
+            loadCommandsFromFile(lastSavedCommandsFile);
+        } else {
+            loadCommandsFromDialog();
+        }
+    }
+
+    private void requestRepaint() {
+        if (framePacer.isActive()) {
+            framePacer.markDirty();
+        } else {
+            for (Rectangle region : dirtyRegion.drain()) {
+                repaint(toView(region));
             }
-        } catch (Exception e) {
         }
     }
 
-    private void drawCustomTriangle(String param) {
-        try {
-            String[] sides = param.split(",");
-            if (sides.length != 3) throw new NumberFormatException();
+    private void flushFrame() {
+        List<Rectangle> regions = dirtyRegion.drain();
+        if (regions.isEmpty()) return;
+        engine.publish(() -> {
+            for (Rectangle region : regions) {
+                paintImmediately(toView(region));
+            }
+        });
+    }
 
-            int a = Integer.parseInt(sides[0].trim());
-            int b = Integer.parseInt(sides[1].trim());
-            int c = Integer.parseInt(sides[2].trim());
-            if (a + b <= c || a + c <= b || b + c <= a) {
-                return;
+    private Rectangle toView(Rectangle region) {
+        if (viewScale == 1.0) return new Rectangle(region.x - viewX, region.y - viewY, region.width, region.height);
+        int x = (int) Math.floor((region.x - viewX) * viewScale);
+        int y = (int) Math.floor((region.y - viewY) * viewScale);
+        return new Rectangle(x, y, (int) Math.ceil(region.width * viewScale) + 1,
+                (int) Math.ceil(region.height * viewScale) + 1);
+    }
+
+    private void showErrorDialog(String message) {
+        errorsShown.incrementAndGet();
+        List<CommandError> collecting = loadErrors;
+        if (collecting != null && !SwingUtilities.isEventDispatchThread()) {
+            collecting.add(new CommandError(executor.getLine(), message));
+            return;
+        }
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, "Error",
+                    JOptionPane.ERROR_MESSAGE));
+            return;
+        }
+        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void trace(int dist) {
+        moveTurtle(dist);
+        advance(dist);
+    }
+
+    private void moveTurtle(int dist) {
+        if (retainedMode && penDown) {
+            drawOff();
+            forward(dist);
+            drawOn();
+        } else {
+            forward(dist);
+        }
+    }
+
+    private void advance(int dist) {
+        double fromX = pose.getX();
+        double fromY = pose.getY();
+        touchTurtle();
+        pose.forward(dist);
+        if (penDown) {
+            displayList.add((float) fromX, (float) fromY, (float) pose.getX(), (float) pose.getY(), penColor, penWidth,
+                    currentCommand());
+            canvas.drawLine((float) fromX, (float) fromY, (float) pose.getX(), (float) pose.getY(), penColor, penWidth);
+        }
+        touch(fromX, fromY, pose.getX(), pose.getY(), penWidth / 2 + 2);
+        touchTurtle();
+    }
+
+    private void drawShape(Polyline shape) {
+        double fromX = pose.getX();
+        double fromY = pose.getY();
+        double fromAngle = pose.getAngle();
+        touchTurtle();
+
+        if (penDown && shape.getPointCount() > 1) {
+            enterRetainedMode();
+            int command = currentCommand();
+            shape.forEachSegment((x1, y1, x2, y2) -> displayList.add((float) x1, (float) y1, (float) x2, (float) y2,
+                    penColor, penWidth, command));
+            simplifier.reset(displayList.getTolerance(), Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+            Path2D.Double path = shape.toPath(simplifier);
+            canvas.draw(path, penColor, penWidth);
+            Rectangle bounds = path.getBounds();
+            touch(bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, penWidth / 2 + 2);
+        }
+
+        pose.moveToEnd(shape);
+        syncTurtle(fromX, fromY, fromAngle);
+        touchTurtle();
+        isImageSaved = false;
+    }
+
+    private void enterRetainedMode() {
+        if (retainedMode) return;
+        clear();
+        touchAll();
+        retainedMode = true;
+    }
+
+    private void queuePan(int dx, int dy) {
+        synchronized (panLock) {
+            pendingPanX += dx;
+            pendingPanY += dy;
+            if (panQueued || (pendingPanX == 0 && pendingPanY == 0)) return;
+            panQueued = true;
+        }
+        if (!engine.submit(this::applyPendingPan)) {
+            synchronized (panLock) {
+                panQueued = false;
             }
-            forward(a);
-            double angleC = Math.toDegrees(Math.acos((a * a + b * b - c * c) / (2.0 * a * b)));
-            right((int) Math.round(180 - angleC));
-            forward(b);
-            double angleA = Math.toDegrees(Math.acos((b * b + c * c - a * a) / (2.0 * b * c)));
-            right((int) Math.round(180 - angleA));
-            forward(c);
-        } catch (Exception e) {
         }
     }
 
-    private void drawSquareSpiral(int turns, int initialLength) {
-        int length = initialLength;
-        for (int i = 0; i < turns; i++) {
-            forward(length);
-            right(90);
-            length += initialLength;
+    private void applyPendingPan() {
+        int dx;
+        int dy;
+        synchronized (panLock) {
+            dx = pendingPanX;
+            dy = pendingPanY;
+            pendingPanX = 0;
+            pendingPanY = 0;
+            panQueued = false;
+        }
+        panBy(dx, dy);
+    }
+
+    private void panBy(int dx, int dy) {
+        if (dx == 0 && dy == 0) return;
+        enterRetainedMode();
+        viewX += dx;
+        viewY += dy;
+        syncTurtle(pose.getX() + dx, pose.getY() + dy, pose.getAngle());
+        touchAll();
+        requestRepaint();
+    }
+
+    private void syncTurtle(double fromX, double fromY, double fromAngle) {
+        // the sprite only moves in whole pixels and degrees, so steer it between the rounded poses
+        long spriteX = Math.round(fromX);
+        long spriteY = Math.round(fromY);
+        long targetX = Math.round(pose.getX());
+        long targetY = Math.round(pose.getY());
+        int heading = (int) Math.round(fromAngle);
+        if (spriteX != targetX || spriteY != targetY) {
+            int bearing = (int) Math.round(Math.toDegrees(Math.atan2(spriteY - targetY, targetX - spriteX)));
+            right(((bearing - heading) % 360 + 360) % 360);
+            heading = bearing;
+            drawOff();
+            forward((int) Math.round(Math.hypot(targetX - spriteX, targetY - spriteY)));
+            if (penDown) {
+                drawOn();
+            }
+        }
+        int turn = (int) ((Math.round(pose.getAngle()) - heading) % 360 + 360) % 360;
+        if (turn != 0) {
+            right(turn);
         }
     }
 
@@ -420,42 +1012,195 @@ public class Turtlegraphics extends LBUGraphics {
         fileChooser.setDialogTitle("Save Commands As");
         fileChooser.setAcceptAllFileFilterUsed(false);
         FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("Text Files (*.txt)", "txt");
+        FileNameExtensionFilter logFilter = new FileNameExtensionFilter("Binary Command Log (*.tlog)",
+                CommandLog.EXTENSION);
         fileChooser.addChoosableFileFilter(txtFilter);
+        fileChooser.addChoosableFileFilter(logFilter);
         fileChooser.setFileFilter(txtFilter);
 
         if(lastSavedCommandsFile != null && lastSavedCommandsFile.getParentFile() != null) {
             fileChooser.setCurrentDirectory(lastSavedCommandsFile.getParentFile());
         }
 
-        int userSelection = fileChooser.showSaveDialog(this);
+        int userSelection = engine.callOnEdt(() -> fileChooser.showSaveDialog(this));
         if (userSelection == JFileChooser.APPROVE_OPTION) {
             File fileToSave = fileChooser.getSelectedFile();
 
             String path = fileToSave.getAbsolutePath();
-            if (!path.toLowerCase().endsWith(".txt")) {
-                fileToSave = new File(path + ".txt");
+            boolean binary = fileChooser.getFileFilter() == logFilter
+                    || path.toLowerCase().endsWith("." + CommandLog.EXTENSION);
+            String extension = binary ? "." + CommandLog.EXTENSION : ".txt";
+            if (!path.toLowerCase().endsWith(extension)) {
+                fileToSave = new File(path + extension);
             }
 
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileToSave))) {
-                for (String cmd : commandHistory) {
-                    writer.write(cmd);
-                    writer.newLine();
+            int holds = engine.releaseFrame();
+            try {
+                long started = System.nanoTime();
+                if (binary) {
+                    writeCommandLog(fileToSave);
+                } else {
+                    writeCommandHistory(fileToSave);
+                }
+                CommandMetrics stats = metrics;
+                if (stats != null) {
+                    stats.phase(CommandMetrics.SAVE_COMMANDS, System.nanoTime() - started, 0, fileToSave.length());
                 }
                 System.out.println("Commands saved to " + fileToSave.getAbsolutePath());
 
                 lastSavedCommandsFile = fileToSave;
                 commandsSaved = true;
+                if (journalling()) {
+                    journal.reset(fileToSave);
+                }
             } catch (IOException e) {
                 showErrorDialog("Error saving commands: " + e.getMessage());
+            } finally {
+                engine.reacquireFrame(holds);
+            }
+        }
+    }
+
+    private void writeCommandHistory(File fileToSave) throws IOException {
+        if (historySourceFile == null) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileToSave))) {
+                for (String cmd : appliedHistory()) {
+                    writer.write(cmd);
+                    writer.newLine();
+                }
+            }
+            return;
+        }
+
+        boolean sameFile = historySourceFile.getCanonicalFile().equals(fileToSave.getCanonicalFile());
+        try (FileOutputStream out = new FileOutputStream(fileToSave, sameFile)) {
+            FileChannel target = out.getChannel();
+            if (sameFile) {
+                target.truncate(historySourceLength);
+                target.position(historySourceLength);
+            } else {
+                try (FileChannel source = FileChannel.open(historySourceFile.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < historySourceLength) {
+                        position += source.transferTo(position, historySourceLength - position, target);
+                    }
+                }
+            }
+
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
+            if (historySourceLength > 0 && !historySourceEndsWithNewline()) {
+                writer.newLine();
+            }
+            for (String cmd : appliedHistory()) {
+                writer.write(cmd);
+                writer.newLine();
+            }
+            writer.flush();
+        }
+    }
+
+    private void writeCommandLog(File fileToSave) throws IOException {
+        if (historySourceFile != null && historySourceFile.getCanonicalFile().equals(fileToSave.getCanonicalFile())) {
+            throw new IOException("a command log cannot overwrite the file its history is streamed from.");
+        }
+
+        File temp = new File(fileToSave.getAbsoluteFile().getParentFile(), fileToSave.getName() + ".tmp");
+        try (CommandLogWriter writer = new CommandLogWriter(temp)) {
+            if (historySourceFile != null) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(historySourceFile))) {
+                    for (int line = 0; line < historySourceLines; line++) {
+                        writer.append(reader.readLine());
+                    }
+                }
+            }
+            for (String cmd : appliedHistory()) {
+                writer.append(cmd);
+            }
+            System.out.println("Wrote " + writer.getLine() + " commands in " + writer.getBytesWritten() + " bytes ("
+                    + writer.getTextRecords() + " stored as text)");
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), fileToSave.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private List<String> appliedHistory() {
+        int applied = Math.max(0, Math.min(commandHistory.size(), appliedCommands - historySourceLines));
+        return commandHistory.subList(0, applied);
+    }
+
+    private boolean historySourceEndsWithNewline() throws IOException {
+        try (RandomAccessFile source = new RandomAccessFile(historySourceFile, "r")) {
+            source.seek(historySourceLength - 1);
+            return source.read() == '\n';
+        }
+    }
+
+    private void runSwarm(File[] commandsFiles) {
+        TurtleSwarm swarm = new TurtleSwarm(viewArea());
+        for (File commandsFile : commandsFiles) {
+            swarm.add(commandsFile);
+        }
+
+        int command = currentCommand();
+        enterRetainedMode();
+        long start = System.nanoTime();
+        boolean outermost = !framePacer.isActive();
+        engine.beginTask("Swarm of " + commandsFiles.length + " turtles");
+        if (outermost) {
+            framePacer.begin(executor.getExecuted());
+        }
+        try {
+            swarm.run((x1, y1, x2, y2, rgb, width, line) -> compositeSegment(x1, y1, x2, y2, rgb, width, command),
+                    () -> {
+                        engine.checkCancelled();
+                        engine.yieldFrame();
+                    });
+            System.out.println("Composited " + swarm.getSegments() + " segments from " + commandsFiles.length
+                    + " turtles in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            System.out.println("Stopped the swarm after " + swarm.getSegments() + " segments.");
+        } finally {
+            if (outermost) {
+                framePacer.end(executor.getExecuted());
+            }
+            isImageSaved = false;
+            requestRepaint();
+        }
+
+        int failed = 0;
+        for (TurtleAgent agent : swarm.getAgents()) {
+            if (agent.getErrors().isEmpty()) continue;
+            failed++;
+            System.out.println("Turtle " + agent.getId() + " (" + agent.getName() + "):");
+            for (String error : agent.getErrors()) {
+                System.out.println("    " + error);
             }
         }
+        if (failed > 0) {
+            showErrorDialog(failed + " of " + commandsFiles.length + " turtles reported errors; see the console.");
+        }
+    }
+
+    private void compositeSegment(float x1, float y1, float x2, float y2, int rgb, int width, int command) {
+        if (swarmColour == null || swarmColour.getRGB() != rgb) {
+            swarmColour = new Color(rgb, true);
+        }
+        displayList.add(x1, y1, x2, y2, swarmColour, width, command);
+        canvas.drawLine(x1, y1, x2, y2, swarmColour, width);
+        touch(x1, y1, x2, y2, width / 2 + 2);
+        requestRepaint();
     }
 
     private void loadCommandsFromDialog() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Load Commands File");
         fileChooser.setAcceptAllFileFilterUsed(false);
-        FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("Text Files (*.txt)", "txt");
+        FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("Command Files (*.txt, *.tlog)", "txt",
+                CommandLog.EXTENSION);
         fileChooser.addChoosableFileFilter(txtFilter);
         fileChooser.setFileFilter(txtFilter);
 
@@ -465,7 +1210,7 @@ public class Turtlegraphics extends LBUGraphics {
             fileChooser.setCurrentDirectory(new File(System.getProperty("user.home")));
         }
 
-        int userSelection = fileChooser.showOpenDialog(this);
+        int userSelection = engine.callOnEdt(() -> fileChooser.showOpenDialog(this));
         if(userSelection == JFileChooser.APPROVE_OPTION) {
             File commandsFile = fileChooser.getSelectedFile();
             loadCommandsFromFile(commandsFile);
@@ -478,40 +1223,180 @@ public class Turtlegraphics extends LBUGraphics {
             return;
         }
 
+        boolean outermost = !framePacer.isActive();
+        long started = System.nanoTime();
         isLoadingFromFile = true;
-        try (BufferedReader reader = new BufferedReader(new FileReader(commandsFile))) {
-            commandHistory.clear();
+        engine.beginTask("Loading " + commandsFile.getName());
+        try {
+            if (outermost) {
+                framePacer.begin(executor.getExecuted());
+                loadErrors = new ArrayList<>();
+            }
+            if (CommandLog.isCommandLog(commandsFile)) {
+                resetForLoad();
+                commandHistory.clear();
+                historySourceFile = null;
+                historySourceLines = 0;
+
+                long length = commandsFile.length();
+                CommandLogReader reader = new CommandLogReader(commandHistory);
+                environment = reader.getEnvironment();
+                reader.run(commandsFile, batch -> {
+                    runScript(batch);
+                    engine.progress(reader.getBytesRead(), length);
+                });
+            } else if (commandsFile.length() > STREAMING_THRESHOLD) {
+                resetForLoad();
+                commandHistory.clear();
+                historySourceFile = null;
+                historySourceLines = 0;
+
+                long length = commandsFile.length();
+                MappedCommandStream stream = new MappedCommandStream();
+                environment = stream.getEnvironment();
+                stream.run(commandsFile, batch -> {
+                    runScript(batch);
+                    engine.progress(stream.getBytesRead(), length);
+                });
+
+                historySourceFile = commandsFile;
+                historySourceLength = stream.getBytesRead();
+                historySourceLines = stream.getLine();
+            } else {
+                CompiledScript script = compileCommandsFile(commandsFile);
+                environment = script.getEnvironment();
+                historySourceFile = null;
+                historySourceLines = 0;
+                String key = renderCache != null && !script.hasErrors() && script.onlyDraws()
+                        ? RenderCache.scriptKey(commandHistory, getWidth(), getHeight()) : null;
+                RenderCache.Render cached = key != null ? renderCache.getRender(key) : null;
+                if (cached != null) {
+                    restoreRender(cached);
+                    System.out.println("Restored " + commandsFile.getName() + " from the render cache. "
+                            + renderCache.report());
+                } else {
+                    resetForLoad();
+                    loadTotalLines = commandHistory.size();
+                    int errors = errorsShown.get();
+                    runScript(script);
+                    Rectangle window = new Rectangle(0, 0, getWidth(), getHeight());
+                    if (key != null && errorsShown.get() == errors && window.contains(displayList.getBounds())) {
+                        renderCache.putRender(key, new RenderCache.Render(canvas.copy(window), snapshotState(),
+                                copyOf(displayList)));
+                    }
+                }
+            }
 
-            clear();
-            drawOff();
+            appliedCommands = historySourceLines + commandHistory.size();
+            lastSavedCommandsFile = commandsFile;
+            if (outermost && journalling()) {
+                journal.reset(commandsFile);
+            }
+        } catch (IOException e) {
+            showErrorDialog("Failed to load commands: " + e.getMessage());
+        } catch (CancellationException e) {
+            appliedCommands = historySourceLines + Math.min(executor.getLine(), commandHistory.size());
+            System.out.println("Stopped loading " + commandsFile.getName() + " after line " + executor.getLine() + ".");
+            if (outermost && journalling()) {
+                journal.reset(commandsFile);
+                journal.moveTo(appliedCommands);
+            }
+            if (!outermost) {
+                throw e;
+            }
+        } finally {
+            loadTotalLines = 0;
+            if (outermost) {
+                engine.endTask();
+                framePacer.end(executor.getExecuted());
+                isLoadingFromFile = false;
+                System.out.println(framePacer.report());
+                List<CommandError> errors = loadErrors;
+                loadErrors = null;
+                reportErrors(commandsFile.getName(), errors);
+            }
+            CommandMetrics stats = metrics;
+            if (stats != null) {
+                stats.phase(CommandMetrics.LOAD_COMMANDS, System.nanoTime() - started, commandsFile.length(), 0);
+            }
+            requestRepaint();
+        }
+    }
 
-            loadedImage = null;
+    private void resetForLoad() {
+        clear();
+        viewX = 0;
+        viewY = 0;
+        touchAll();
+        displayList.clear();
+        canvas.clear();
+        retainedMode = false;
+        drawOff();
+
+        loadedImage = null;
+        scaledBackground = null;
+
+        pose.reset(getWidth() / 2, getHeight() / 2);
+        penDown = false;
+        penColor = Color.RED;
+        setPenColour(penColor);
+        penWidth = 1;
+        penWidth(penWidth);
+
+        resetCheckpoints();
+        requestRepaint();
+    }
 
-            turtleAngle = 90;
-            penDown = false;
-            penColor = Color.RED;
-            setPenColour(penColor);
-            penWidth = 1;
-            penWidth(penWidth);
+    private void restoreRender(RenderCache.Render render) {
+        resetForLoad();
+        retainedMode = true;
+        canvas.drawImage(render.getCanvas(), 0, 0);
+        displayList.addAll(render.getSegments());
+        restoreState(render.getState());
+        int commands = commandHistory.size();
+        if (commands > 0) {
+            checkpoints.add(Checkpoint.capture(commands, render.getState(), displayList.size(), canvas,
+                    checkpoints.floor(commands)));
+        }
+        isImageSaved = false;
+        touchAll();
+        requestRepaint();
+    }
 
-            startX = getWidth() / 2;
-            startY = getHeight() / 2;
+    private static DisplayList copyOf(DisplayList segments) {
+        DisplayList copy = new DisplayList();
+        copy.addAll(segments);
+        return copy;
+    }
 
-            repaint();
+    private CompiledScript compileCommandsFile(File commandsFile) throws IOException {
+        if (commandsFile.equals(compiledCommandsFile)
+                && commandsFile.lastModified() == compiledCommandsStamp
+                && compiledScript != null) {
+            commandHistory.clear();
+            commandHistory.addAll(compiledCommandsLines);
+            return compiledScript;
+        }
 
+        ArrayList<String> lines = new ArrayList<>();
+        int holds = engine.releaseFrame();
+        try (BufferedReader reader = new BufferedReader(new FileReader(commandsFile))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                commandHistory.add(line);
-                processCommand(line);
+                lines.add(line);
             }
-
-            lastSavedCommandsFile = commandsFile;
-        } catch (IOException e) {
-            showErrorDialog("Failed to load commands: " + e.getMessage());
         } finally {
-            isLoadingFromFile = false;
-            repaint();
+            engine.reacquireFrame(holds);
         }
+
+        commandHistory.clear();
+        commandHistory.addAll(lines);
+
+        compiledScript = CommandCompiler.compile(lines);
+        compiledCommandsLines = lines;
+        compiledCommandsFile = commandsFile;
+        compiledCommandsStamp = commandsFile.lastModified();
+        return compiledScript;
     }
 
     private void loadImage() {
@@ -528,7 +1413,7 @@ public class Turtlegraphics extends LBUGraphics {
             fileChooser.setCurrentDirectory(new File(System.getProperty("user.home")));
         }
 
-        int userSelection = fileChooser.showOpenDialog(this);
+        int userSelection = engine.callOnEdt(() -> fileChooser.showOpenDialog(this));
         if(userSelection == JFileChooser.APPROVE_OPTION) {
             File inputFile = fileChooser.getSelectedFile();
             loadImage(inputFile);
@@ -540,28 +1425,56 @@ public class Turtlegraphics extends LBUGraphics {
             showErrorDialog("Selected image file does not exist.");
             return;
         }
+        engine.beginTask("Loading " + inputFile.getName());
+        int holds = engine.releaseFrame();
+        long started = System.nanoTime();
+        BufferedImage image;
         try {
-            loadedImage = ImageIO.read(inputFile);
-            if (loadedImage == null) {
-                showErrorDialog("Failed to load image. The file may be corrupted.");
-                return;
+            String key = renderCache != null ? RenderCache.imageKey(inputFile) : null;
+            image = key != null ? renderCache.getImage(key) : null;
+            if (image != null) {
+                System.out.println("Reused the decoded " + inputFile.getName() + ". " + renderCache.report());
+            } else {
+                image = ImageFiles.read(inputFile, engine);
+                if (key != null && image != null) {
+                    renderCache.putImage(key, image);
+                }
             }
-
-            clear();
-            drawOff();
-            turtleAngle = 90;
-
-            startX = getWidth() / 2;
-            startY = getHeight() / 2;
-
-            isImageSaved = true;
-            repaint();
-
-            lastSavedImageFile = inputFile;
-            System.out.println("Image loaded from " + inputFile.getAbsolutePath());
         } catch (IOException e) {
             showErrorDialog("Error loading image: " + e.getMessage());
+            return;
+        } finally {
+            engine.reacquireFrame(holds);
+            engine.endTask();
+        }
+        if (image == null) {
+            showErrorDialog("Failed to load image. The file may be corrupted.");
+            return;
         }
+        CommandMetrics stats = metrics;
+        if (stats != null) {
+            stats.phase(CommandMetrics.LOAD_IMAGE, System.nanoTime() - started, inputFile.length(), 0);
+        }
+
+        loadedImage = image;
+        scaledBackground = null;
+        scaledBackground(getWidth(), getHeight());
+        viewX = 0;
+        viewY = 0;
+        touchAll();
+
+        clear();
+        displayList.clear();
+        canvas.clear();
+        retainedMode = false;
+        drawOff();
+        pose.reset(getWidth() / 2, getHeight() / 2);
+
+        isImageSaved = true;
+        requestRepaint();
+
+        lastSavedImageFile = inputFile;
+        System.out.println("Image loaded from " + inputFile.getAbsolutePath());
     }
 
     private void saveImage() {
@@ -573,10 +1486,7 @@ public class Turtlegraphics extends LBUGraphics {
             return;
         }
 
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics g = image.getGraphics();
-        paint(g);
-        g.dispose();
+        BufferedImage image = renderSaveBuffer(width, height);
 
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Save Image As");
@@ -589,7 +1499,7 @@ public class Turtlegraphics extends LBUGraphics {
             fileChooser.setCurrentDirectory(lastSavedImageFile.getParentFile());
         }
 
-        int userSelection = fileChooser.showSaveDialog(this);
+        int userSelection = engine.callOnEdt(() -> fileChooser.showSaveDialog(this));
         if (userSelection == JFileChooser.APPROVE_OPTION) {
             File fileToSave = fileChooser.getSelectedFile();
 
@@ -598,13 +1508,168 @@ public class Turtlegraphics extends LBUGraphics {
                 fileToSave = new File(path + ".png");
             }
 
-            try {
-                ImageIO.write(image, "png", fileToSave);
-                System.out.println("Image saved as " + fileToSave.getAbsolutePath());
+            engine.beginTask("Saving " + fileToSave.getName());
+            int holds = engine.releaseFrame();
+            int stripes = pngEncoder.getDirtyCount();
+            long start = System.nanoTime();
+            try (OutputStream out = new FileOutputStream(fileToSave)) {
+                pngEncoder.encode(image, out, (done, total) -> {
+                    engine.checkCancelled();
+                    engine.progress(done, total);
+                });
+                System.out.println("Image saved as " + fileToSave.getAbsolutePath() + " (" + stripes + " of "
+                        + pngEncoder.getStripeCount() + " stripes encoded in " + (System.nanoTime() - start) / 1_000_000 + " ms)");
 
                 lastSavedImageFile = fileToSave;
+                CommandMetrics stats = metrics;
+                if (stats != null) {
+                    stats.phase(CommandMetrics.SAVE_IMAGE, System.nanoTime() - start, 0, fileToSave.length());
+                }
             } catch (IOException e) {
                 showErrorDialog("Error saving image: " + e.getMessage());
+            } catch (CancellationException e) {
+                fileToSave.delete();
+                throw e;
+            } finally {
+                engine.reacquireFrame(holds);
+                engine.endTask();
+            }
+        }
+    }
+
+    private BufferedImage renderSaveBuffer(int width, int height) {
+        if (saveBuffer == null || saveBuffer.getWidth() != width || saveBuffer.getHeight() != height) {
+            saveBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        pngEncoder.resize(width, height);
+
+        int stripeRows = pngEncoder.getStripeRows();
+        int count = pngEncoder.getStripeCount();
+        Graphics2D g = saveBuffer.createGraphics();
+        try {
+            for (int s = 0; s < count; s++) {
+                if (!pngEncoder.isDirty(s)) continue;
+                int first = s;
+                while (s + 1 < count && pngEncoder.isDirty(s + 1)) {
+                    s++;
+                }
+                int top = first * stripeRows;
+                int bottom = Math.min(height, (s + 1) * stripeRows);
+                g.setClip(0, top, width, bottom - top);
+                g.setComposite(AlphaComposite.Clear);
+                g.fillRect(0, top, width, bottom - top);
+                g.setComposite(AlphaComposite.SrcOver);
+                paint(g);
+            }
+        } finally {
+            g.dispose();
+        }
+        return saveBuffer;
+    }
+
+    private void touch(double x1, double y1, double x2, double y2, int pad) {
+        int left = (int) Math.floor(Math.min(x1, x2)) - pad;
+        int top = (int) Math.floor(Math.min(y1, y2)) - pad;
+        int right = (int) Math.ceil(Math.max(x1, x2)) + pad;
+        int bottom = (int) Math.ceil(Math.max(y1, y2)) + pad;
+        dirtyRegion.add(left, top, right - left + 1, bottom - top + 1);
+        pngEncoder.markDirty(top - viewY, bottom - viewY);
+    }
+
+    private void touchTurtle() {
+        touch(pose.getX(), pose.getY(), pose.getX(), pose.getY(), SPRITE_MARGIN);
+    }
+
+    private Rectangle viewArea() {
+        return new Rectangle(viewX, viewY, (int) Math.ceil(getWidth() / viewScale),
+                (int) Math.ceil(getHeight() / viewScale));
+    }
+
+    private void touchAll() {
+        dirtyRegion.add(viewX, viewY, (int) Math.ceil(getWidth() / Math.min(1.0, viewScale)),
+                (int) Math.ceil(getHeight() / Math.min(1.0, viewScale)));
+        pngEncoder.markAllDirty();
+    }
+
+    private void exportImage(int targetWidth, int targetHeight) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Image As");
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        FileNameExtensionFilter pngFilter = new FileNameExtensionFilter("PNG Image (*.png)", "png");
+        fileChooser.addChoosableFileFilter(pngFilter);
+        fileChooser.setFileFilter(pngFilter);
+
+        if(lastSavedImageFile != null && lastSavedImageFile.getParentFile() != null) {
+            fileChooser.setCurrentDirectory(lastSavedImageFile.getParentFile());
+        }
+
+        int userSelection = engine.callOnEdt(() -> fileChooser.showSaveDialog(this));
+        if (userSelection == JFileChooser.APPROVE_OPTION) {
+            File fileToSave = fileChooser.getSelectedFile();
+
+            String path = fileToSave.getAbsolutePath();
+            if (!path.toLowerCase().endsWith(".png")) {
+                fileToSave = new File(path + ".png");
+            }
+
+            int holds = engine.releaseFrame();
+            try {
+                long start = System.nanoTime();
+                Rectangle area = drawingArea();
+                new TiledExporter(displayList, area, getBackground(), loadedImage,
+                        new Rectangle(0, 0, getWidth(), getHeight())).export(targetWidth, targetHeight, fileToSave);
+                System.out.println("Image exported at " + targetWidth + "x" + targetHeight + " as "
+                        + fileToSave.getAbsolutePath() + " (drawing area " + area.x + "," + area.y + " "
+                        + area.width + "x" + area.height + ") in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                showErrorDialog("Error exporting image: " + e.getMessage());
+            } finally {
+                engine.reacquireFrame(holds);
+            }
+        }
+    }
+
+    private Rectangle drawingArea() {
+        Rectangle area = new Rectangle(viewX, viewY, getWidth(), getHeight());
+        if (displayList.size() > 0) {
+            area = area.union(displayList.getBounds());
+        }
+        return area;
+    }
+
+    private void saveVector() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Drawing As SVG");
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        FileNameExtensionFilter svgFilter = new FileNameExtensionFilter("SVG Image (*.svg)", "svg");
+        fileChooser.addChoosableFileFilter(svgFilter);
+        fileChooser.setFileFilter(svgFilter);
+
+        if(lastSavedImageFile != null && lastSavedImageFile.getParentFile() != null) {
+            fileChooser.setCurrentDirectory(lastSavedImageFile.getParentFile());
+        }
+
+        int userSelection = engine.callOnEdt(() -> fileChooser.showSaveDialog(this));
+        if (userSelection == JFileChooser.APPROVE_OPTION) {
+            File fileToSave = fileChooser.getSelectedFile();
+
+            String path = fileToSave.getAbsolutePath();
+            if (!path.toLowerCase().endsWith(".svg")) {
+                fileToSave = new File(path + ".svg");
+            }
+
+            try {
+                long start = System.nanoTime();
+                SvgExporter exporter = new SvgExporter(displayList, drawingArea(), getBackground());
+                exporter.export(fileToSave);
+                System.out.println("Drawing saved as " + fileToSave.getAbsolutePath() + " (" + displayList.size()
+                        + " strokes in " + exporter.getPaths() + " paths, " + (exporter.getBytesWritten() >> 10)
+                        + " KB) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                if (loadedImage != null) {
+                    System.out.println("The loaded background image is raster only and was left out of the SVG.");
+                }
+            } catch (IOException e) {
+                showErrorDialog("Error saving vector image: " + e.getMessage());
             }
         }
     }
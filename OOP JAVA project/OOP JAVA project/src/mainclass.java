@@ -1,5 +1,23 @@
 public class mainclass {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.setProperty("java.awt.headless", "true");
+            String[] batchArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, batchArgs, 0, batchArgs.length);
+            System.exit(BatchRenderer.run(batchArgs));
+        }
+        if (args.length > 0 && args[0].equals("--swarm")) {
+            System.setProperty("java.awt.headless", "true");
+            String[] swarmArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, swarmArgs, 0, swarmArgs.length);
+            System.exit(TurtleSwarm.run(swarmArgs));
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            System.setProperty("java.awt.headless", "true");
+            String[] serveArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, serveArgs, 0, serveArgs.length);
+            System.exit(RenderServer.run(serveArgs));
+        }
         new Turtlegraphics();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandCompilerTest {
+
+    @Test
+    void reportsEveryBadLineWithItsColumnInOneBatch() {
+        CompiledScript script = CommandCompiler.compile(List.of(
+                "move abc", "left x", "pencolour 1 2 300", "fly 10", "move 10"));
+
+        List<CommandError> errors = script.getErrors();
+        assertEquals(4, errors.size());
+        assertError(errors.get(0), 1, 6, "Invalid number for move/forward distance.");
+        assertError(errors.get(1), 2, 6, "Invalid number for left turn angle.");
+        assertError(errors.get(2), 3, 15, "RGB values must be between 0 and 255.");
+        assertError(errors.get(3), 4, 1, "Unknown command: fly 10");
+    }
+
+    @Test
+    void goodLinesStillRunAroundBadOnes() {
+        HeadlessTurtle turtle = run("pendown", "move abc", "move 10");
+
+        assertEquals(1, turtle.getErrors().size());
+        assertEquals(1, turtle.getDisplayList().size());
+    }
+
+    @Test
+    void repeatClosesTheSquare() {
+        HeadlessTurtle turtle = run("pendown", "repeat 4 [ move 10 right 90 ]");
+
+        DisplayList segments = turtle.getDisplayList();
+        assertEquals(4, segments.size());
+        assertEquals(segments.getX1(0), segments.getX2(3), 1e-3);
+        assertEquals(segments.getY1(0), segments.getY2(3), 1e-3);
+    }
+
+    @Test
+    void proceduresBindTheirParameters() {
+        HeadlessTurtle turtle = run("to sq :n", "repeat 4 [ move :n right 90 ]", "end", "pendown", "sq 20", "sq 30");
+
+        DisplayList segments = turtle.getDisplayList();
+        assertTrue(turtle.getErrors().isEmpty(), turtle.getErrors().toString());
+        assertEquals(8, segments.size());
+        assertEquals(20, length(segments, 0), 1e-3);
+        assertEquals(30, length(segments, 4), 1e-3);
+    }
+
+    @Test
+    void aProcedureThatFailsToCompileIsNotDefined() {
+        CompiledScript script = CommandCompiler.compile(List.of("to bad :n", "move :m", "end", "bad 3"));
+
+        assertEquals(2, script.getErrors().size());
+        assertEquals(2, script.getErrors().get(0).getLine());
+        assertError(script.getErrors().get(1), 4, 1, "Unknown command: bad 3");
+    }
+
+    @Test
+    void callersOfAFailedRedefinitionStopWithAnError() {
+        HeadlessTurtle turtle = run("to sq :n", "move :n", "end", "to outer", "sq 5", "end",
+                "to sq :n", "move :nope", "end", "pendown", "outer");
+
+        assertEquals(List.of("line 8: Unknown variable :nope", "line 5: Procedure sq is no longer defined."),
+                turtle.getErrors());
+        assertEquals(0, turtle.getDisplayList().size());
+    }
+
+    @Test
+    void everyInstructionRecordsItsSourceLine() {
+        CompiledScript script = CommandCompiler.compile(List.of(
+                "make \"x 2", "repeat 2 [", "move :x + 1", "right 3 * :x", "]"));
+
+        assertTrue(script.getErrors().isEmpty(), script.getErrors().toString());
+        int[] lines = script.getLines();
+        for (int i = 0; i < script.getInstructionCount(); i++) {
+            assertTrue(lines[i] >= 1 && lines[i] <= 5, "instruction " + i + " has line " + lines[i]);
+        }
+        assertEquals(3, lines[4]);
+        assertEquals(4, lines[8]);
+    }
+
+    @Test
+    void runtimeErrorsReportTheirLine() {
+        HeadlessTurtle turtle = run("make \"x 5", "pendown", "move :x / 0");
+
+        assertEquals(List.of("line 3: Division by zero."), turtle.getErrors());
+        assertEquals(0, turtle.getDisplayList().size());
+    }
+
+    @Test
+    void shapeSizesAreCappedWhenCompiledAndWhenComputed() {
+        HeadlessTurtle turtle = run("pendown", "polygon 2000000000 1", "square_spiral 1000000000 1",
+                "make \"n 3000000", "repeat 1 [ polygon :n 1 ]");
+
+        assertEquals(List.of(
+                "line 2, column 9: " + CommandCompiler.TOO_MANY_SIDES,
+                "line 3, column 15: " + CommandCompiler.TOO_MANY_TURNS,
+                "line 5: " + CommandCompiler.TOO_MANY_SIDES), turtle.getErrors());
+        assertEquals(0, turtle.getDisplayList().size());
+    }
+
+    @Test
+    void strokeLengthIsCappedWhenCompiledAndWhenComputed() {
+        HeadlessTurtle turtle = run("pendown", "move 100000000", "polygon 1000 100", "square_spiral 400 1",
+                "triangle 30000,30000,30000", "move 65536", "make \"n 20000", "repeat 1 [ square :n ]");
+
+        assertEquals(List.of(
+                "line 2, column 6: " + CommandCompiler.TOO_LONG,
+                "line 3, column 14: " + CommandCompiler.TOO_LONG,
+                "line 4, column 19: " + CommandCompiler.TOO_LONG,
+                "line 5, column 22: " + CommandCompiler.TOO_LONG,
+                "line 8: " + CommandCompiler.TOO_LONG), turtle.getErrors());
+        assertEquals(1, turtle.getDisplayList().size());
+    }
+
+    @Test
+    void streamedFilesCapShapesLikeTheCompiler(@TempDir Path dir) throws IOException {
+        List<String> lines = List.of("pendown", "square_spiral 2000000 1", "move 100000000", "triangle 30000");
+        File file = Files.write(dir.resolve("shapes.txt"), lines).toFile();
+        List<String> streamed = new ArrayList<>();
+        MappedCommandStream.stream(file, chunk -> chunk.getErrors().forEach(error -> streamed.add(error.toString())));
+
+        assertEquals(List.of("line 2, column 15: " + CommandCompiler.TOO_MANY_TURNS,
+                "line 3, column 6: " + CommandCompiler.TOO_LONG, "line 4, column 10: " + CommandCompiler.TOO_LONG),
+                streamed);
+        assertEquals(streamed, run(lines.toArray(new String[0])).getErrors());
+    }
+
+    static HeadlessTurtle run(String... lines) {
+        HeadlessTurtle turtle = new HeadlessTurtle();
+        turtle.run(CommandCompiler.compile(List.of(lines)));
+        return turtle;
+    }
+
+    private static double length(DisplayList segments, int i) {
+        return Math.hypot(segments.getX2(i) - segments.getX1(i), segments.getY2(i) - segments.getY1(i));
+    }
+
+    private static void assertError(CommandError error, int line, int column, String message) {
+        assertEquals(line, error.getLine());
+        assertEquals(column, error.getColumn());
+        assertEquals(message, error.getMessage());
+    }
+}
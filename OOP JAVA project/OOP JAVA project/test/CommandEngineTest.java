@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class CommandEngineTest {
+
+    @Test
+    void submitRejectsInsteadOfBlockingWhenTheQueueIsFull() throws InterruptedException {
+        CommandEngine engine = new CommandEngine(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(engine.submit(() -> {
+            running.countDown();
+            await(release);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        assertTrue(engine.submit(() -> { }));
+        assertFalse(engine.submit(() -> { }));
+        release.countDown();
+    }
+
+    @Test
+    void anErrorFailsOneCommandAndTheWorkerCarriesOn() throws InterruptedException {
+        CommandEngine engine = new CommandEngine();
+        CountDownLatch after = new CountDownLatch(1);
+        assertTrue(engine.submit(() -> {
+            throw new OutOfMemoryError("test");
+        }));
+        assertTrue(engine.submit(() -> {
+            throw new StackOverflowError();
+        }));
+        assertTrue(engine.submit(after::countDown));
+
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelStopsTheRunningCommandButNotTheNextOne() throws InterruptedException {
+        CommandEngine engine = new CommandEngine();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch next = new CountDownLatch(1);
+        assertTrue(engine.submit(() -> {
+            running.countDown();
+            await(release);
+            try {
+                engine.checkCancelled();
+            } catch (CancellationException e) {
+                cancelled.countDown();
+                throw e;
+            }
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        engine.cancel();
+        assertTrue(engine.submit(() -> {
+            if (!engine.isCancelRequested()) {
+                engine.checkCancelled();
+                next.countDown();
+            }
+        }));
+        release.countDown();
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+        assertFalse(engine.isCancelRequested());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandJournalTest {
+
+    @Test
+    void recoveryReplaysRecordsInTheOrderTheyWereWritten(@TempDir Path dir) throws IOException {
+        File file = dir.resolve("journal.bin").toFile();
+        File source = Files.writeString(dir.resolve("start.txt"), "pendown\nmove 10\n").toFile();
+        CommandJournal journal = CommandJournal.open(file);
+        journal.append("move 5");
+        journal.reset(source);
+        journal.append("pendown");
+        journal.append("move 50");
+        journal.moveTo(1);
+        journal.append("clear");
+        journal.close();
+
+        journal = CommandJournal.open(file);
+        List<CommandJournal.Entry> entries = journal.getRecoveredEntries();
+        journal.close();
+
+        assertEquals(5, entries.size());
+        assertEquals(CommandJournal.RESET, entries.get(0).getType());
+        assertEquals(source.getAbsoluteFile(), entries.get(0).getSource());
+        assertTrue(entries.get(0).isSourceUnchanged());
+        assertEquals("pendown", entries.get(1).getText());
+        assertEquals("move 50", entries.get(2).getText());
+        assertEquals(CommandJournal.MOVE, entries.get(3).getType());
+        assertEquals(1, entries.get(3).getCommand());
+        assertEquals("clear", entries.get(4).getText());
+        assertEquals(0, journal.getDiscardedBytes());
+    }
+
+    @Test
+    void tornRecordIsTruncatedAndTheRestKept(@TempDir Path dir) throws IOException {
+        File file = dir.resolve("journal.bin").toFile();
+        write(file, "pendown", "move 50", "move 20");
+        long whole = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(whole - 3);
+        }
+
+        CommandJournal journal = CommandJournal.open(file);
+        List<CommandJournal.Entry> entries = journal.getRecoveredEntries();
+        journal.append("right 90");
+        journal.close();
+
+        assertEquals(2, entries.size());
+        assertEquals("move 50", entries.get(1).getText());
+        assertEquals(recordSize("move 20") - 3, journal.getDiscardedBytes());
+        assertEquals(whole - recordSize("move 20") + recordSize("right 90"), file.length());
+
+        journal = CommandJournal.open(file);
+        assertEquals("right 90", journal.getRecoveredEntries().get(2).getText());
+        journal.close();
+    }
+
+    @Test
+    void corruptRecordStopsRecovery(@TempDir Path dir) throws IOException {
+        File file = dir.resolve("journal.bin").toFile();
+        write(file, "pendown", "move 50", "move 20");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long payload = CommandJournal.HEADER_SIZE + recordSize("pendown") + 1 + 4;
+            raf.seek(payload);
+            raf.write('n');
+        }
+
+        CommandJournal journal = CommandJournal.open(file);
+        List<CommandJournal.Entry> entries = journal.getRecoveredEntries();
+        journal.close();
+
+        assertEquals(1, entries.size());
+        assertEquals("pendown", entries.get(0).getText());
+        assertEquals(recordSize("move 50") + recordSize("move 20"), journal.getDiscardedBytes());
+    }
+
+    @Test
+    void compactionKeepsOnlyTheLiveHistory(@TempDir Path dir) throws IOException {
+        File file = dir.resolve("journal.bin").toFile();
+        CommandJournal journal = CommandJournal.open(file);
+        for (int i = 0; i < 1000; i++) {
+            journal.append("move " + i);
+            journal.moveTo(i);
+        }
+        journal.compact(null, List.of("pendown", "move 50", "clear"), 3);
+        journal.append("move 20");
+        journal.close();
+
+        journal = CommandJournal.open(file);
+        List<CommandJournal.Entry> entries = journal.getRecoveredEntries();
+        journal.close();
+
+        assertEquals(5, entries.size());
+        assertEquals("pendown", entries.get(0).getText());
+        assertEquals("clear", entries.get(2).getText());
+        assertEquals(CommandJournal.MOVE, entries.get(3).getType());
+        assertEquals(3, entries.get(3).getCommand());
+        assertEquals("move 20", entries.get(4).getText());
+        assertTrue(file.length() < 100, "journal is " + file.length() + " bytes");
+    }
+
+    private static void write(File file, String... commands) throws IOException {
+        CommandJournal journal = CommandJournal.open(file);
+        for (String command : commands) {
+            journal.append(command);
+        }
+        journal.close();
+    }
+
+    private static long recordSize(String command) {
+        return 1 + 4 + command.length() + 4;
+    }
+}
@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandLogTest {
+
+    private static final List<String> SCRIPT = List.of(
+            "pendown",
+            "pencolour 10 200 30",
+            "move 50",
+            "right 90",
+            "move 50",
+            "",
+            "to corner :n",
+            "  right 90",
+            "  move :n",
+            "end",
+            "make size 25",
+            "repeat 4 [ corner :size ]",
+            "square_spiral 20 3",
+            "polygon 7 30",
+            "triangle 30,40,50",
+            "fly 10",
+            "green",
+            "move 50",
+            "move 50");
+
+    @TempDir
+    File directory;
+
+    @Test
+    void logsReadBackAsTheSameHistoryAndDrawing() throws IOException {
+        for (boolean compressed : new boolean[] {true, false}) {
+            File file = new File(directory, "drawing-" + compressed + "." + CommandLog.EXTENSION);
+            try (CommandLogWriter writer = new CommandLogWriter(file, compressed)) {
+                for (String line : SCRIPT) {
+                    writer.append(line);
+                }
+            }
+            assertTrue(CommandLog.isCommandLog(file));
+
+            List<String> history = new ArrayList<>();
+            CommandLogReader reader = new CommandLogReader(history);
+            HeadlessTurtle fromLog = new HeadlessTurtle(200, 200);
+            reader.run(file, fromLog::run);
+
+            HeadlessTurtle fromText = new HeadlessTurtle(200, 200);
+            for (String line : SCRIPT) {
+                fromText.processCommand(line);
+            }
+
+            assertEquals(SCRIPT.size(), reader.getLine());
+            assertEquals(file.length(), reader.getBytesRead());
+            assertEquals(SCRIPT, history);
+            assertEquals(1, fromLog.getErrors().size());
+            assertEquals(fromText.getErrors(), fromLog.getErrors());
+            assertTrue(fromLog.getDisplayList().size() > 20);
+            assertEquals(fromText.getDisplayList().size(), fromLog.getDisplayList().size());
+            assertArrayEquals(pixels(fromText), pixels(fromLog));
+            fromLog.dispose();
+            fromText.dispose();
+        }
+    }
+
+    @Test
+    void truncatedLogIsReported() throws IOException {
+        File file = new File(directory, "cut." + CommandLog.EXTENSION);
+        try (CommandLogWriter writer = new CommandLogWriter(file, false)) {
+            for (String line : SCRIPT) {
+                writer.append(line);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 1);
+        }
+
+        assertThrows(IOException.class, () -> CommandLogReader.read(file, script -> { }));
+    }
+
+    private static int[] pixels(HeadlessTurtle turtle) {
+        return turtle.getImage().getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import org.junit.jupiter.api.Test;
+
+class DisplayListTest {
+
+    @Test
+    void undoAndRedrawCyclesDoNotGrowTheGrid() {
+        DisplayList segments = new DisplayList();
+        draw(segments, 0, 100);
+        int entries = segments.getGrid().getEntryCount();
+
+        for (int cycle = 0; cycle < 1000; cycle++) {
+            segments.truncate(60);
+            draw(segments, 60, 100);
+        }
+
+        assertEquals(100, segments.size());
+        assertEquals(entries, segments.getGrid().getEntryCount());
+        assertArrayEquals(new int[] {0, 1, 2}, segments.getGrid().query(0, 0, 25, 5));
+    }
+
+    @Test
+    void truncatedSegmentsLeaveTheGrid() {
+        DisplayList segments = new DisplayList();
+        draw(segments, 0, 10);
+        segments.add(-5000, 0, 5000, 0, Color.RED, 1, 99);
+
+        segments.truncate(5);
+
+        assertEquals(5, segments.size());
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, segments.getGrid().query(-1000, -10, 1000, 10));
+        assertEquals(-1, segments.getGrid().pick(95, 0));
+        assertEquals(4, segments.getGrid().pick(45, 0));
+    }
+
+    private static void draw(DisplayList segments, int from, int to) {
+        for (int i = from; i < to; i++) {
+            segments.add(i * 10, 0, i * 10 + 10, 0, Color.WHITE, 1, i);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PathSimplifierTest {
+
+    @Test
+    void denseCurveStaysWithinTolerance() {
+        PathSimplifier simplifier = new PathSimplifier(0.5);
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i <= 20000; i++) {
+            double angle = i * 0.002;
+            double radius = 20 + i * 0.01;
+            points.add(new double[] {400 + radius * Math.cos(angle), 300 + radius * Math.sin(angle)});
+        }
+        simplifier.moveTo(points.get(0)[0], points.get(0)[1]);
+        for (int i = 1; i < points.size(); i++) {
+            simplifier.lineTo(points.get(i)[0], points.get(i)[1]);
+        }
+        List<Line2D> lines = lines(simplifier.finish());
+
+        assertEquals(20000, simplifier.getSegmentsIn());
+        assertEquals(lines.size(), simplifier.getSegmentsOut());
+        assertTrue(lines.size() < 2000, lines.size() + " segments kept");
+        for (double[] point : points) {
+            assertTrue(distance(lines, point) <= 0.5 + 1e-9, "point " + point[0] + "," + point[1] + " strayed");
+        }
+    }
+
+    @Test
+    void zeroToleranceKeepsEveryCorner() {
+        PathSimplifier simplifier = new PathSimplifier(0);
+        simplifier.moveTo(0, 0);
+        simplifier.lineTo(10, 0);
+        simplifier.lineTo(10, 10);
+        simplifier.lineTo(0, 10);
+        simplifier.lineTo(0, 0);
+
+        assertEquals(4, lines(simplifier.finish()).size());
+    }
+
+    @Test
+    void segmentsOutsideTheWindowAreDropped() {
+        PathSimplifier simplifier = new PathSimplifier();
+        simplifier.reset(0.5, 0, 0, 100, 100);
+        simplifier.moveTo(50, 50);
+        simplifier.lineTo(50, 200);
+        simplifier.lineTo(60, 300);
+        simplifier.lineTo(70, 200);
+        simplifier.lineTo(70, 50);
+        List<Line2D> lines = lines(simplifier.finish());
+
+        assertEquals(2, lines.size());
+        assertEquals(new Point2D.Double(50, 50), lines.get(0).getP1());
+        assertEquals(new Point2D.Double(70, 50), lines.get(1).getP2());
+    }
+
+    private static List<Line2D> lines(Path2D.Double path) {
+        List<Line2D> lines = new ArrayList<>();
+        double[] coords = new double[6];
+        double x = 0;
+        double y = 0;
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+            if (it.currentSegment(coords) == PathIterator.SEG_LINETO) {
+                lines.add(new Line2D.Double(x, y, coords[0], coords[1]));
+            }
+            x = coords[0];
+            y = coords[1];
+        }
+        return lines;
+    }
+
+    private static double distance(List<Line2D> lines, double[] point) {
+        double best = Double.MAX_VALUE;
+        for (Line2D line : lines) {
+            best = Math.min(best, line.ptSegDist(point[0], point[1]));
+        }
+        return best;
+    }
+}
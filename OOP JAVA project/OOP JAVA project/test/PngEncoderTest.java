@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+class PngEncoderTest {
+
+    private static final int WIDTH = 97;
+    private static final int HEIGHT = 75;
+
+    @Test
+    void parallelEncoderDecodesToTheSamePixels() throws IOException {
+        BufferedImage image = noise(1);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(7, ForkJoinPool.commonPool());
+
+        assertSamePixels(image, decode(encode(encoder, image)), 0xFFFFFF);
+        encoder.setAlpha(true);
+        assertSamePixels(image, decode(encode(encoder, image)), 0xFFFFFFFF);
+    }
+
+    @Test
+    void incrementalEncodeOnlyRedoesDirtyStripes() throws IOException {
+        BufferedImage image = noise(2);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(8, ForkJoinPool.commonPool());
+        encoder.setAlpha(true);
+        encode(encoder, image);
+        assertEquals(0, encoder.getDirtyCount());
+
+        for (int x = 0; x < WIDTH; x++) {
+            image.setRGB(x, 40, 0x80FF00FF);
+        }
+        encoder.markDirty(40, 40);
+        assertEquals(1, encoder.getDirtyCount());
+
+        assertSamePixels(image, decode(encode(encoder, image)), 0xFFFFFFFF);
+    }
+
+    @Test
+    void streamWriterDecodesToTheSamePixels() throws IOException {
+        BufferedImage image = noise(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PngStreamWriter writer = new PngStreamWriter(out, WIDTH, HEIGHT)) {
+            writer.writeRows(image, HEIGHT);
+        }
+
+        assertSamePixels(image, decode(out.toByteArray()), 0xFFFFFFFF);
+    }
+
+    @Test
+    void streamWriterRejectsAShortImage() throws IOException {
+        PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), WIDTH, HEIGHT);
+        writer.writeRows(noise(4), HEIGHT - 1);
+
+        assertThrows(IOException.class, writer::close);
+    }
+
+    private static BufferedImage noise(long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, y % 5 == 0 ? 0xFF000000 : random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(ParallelPngEncoder encoder, BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(image, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] png) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, int mask) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int want = expected.getRGB(x, y) & mask;
+                int got = actual.getRGB(x, y) & mask;
+                if (want != got) {
+                    throw new AssertionError("Pixel " + x + "," + y + " expected " + Integer.toHexString(want)
+                            + " but was " + Integer.toHexString(got));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PolylineTest {
+
+    @Test
+    void squareClosesExactlyOnItsStart() {
+        List<double[]> segments = segments(Polyline.regularPolygon(10.5, 20.25, 90, 7, 4));
+
+        assertEquals(4, segments.size());
+        assertEquals(10.5, segments.get(1)[0]);
+        assertEquals(13.25, segments.get(1)[1]);
+        assertEquals(10.5, segments.get(3)[2]);
+        assertEquals(20.25, segments.get(3)[3]);
+    }
+
+    @Test
+    void segmentsJoinAndEndWhereTheShapeEnds() {
+        Polyline spiral = Polyline.squareSpiral(0, 0, 30, 101, 3);
+        List<double[]> segments = segments(spiral);
+
+        assertEquals(101, segments.size());
+        for (int i = 1; i < segments.size(); i++) {
+            assertEquals(segments.get(i - 1)[2], segments.get(i)[0]);
+            assertEquals(segments.get(i - 1)[3], segments.get(i)[1]);
+        }
+        double[] last = segments.get(segments.size() - 1);
+        assertEquals(last[2], spiral.getEndX());
+        assertEquals(last[3], spiral.getEndY());
+        assertEquals(3 * 101, Math.hypot(last[2] - last[0], last[3] - last[1]), 1e-9);
+    }
+
+    @Test
+    void largeTrianglesTurnLikeSmallOnes() {
+        assertEquals(Polyline.triangle(0, 0, 90, 5, 5, 5).getEndAngle(),
+                Polyline.triangle(0, 0, 90, 50000, 50000, 50000).getEndAngle(), 1e-9);
+        assertEquals(Polyline.triangle(0, 0, 30, 3, 4, 5).getEndAngle(),
+                Polyline.triangle(0, 0, 30, 30000, 40000, 50000).getEndAngle(), 1e-9);
+        assertEquals(Polyline.triangle(0, 0, 30, 3, 4, 5).getEndAngle(),
+                Polyline.triangle(0, 0, 30, 600000000, 800000000, 1000000000).getEndAngle(), 1e-9);
+    }
+
+    @Test
+    void rejectsShapesLargerThanTheSegmentLimit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Polyline.regularPolygon(0, 0, 0, 1, Polyline.MAX_SEGMENTS + 1));
+        assertThrows(IllegalArgumentException.class, () -> Polyline.squareSpiral(0, 0, 0, Integer.MAX_VALUE, 1));
+    }
+
+    private static List<double[]> segments(Polyline shape) {
+        List<double[]> segments = new ArrayList<>();
+        shape.forEachSegment((x1, y1, x2, y2) -> segments.add(new double[] {x1, y1, x2, y2}));
+        return segments;
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RenderCacheTest {
+
+    private static final long IMAGE_BYTES = 10 * 10 * 4;
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        RenderCache cache = new RenderCache(IMAGE_BYTES * 2 + IMAGE_BYTES / 2);
+        BufferedImage a = image();
+        BufferedImage b = image();
+        BufferedImage c = image();
+        cache.putImage("a", a);
+        cache.putImage("b", b);
+        assertSame(a, cache.getImage("a"));
+
+        cache.putImage("c", c);
+
+        assertNull(cache.getImage("b"));
+        assertSame(a, cache.getImage("a"));
+        assertSame(c, cache.getImage("c"));
+        assertEquals(IMAGE_BYTES * 2, cache.getBytesUsed());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void entriesLargerThanTheBudgetAreNotKept() {
+        RenderCache cache = new RenderCache(IMAGE_BYTES - 1);
+        cache.putImage("a", image());
+
+        assertNull(cache.getImage("a"));
+        assertEquals(0, cache.getBytesUsed());
+    }
+
+    @Test
+    void shrinkingTheBudgetEvictsImmediately() {
+        RenderCache cache = new RenderCache(IMAGE_BYTES * 4);
+        cache.putImage("a", image());
+        cache.putImage("b", image());
+        cache.putImage("c", image());
+
+        cache.setMemoryBudget(IMAGE_BYTES);
+
+        assertEquals(IMAGE_BYTES, cache.getBytesUsed());
+        assertNull(cache.getImage("a"));
+        assertNull(cache.getImage("b"));
+        assertNotNull(cache.getImage("c"));
+    }
+
+    @Test
+    void scriptKeysIgnoreSpacingAndCaseButNotSize() {
+        String key = RenderCache.scriptKey(List.of("PenDown", "move   10"), 800, 400);
+
+        assertEquals(key, RenderCache.scriptKey(List.of("pendown", " move 10 "), 800, 400));
+        assertNotEquals(key, RenderCache.scriptKey(List.of("pendown", "move 11"), 800, 400));
+        assertNotEquals(key, RenderCache.scriptKey(List.of("pendown", "move 10"), 800, 401));
+    }
+
+    @Test
+    void rendersSurviveOnDisk(@TempDir File directory) throws Exception {
+        BufferedImage canvas = image();
+        canvas.setRGB(3, 4, 0xFF00FF00);
+        DisplayList segments = new DisplayList();
+        segments.add(1.5f, 2, 8, 9.25f, Color.BLUE, 2, 1);
+        TurtleState state = new TurtleState(5.5, 6, 90, Color.GREEN, 2, true, new int[] {7, 11});
+        String key = RenderCache.scriptKey(List.of("pendown", "move 10"), 10, 10);
+        new RenderCache(IMAGE_BYTES * 4, directory, 1 << 20).putRender(key, new RenderCache.Render(canvas, state,
+                segments));
+        File stored = awaitEntry(directory);
+
+        RenderCache.Render render = new RenderCache(0, directory, 1 << 20).getRender(key);
+
+        assertNotNull(render);
+        assertArrayEquals(pixels(canvas), pixels(render.getCanvas()));
+        assertEquals(5.5, render.getState().getX());
+        assertEquals(90, render.getState().getAngle());
+        assertEquals(Color.GREEN, render.getState().getPenColor());
+        assertTrue(render.getState().isPenDown());
+        assertArrayEquals(new int[] {7, 11}, render.getState().getVariables());
+        assertEquals(1, render.getSegments().size());
+        assertEquals(9.25f, render.getSegments().getY2(0));
+        assertEquals(Color.BLUE, render.getSegments().getColour(0));
+
+        try (RandomAccessFile raf = new RandomAccessFile(stored, "rw")) {
+            raf.setLength(stored.length() / 2);
+        }
+        assertNull(new RenderCache(0, directory, 1 << 20).getRender(key));
+        assertFalse(stored.exists());
+    }
+
+    private static File awaitEntry(File directory) throws InterruptedException, IOException {
+        for (int attempt = 0; attempt < 500; attempt++) {
+            File[] entries = directory.listFiles((dir, name) -> name.endsWith(".bin"));
+            if (entries != null && entries.length == 1) return entries[0];
+            Thread.sleep(10);
+        }
+        throw new IOException("render was not written to " + directory);
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static BufferedImage image() {
+        return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    }
+}
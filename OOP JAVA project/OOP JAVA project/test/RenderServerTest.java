@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RenderServerTest {
+
+    private RenderServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new RenderServer(0, 1, 4);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void postedScriptComesBackAsAPng() throws IOException {
+        HttpURLConnection connection = post("", "pendown\nred\nmove 50\nfly 3");
+
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("image/png", connection.getContentType());
+        assertEquals("1", connection.getHeaderField("X-Turtle-Errors"));
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(body(connection)));
+        assertNotNull(image);
+        assertEquals(HeadlessTurtle.DEFAULT_WIDTH, image.getWidth());
+        assertEquals(HeadlessTurtle.DEFAULT_HEIGHT, image.getHeight());
+        assertEquals(0xFF0000, image.getRGB(HeadlessTurtle.DEFAULT_WIDTH / 2, HeadlessTurtle.DEFAULT_HEIGHT / 2 - 25)
+                & 0xFFFFFF);
+    }
+
+    @Test
+    void rejectedRequestsLeaveTheWorkerServing() throws IOException {
+        assertEquals(400, post("?width=100000&height=100000", "pendown\nmove 10").getResponseCode());
+        assertEquals(422, post("", "pendown\nrepeat 2 [ polygon 600000 0 ]").getResponseCode());
+        assertEquals(422, post("", "repeat 100000 [ repeat 1000 [ left 1 ] ]").getResponseCode());
+
+        HttpURLConnection connection = post("?width=64&height=32", "pendown\nmove 10");
+        assertEquals(200, connection.getResponseCode());
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(body(connection)));
+        assertEquals(64, image.getWidth());
+        assertEquals(32, image.getHeight());
+
+        String metrics = server.metricsJson();
+        assertTrue(metrics.contains("\"overBudget\": 2"), metrics);
+        assertTrue(metrics.contains("\"failed\": 0"), metrics);
+    }
+
+    @Test
+    void onlyPostIsAccepted() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) server.getRenderUri().toURL().openConnection();
+        assertEquals(405, connection.getResponseCode());
+    }
+
+    private HttpURLConnection post(String query, String script) throws IOException {
+        byte[] body = script.getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection connection = (HttpURLConnection) URI.create(server.getRenderUri() + query).toURL()
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+
+    private static byte[] body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
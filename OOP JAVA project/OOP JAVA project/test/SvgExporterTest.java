@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+class SvgExporterTest {
+
+    private static final Pattern PATH_TOKEN = Pattern.compile("[Mlm]|-?(?:\\d+(?:\\.\\d*)?|\\.\\d+)");
+
+    @TempDir
+    File directory;
+
+    @Test
+    void pathsReadBackAsTheSameSegments() throws Exception {
+        DisplayList segments = new DisplayList();
+        Color red = Color.RED;
+        Color glass = new Color(0, 0, 255, 128);
+        segments.add(10.25f, 20.5f, 30f, 20.5f, red, 1, 1);
+        segments.add(30f, 20.5f, 30f, -4.75f, red, 1, 1);
+        segments.add(50.01f, 60f, 55f, 61.99f, red, 1, 2);
+        segments.add(55f, 61.99f, 0.5f, 0.25f, glass, 3, 3);
+
+        File file = new File(directory, "drawing.svg");
+        SvgExporter exporter = new SvgExporter(segments, 800, 400, Color.BLACK);
+        exporter.export(file);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        assertEquals("800", document.getDocumentElement().getAttribute("width"));
+        assertEquals(file.length(), exporter.getBytesWritten());
+
+        NodeList paths = document.getElementsByTagName("path");
+        assertEquals(2, paths.getLength());
+        assertEquals(2, exporter.getPaths());
+        Element first = (Element) paths.item(0);
+        Element second = (Element) paths.item(1);
+        assertEquals("#ff0000", first.getAttribute("stroke"));
+        assertEquals("", first.getAttribute("stroke-width"));
+        assertEquals("#0000ff", second.getAttribute("stroke"));
+        assertEquals("3", second.getAttribute("stroke-width"));
+        assertEquals(0.5, Double.parseDouble(second.getAttribute("stroke-opacity")), 0.01);
+
+        List<float[]> decoded = new ArrayList<>();
+        decoded.addAll(decode(first.getAttribute("d")));
+        decoded.addAll(decode(second.getAttribute("d")));
+        assertEquals(segments.size(), decoded.size());
+        for (int i = 0; i < segments.size(); i++) {
+            float[] segment = decoded.get(i);
+            assertEquals(segments.getX1(i), segment[0], 0.005, "x1 of segment " + i);
+            assertEquals(segments.getY1(i), segment[1], 0.005, "y1 of segment " + i);
+            assertEquals(segments.getX2(i), segment[2], 0.005, "x2 of segment " + i);
+            assertEquals(segments.getY2(i), segment[3], 0.005, "y2 of segment " + i);
+        }
+    }
+
+    @Test
+    void largeDrawingsStreamWithTheirArea() throws Exception {
+        DisplayList segments = new DisplayList();
+        for (int i = 0; i < 100_000; i++) {
+            float x = -100 + (i % 300);
+            segments.add(x, -50, x + 0.5f, 150, (i / 1000) % 2 == 0 ? Color.RED : Color.GREEN, 1, i);
+        }
+
+        File file = new File(directory, "large.svg");
+        SvgExporter exporter = new SvgExporter(segments, new Rectangle(-100, -50, 300, 200), Color.BLACK);
+        exporter.export(file);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        assertEquals("-100 -50 300 200", document.getDocumentElement().getAttribute("viewBox"));
+        Element background = (Element) document.getElementsByTagName("rect").item(0);
+        assertEquals("-100", background.getAttribute("x"));
+        assertEquals(file.length(), exporter.getBytesWritten());
+
+        NodeList paths = document.getElementsByTagName("path");
+        assertEquals(100, paths.getLength());
+        int decoded = 0;
+        for (int i = 0; i < paths.getLength(); i++) {
+            decoded += decode(((Element) paths.item(i)).getAttribute("d")).size();
+        }
+        assertEquals(segments.size(), decoded);
+    }
+
+    private static List<float[]> decode(String d) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = PATH_TOKEN.matcher(d);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+
+        List<float[]> segments = new ArrayList<>();
+        float x = 0;
+        float y = 0;
+        int i = 0;
+        while (i < tokens.size()) {
+            String command = tokens.get(i++);
+            if (command.equals("M")) {
+                x = Float.parseFloat(tokens.get(i++));
+                y = Float.parseFloat(tokens.get(i++));
+            } else if (command.equals("m")) {
+                x += Float.parseFloat(tokens.get(i++));
+                y += Float.parseFloat(tokens.get(i++));
+            } else if (!command.equals("l")) {
+                throw new AssertionError("Unexpected path command " + command + " in " + d);
+            }
+            while (i < tokens.size() && !Character.isLetter(tokens.get(i).charAt(0))) {
+                float endX = x + Float.parseFloat(tokens.get(i++));
+                float endY = y + Float.parseFloat(tokens.get(i++));
+                segments.add(new float[] {x, y, endX, endY});
+                x = endX;
+                y = endY;
+            }
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Path2D;
+import java.io.File;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TileCanvasTest {
+
+    private static final int LENGTH = 40000;
+
+    @TempDir
+    File directory;
+
+    private TileCanvas canvas;
+
+    @BeforeEach
+    void open() {
+        canvas = new TileCanvas(new TileStore(TileStore.TILE_BYTES * 4L, directory));
+    }
+
+    @AfterEach
+    void close() {
+        canvas.close();
+    }
+
+    @Test
+    void longDiagonalOnlyTouchesTheTilesItCrosses() {
+        canvas.drawLine(0.5f, 0.5f, LENGTH + 0.5f, LENGTH + 0.5f, Color.WHITE, 3);
+
+        int crossed = LENGTH / TileCanvas.TILE_SIZE + 1;
+        assertTrue(canvas.getTileCount() >= crossed, canvas.report());
+        assertTrue(canvas.getTileCount() <= 4 * crossed, canvas.report());
+        assertPainted(true, 300, 300);
+        assertPainted(true, LENGTH - 700, LENGTH - 700);
+        assertPainted(false, 300, 700);
+    }
+
+    @Test
+    void shapesOnlyTouchTheTilesTheyCross() {
+        Path2D.Float path = new Path2D.Float();
+        path.moveTo(0.5f, 0.5f);
+        path.lineTo(LENGTH + 0.5f, 0.5f);
+        path.lineTo(LENGTH + 0.5f, LENGTH + 0.5f);
+        canvas.draw(path, Color.WHITE, 1);
+
+        int crossed = LENGTH / TileCanvas.TILE_SIZE + 1;
+        assertTrue(canvas.getTileCount() <= 2 * 2 * crossed, canvas.report());
+        assertPainted(true, 1000, 0);
+        assertPainted(true, LENGTH, 1000);
+        assertPainted(false, 1000, 1000);
+    }
+
+    private void assertPainted(boolean painted, int x, int y) {
+        int argb = canvas.copy(new Rectangle(x, y, 1, 1)).getRGB(0, 0);
+        assertEquals(painted, argb != 0, "pixel " + x + "," + y + " was " + Integer.toHexString(argb));
+    }
+}
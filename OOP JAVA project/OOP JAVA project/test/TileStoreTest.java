@@ -0,0 +1,111 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TileStoreTest {
+
+    private static final int TILES = 12;
+
+    @TempDir
+    File directory;
+
+    private TileStore store;
+
+    @AfterEach
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void spilledTilesReloadWithTheirPixels() throws Exception {
+        store = new TileStore(0, directory);
+        for (int i = 0; i < TILES; i++) {
+            fill(store.getOrCreate(TileStore.key(i, -i)), i);
+        }
+        assertEquals(TILES, store.getTileCount());
+        assertTrue(store.getSpilledCount() > 0, store.report());
+        assertTrue(store.getResidentCount() < TILES, store.report());
+
+        for (int i = TILES - 1; i >= 0; i--) {
+            assertFilled(store.get(TileStore.key(i, -i)), i);
+        }
+        for (int i = 0; i < TILES; i++) {
+            assertFilled(store.get(TileStore.key(i, -i)), i);
+        }
+        assertEquals(TILES, store.getTileCount());
+    }
+
+    @Test
+    void newTilesStartBlankAfterClear() throws Exception {
+        store = new TileStore(0, directory);
+        for (int i = 0; i < TILES; i++) {
+            fill(store.getOrCreate(TileStore.key(i, 0)), i + 1);
+        }
+        store.clear();
+        assertEquals(0, store.getTileCount());
+        assertNull(store.get(TileStore.key(0, 0)));
+
+        for (int i = 0; i < TILES; i++) {
+            assertFilled(store.getOrCreate(TileStore.key(0, i)), 0);
+        }
+    }
+
+    @Test
+    void cyclingThroughSpilledTilesReusesTheirSlots() throws Exception {
+        store = new TileStore(0, directory);
+        for (int i = 0; i < TILES; i++) {
+            fill(store.getOrCreate(TileStore.key(i, i)), i + 1);
+        }
+        for (int pass = 0; pass < 20; pass++) {
+            for (int i = 0; i < TILES; i++) {
+                assertFilled(store.get(TileStore.key(i, i)), i + 1);
+            }
+        }
+
+        File[] spillFiles = directory.listFiles();
+        assertEquals(1, spillFiles.length);
+        assertEquals(64L * TileStore.TILE_BYTES, spillFiles[0].length());
+        assertTrue(store.getResidentCount() <= 4, store.report());
+        assertEquals(TILES, store.getTileCount());
+
+        store.setMemoryBudget(TILES * (long) TileStore.TILE_BYTES);
+        for (int i = 0; i < TILES; i++) {
+            assertFilled(store.get(TileStore.key(i, i)), i + 1);
+        }
+        assertEquals(TILES, store.getResidentCount());
+        assertEquals(0, store.getSpilledCount());
+    }
+
+    @Test
+    void keysRoundTripNegativeCoordinates() {
+        long key = TileStore.key(-3, Integer.MIN_VALUE);
+        assertEquals(-3, TileStore.tileX(key));
+        assertEquals(Integer.MIN_VALUE, TileStore.tileY(key));
+    }
+
+    private static void fill(ByteBuffer tile, int seed) {
+        for (int i = 0; i < TileStore.TILE_PIXELS; i++) {
+            tile.putInt(i * 4, pixel(seed, i));
+        }
+    }
+
+    private static void assertFilled(ByteBuffer tile, int seed) {
+        for (int i = 0; i < TileStore.TILE_PIXELS; i++) {
+            if (tile.getInt(i * 4) != pixel(seed, i)) {
+                throw new AssertionError("Tile " + seed + " differs at pixel " + i);
+            }
+        }
+    }
+
+    private static int pixel(int seed, int i) {
+        return seed == 0 ? 0 : seed * 0x01000193 ^ i;
+    }
+}
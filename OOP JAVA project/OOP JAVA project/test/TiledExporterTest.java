@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TiledExporterTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void exportsStrokesOutsideThePanelWindow() throws IOException {
+        DisplayList segments = new DisplayList();
+        segments.add(-500, -500, -400, -400, Color.WHITE, 9, 1);
+        segments.add(1400, 1400, 1500, 1500, Color.WHITE, 9, 2);
+        Rectangle area = new Rectangle(0, 0, 800, 400).union(segments.getBounds());
+        File output = new File(directory, "export.png");
+
+        new TiledExporter(segments, area, Color.BLACK, null, new Rectangle(0, 0, 800, 400), 64,
+                ForkJoinPool.commonPool()).export(300, 300, output);
+
+        BufferedImage image = ImageIO.read(output);
+        assertEquals(300, image.getWidth());
+        assertEquals(300, image.getHeight());
+        assertTrue(painted(image, 0, 0, 30, 30) > 0);
+        assertTrue(painted(image, 270, 270, 30, 30) > 0);
+        assertEquals(0, painted(image, 120, 120, 60, 60));
+    }
+
+    private static int painted(BufferedImage image, int x, int y, int width, int height) {
+        int count = 0;
+        for (int row = y; row < y + height; row++) {
+            for (int column = x; column < x + width; column++) {
+                if ((image.getRGB(column, row) & 0xFFFFFF) != 0) count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TurtlePoseTest {
+
+    private static final List<String> SCRIPT = List.of("pendown", "triangle 30,40,50", "move 17", "right 7",
+            "square_spiral 9 3", "left 31", "polygon 7 11", "reverse 5", "triangle 20");
+
+    @Test
+    void manySmallStepsDoNotDrift() {
+        TurtlePose pose = new TurtlePose(400, 200);
+        for (int i = 0; i < 3600; i++) {
+            pose.forward(1);
+            pose.right(1);
+        }
+
+        assertEquals(400, pose.getX(), 1e-6);
+        assertEquals(200, pose.getY(), 1e-6);
+        assertEquals(TurtlePose.HOME_ANGLE, pose.getAngle(), 1e-9);
+    }
+
+    @Test
+    void aCustomTriangleEndsOnItsExactHeading() {
+        TurtlePose pose = new TurtlePose(0, 0);
+        pose.moveToEnd(pose.triangle(30, 40, 50));
+
+        assertEquals(0, pose.getX(), 1e-9);
+        assertEquals(0, pose.getY(), 1e-9);
+        double angleB = Math.toDegrees(Math.atan2(4, 3));
+        assertEquals(TurtlePose.HOME_ANGLE + 180 + angleB, pose.getAngle(), 1e-9);
+    }
+
+    @Test
+    void headlessAndSwarmTurtlesDrawTheSameSegments() throws InterruptedException {
+        HeadlessTurtle headless = new HeadlessTurtle();
+        headless.run(CommandCompiler.compile(SCRIPT));
+        DisplayList expected = headless.getDisplayList();
+
+        List<float[]> swarmed = swarm(new Rectangle(0, 0, HeadlessTurtle.DEFAULT_WIDTH,
+                HeadlessTurtle.DEFAULT_HEIGHT));
+
+        assertEquals(expected.size(), swarmed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            float[] segment = swarmed.get(i);
+            assertEquals(expected.getX1(i), segment[0]);
+            assertEquals(expected.getY1(i), segment[1]);
+            assertEquals(expected.getX2(i), segment[2]);
+            assertEquals(expected.getY2(i), segment[3]);
+        }
+    }
+
+    @Test
+    void swarmTurtlesStartInTheMiddleOfTheirArea() throws InterruptedException {
+        List<float[]> swarmed = swarm(new Rectangle(1000, -300, 200, 100));
+
+        assertTrue(swarmed.size() > 0);
+        assertEquals(1100, swarmed.get(0)[0]);
+        assertEquals(-250, swarmed.get(0)[1]);
+    }
+
+    private static List<float[]> swarm(Rectangle area) throws InterruptedException {
+        TurtleSwarm swarm = new TurtleSwarm(area);
+        TurtleAgent agent = swarm.add(SCRIPT);
+        List<float[]> segments = new ArrayList<>();
+        swarm.run((x1, y1, x2, y2, rgb, width, line) -> segments.add(new float[] {x1, y1, x2, y2}), () -> {
+        });
+        assertEquals(List.of(), agent.getErrors());
+        return segments;
+    }
+}